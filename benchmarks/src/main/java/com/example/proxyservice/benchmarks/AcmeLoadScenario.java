@@ -0,0 +1,332 @@
+package com.example.proxyservice.benchmarks;
+
+import com.example.proxyservice.ProxyServiceApplication;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.shredzone.acme4j.Account;
+import org.shredzone.acme4j.AccountBuilder;
+import org.shredzone.acme4j.AcmeJsonResource;
+import org.shredzone.acme4j.Authorization;
+import org.shredzone.acme4j.Certificate;
+import org.shredzone.acme4j.Order;
+import org.shredzone.acme4j.Session;
+import org.shredzone.acme4j.Status;
+import org.shredzone.acme4j.challenge.Http01Challenge;
+import org.shredzone.acme4j.exception.AcmeException;
+import org.shredzone.acme4j.exception.AcmeLazyLoadingException;
+import org.shredzone.acme4j.exception.AcmeRetryAfterException;
+import org.shredzone.acme4j.exception.AcmeServerException;
+import org.shredzone.acme4j.util.CSRBuilder;
+import org.shredzone.acme4j.util.KeyPairUtils;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.security.KeyPair;
+import java.security.Security;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 负载场景：N 个模拟的 cert-manager 客户端经 ProxyController 对 {@link MockAcmeServer} 跑完整签发流程
+ *
+ * 每个客户端用 acme4j 注册账户，然后循环：new-order → 取授权 → 触发 http-01 → 轮询授权 → 轮询订单至 ready
+ * → finalize（真实 CSR）→ 轮询至 valid → 下载证书（可选吊销）。轮询遵守代理注入的 Retry-After。
+ * 预热结束后开始计数，输出每秒完成订单数、按核数折算的吞吐、每 CPU 秒订单数与单订单耗时分位。
+ * <pre>
+ *   # 进程内启动代理（随机端口）和 mock，预热 10 秒、测量 60 秒
+ *   java -cp benchmarks/target/benchmarks.jar com.example.proxyservice.benchmarks.AcmeLoadScenario \
+ *       --clients=32 --warmup-seconds=10 --duration-seconds=60 --latency-ms=5 --error-rate=0.01
+ *
+ *   # 压测已运行的代理：mock 监听 9000，代理以 --step-ca.url=http://127.0.0.1:9000 启动
+ *   java -cp benchmarks/target/benchmarks.jar com.example.proxyservice.benchmarks.AcmeLoadScenario \
+ *       --proxy-url=http://localhost:8080 --port=9000
+ * </pre>
+ * mock 的选项（latency-ms、jitter-ms、error-rate、signing-cost-ms、validation-delay-ms 等）直接传入；
+ * 以 --proxy.、--server.、--spring.、--logging. 开头的参数传给进程内的代理。
+ */
+public class AcmeLoadScenario {
+
+    private static final List<String> PROXY_ARG_PREFIXES = List.of("proxy.", "server.", "spring.", "logging.", "management.");
+
+    private final String directoryUrl;
+    private final int clients;
+    private final Duration warmup;
+    private final Duration duration;
+    private final Duration maxPollWait;
+    private final boolean revoke;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+    private final List<long[]> latencies = new ArrayList<>();
+    private volatile boolean measuring;
+    private volatile boolean stopped;
+
+    AcmeLoadScenario(String directoryUrl, Map<String, String> args) {
+        this.directoryUrl = directoryUrl;
+        this.clients = Integer.parseInt(args.getOrDefault("clients", "16"));
+        this.warmup = Duration.ofSeconds(Long.parseLong(args.getOrDefault("warmup-seconds", "5")));
+        this.duration = Duration.ofSeconds(Long.parseLong(args.getOrDefault("duration-seconds", "30")));
+        this.maxPollWait = Duration.ofMillis(Long.parseLong(args.getOrDefault("max-poll-wait-ms", "10000")));
+        this.revoke = Boolean.parseBoolean(args.getOrDefault("revoke", "false"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        // acme4j-utils 的密钥与 CSR 工具依赖 BC provider
+        Security.addProvider(new BouncyCastleProvider());
+        Map<String, String> parsed = MockAcmeServer.arguments(args);
+        String provisioner = parsed.getOrDefault("provisioner", "acme");
+
+        try (MockAcmeServer mock = MockAcmeServer.start(MockAcmeServer.Options.from(parsed))) {
+            ConfigurableApplicationContext proxy = null;
+            String proxyUrl = parsed.get("proxy-url");
+            if (proxyUrl == null) {
+                proxy = startProxy(mock.url(), args);
+                proxyUrl = "http://127.0.0.1:" + proxy.getEnvironment().getProperty("local.server.port");
+            }
+            mock.setExternalUrl(proxyUrl);
+            System.out.println("mock: " + mock.url() + "（" + MockAcmeServer.Options.from(parsed) + "）");
+            System.out.println("proxy: " + proxyUrl + (proxy != null ? "（进程内）" : ""));
+
+            try {
+                AcmeLoadScenario scenario = new AcmeLoadScenario(proxyUrl + "/acme/" + provisioner + "/directory", parsed);
+                scenario.run();
+                System.out.println("mock 请求统计: " + mock.stats());
+            } finally {
+                if (proxy != null) {
+                    proxy.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * 进程内启动代理；所有模拟客户端共用回环地址，默认关闭按 IP 限流，否则测到的是限流速率
+     */
+    private static ConfigurableApplicationContext startProxy(String stepCaUrl, String[] args) {
+        List<String> proxyArgs = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--step-ca.url=" + stepCaUrl,
+                "--proxy.rate-limit.enabled=false",
+                "--logging.level.com.example.proxyservice=WARN",
+                "--logging.file.name=target/load-scenario.log"));
+        // 命令行中的同名参数排在后面，覆盖上面的默认值
+        Arrays.stream(args)
+                .filter(arg -> PROXY_ARG_PREFIXES.stream().anyMatch(prefix -> arg.startsWith("--" + prefix)))
+                .forEach(proxyArgs::add);
+        return new SpringApplicationBuilder(ProxyServiceApplication.class)
+                .logStartupInfo(false)
+                .run(proxyArgs.toArray(new String[0]));
+    }
+
+    void run() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(clients);
+        for (int i = 0; i < clients; i++) {
+            int client = i;
+            long[] samples = new long[1 << 16];
+            synchronized (latencies) {
+                latencies.add(samples);
+            }
+            Thread thread = new Thread(() -> {
+                try {
+                    runClient(client, samples);
+                } finally {
+                    done.countDown();
+                }
+            }, "acme-client-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        System.out.printf("%d 个客户端，预热 %ds，测量 %ds%n", clients, warmup.toSeconds(), duration.toSeconds());
+        Thread.sleep(warmup.toMillis());
+        completed.reset();
+        failed.reset();
+        failures.clear();
+        long cpuStart = processCpuNanos();
+        long start = System.nanoTime();
+        measuring = true;
+
+        Thread.sleep(duration.toMillis());
+        measuring = false;
+        long elapsed = System.nanoTime() - start;
+        long cpu = processCpuNanos() - cpuStart;
+        stopped = true;
+        done.await(maxPollWait.toMillis() + 30_000, TimeUnit.MILLISECONDS);
+
+        report(elapsed, cpu);
+    }
+
+    // ---------------------------------------------------------------- 单个客户端
+
+    private void runClient(int client, long[] samples) {
+        Session session = new Session(directoryUrl);
+        Account account;
+        try {
+            KeyPair accountKey = KeyPairUtils.createECKeyPair("secp256r1");
+            account = new AccountBuilder().agreeToTermsOfService().useKeyPair(accountKey).create(session);
+        } catch (AcmeException | RuntimeException e) {
+            recordFailure("new-account", e);
+            return;
+        }
+        // 证书私钥每个客户端复用一把，避免客户端生成密钥的开销计入代理吞吐
+        KeyPair domainKey = KeyPairUtils.createECKeyPair("secp256r1");
+
+        int sequence = 0;
+        int recorded = 0;
+        while (!stopped) {
+            String domain = "c" + client + "-" + (sequence++) + ".load.example.com";
+            long begin = System.nanoTime();
+            boolean counted = measuring;
+            try {
+                issue(account, domain, domainKey);
+                if (counted && measuring) {
+                    completed.increment();
+                    if (recorded < samples.length) {
+                        samples[recorded++] = System.nanoTime() - begin;
+                    }
+                }
+            } catch (Exception e) {
+                if (counted && measuring) {
+                    recordFailure(stage(e), e);
+                }
+            }
+        }
+    }
+
+    private void issue(Account account, String domain, KeyPair domainKey) throws Exception {
+        Order order = account.newOrder().domains(domain).create();
+        for (Authorization authorization : order.getAuthorizations()) {
+            if (authorization.getStatus() == Status.VALID) {
+                continue;
+            }
+            Http01Challenge challenge = authorization.findChallenge(Http01Challenge.TYPE);
+            if (challenge == null) {
+                throw new IllegalStateException("authz: no http-01 challenge");
+            }
+            challenge.trigger();
+            await(authorization, authorization::getStatus, Status.VALID, "authz");
+        }
+        await(order, order::getStatus, Status.READY, "order");
+
+        CSRBuilder csr = new CSRBuilder();
+        csr.addDomain(domain);
+        csr.sign(domainKey);
+        order.execute(csr.getEncoded());
+        await(order, order::getStatus, Status.VALID, "finalize");
+
+        Certificate certificate = order.getCertificate();
+        if (certificate == null) {
+            throw new IllegalStateException("certificate: order is valid without a certificate URL");
+        }
+        certificate.download();
+        if (revoke) {
+            certificate.revoke();
+        }
+    }
+
+    /**
+     * 轮询资源直到目标状态；遵守服务器或代理给出的 Retry-After，没有时按 100ms 递增退避
+     */
+    private void await(AcmeJsonResource resource, Supplier<Status> status, Status target, String stage)
+            throws AcmeException, InterruptedException {
+        Instant deadline = Instant.now().plus(maxPollWait);
+        long backoff = 50;
+        while (true) {
+            Status current = status.get();
+            if (current == target || (target == Status.READY && current == Status.VALID)) {
+                return;
+            }
+            if (current == Status.INVALID) {
+                throw new IllegalStateException(stage + ": resource became invalid");
+            }
+            if (Instant.now().isAfter(deadline)) {
+                throw new IllegalStateException(stage + ": still " + current + " after " + maxPollWait.toMillis() + "ms");
+            }
+            long wait = backoff;
+            try {
+                resource.update();
+                backoff = Math.min(backoff + 100, 1000);
+            } catch (AcmeRetryAfterException e) {
+                // acme4j 先更新状态再抛出该异常，状态已到达时不必等待
+                if (status.get() == target) {
+                    return;
+                }
+                wait = Math.max(0, Duration.between(Instant.now(), e.getRetryAfter()).toMillis());
+            }
+            if (status.get() != target) {
+                Thread.sleep(Math.min(wait, maxPollWait.toMillis()));
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------- 统计
+
+    private static String stage(Exception e) {
+        String message = String.valueOf(e.getMessage());
+        int colon = message.indexOf(':');
+        return e instanceof IllegalStateException && colon > 0 ? message.substring(0, colon) : "acme";
+    }
+
+    private void recordFailure(String stage, Exception e) {
+        failed.increment();
+        // 延迟加载（getStatus 等）失败时 acme4j 把原始异常包在 AcmeLazyLoadingException 里
+        Throwable cause = e instanceof AcmeLazyLoadingException && e.getCause() != null ? e.getCause() : e;
+        String reason = cause instanceof AcmeServerException server && server.getType() != null
+                ? server.getType().toString().replace("urn:ietf:params:acme:error:", "")
+                : cause.getClass().getSimpleName();
+        failures.computeIfAbsent(stage + " " + reason, k -> new LongAdder()).increment();
+    }
+
+    private static long processCpuNanos() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os) {
+            return os.getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    private void report(long elapsedNanos, long cpuNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long orders = completed.sum();
+        int cores = Runtime.getRuntime().availableProcessors();
+        double rate = orders / seconds;
+
+        System.out.println();
+        System.out.printf("完成订单: %d，失败: %d（%.2f%%）%n", orders, failed.sum(),
+                orders + failed.sum() == 0 ? 0.0 : 100.0 * failed.sum() / (orders + failed.sum()));
+        System.out.printf("吞吐: %.1f orders/s，%d 核，%.2f orders/s/core%n", rate, cores, rate / cores);
+        if (cpuNanos > 0) {
+            // 进程内模式下 CPU 时间包含代理、mock 与客户端三者
+            System.out.printf("CPU: %.1f core-seconds，%.2f orders/CPU-second（平均占用 %.1f 核）%n",
+                    cpuNanos / 1e9, orders / (cpuNanos / 1e9), cpuNanos / (double) elapsedNanos);
+        }
+
+        long[] all;
+        synchronized (latencies) {
+            all = latencies.stream().flatMapToLong(Arrays::stream).filter(v -> v > 0).sorted().toArray();
+        }
+        if (all.length > 0) {
+            System.out.printf("单订单耗时(ms): p50=%.1f p90=%.1f p99=%.1f max=%.1f%n",
+                    percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99), all[all.length - 1] / 1e6);
+        }
+        if (!failures.isEmpty()) {
+            System.out.println("失败原因:");
+            new TreeMap<>(failures).forEach((reason, count) -> System.out.printf("  %-40s %d%n", reason, count.sum()));
+        }
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.proxyservice.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 对比两次 JMH JSON 结果，吞吐下降、延迟或每次操作分配字节数上升超过阈值时以非零状态码退出
+ * <pre>
+ *   java -cp benchmarks/target/benchmarks.jar com.example.proxyservice.benchmarks.BenchmarkCompare \
+ *       baseline.json current.json [阈值，默认 0.10]
+ * </pre>
+ */
+public class BenchmarkCompare {
+
+    /**
+     * 分配量变化小于该字节数时忽略，避免 0 → 1 字节这类噪声被判为回退
+     */
+    private static final double ALLOCATION_NOISE_BYTES = 16;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("用法: BenchmarkCompare <baseline.json> <current.json> [threshold]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 0.10;
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, JsonNode> baseline = index(mapper.readTree(new File(args[0])));
+        Map<String, JsonNode> current = index(mapper.readTree(new File(args[1])));
+
+        int regressions = 0;
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            JsonNode before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-90s 新增%n", entry.getKey());
+                continue;
+            }
+            JsonNode after = entry.getValue();
+            String mode = after.path("mode").asText();
+            double oldScore = score(before);
+            double newScore = score(after);
+            // thrpt 越大越好，其余模式（avgt、sample 等）越小越好
+            double change = relativeChange(oldScore, newScore);
+            boolean regressed = "thrpt".equals(mode) ? change < -threshold : change > threshold;
+
+            double oldAlloc = allocation(before);
+            double newAlloc = allocation(after);
+            boolean allocRegressed = newAlloc - oldAlloc > ALLOCATION_NOISE_BYTES
+                    && relativeChange(oldAlloc, newAlloc) > threshold;
+
+            System.out.printf("%-90s %12.3f -> %12.3f %-10s (%+6.1f%%)  alloc %8.1f -> %8.1f B/op%s%n",
+                    entry.getKey(), oldScore, newScore, after.path("primaryMetric").path("scoreUnit").asText(),
+                    change * 100, oldAlloc, newAlloc, regressed || allocRegressed ? "  <-- 回退" : "");
+            if (regressed || allocRegressed) {
+                regressions++;
+            }
+        }
+        if (regressions > 0) {
+            System.out.println(regressions + " 个基准出现回退（阈值 " + (int) (threshold * 100) + "%）");
+            System.exit(1);
+        }
+        System.out.println("没有超过阈值的回退");
+    }
+
+    /**
+     * 以 基准名 + 模式 + 参数 作为键
+     */
+    private static Map<String, JsonNode> index(JsonNode results) {
+        Map<String, JsonNode> indexed = new LinkedHashMap<>();
+        for (JsonNode result : results) {
+            StringBuilder key = new StringBuilder(result.path("benchmark").asText())
+                    .append(" [").append(result.path("mode").asText()).append(']');
+            JsonNode params = result.path("params");
+            Iterator<Map.Entry<String, JsonNode>> fields = params.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> param = fields.next();
+                key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText());
+            }
+            indexed.put(key.toString(), result);
+        }
+        return indexed;
+    }
+
+    private static double score(JsonNode result) {
+        return result.path("primaryMetric").path("score").asDouble();
+    }
+
+    private static double allocation(JsonNode result) {
+        return result.path("secondaryMetrics").path("gc.alloc.rate.norm").path("score").asDouble();
+    }
+
+    private static double relativeChange(double before, double after) {
+        if (before == 0) {
+            return after == 0 ? 0 : 1;
+        }
+        return (after - before) / before;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.proxyservice.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 运行全部基准，附带 GC 分析（gc.alloc.rate.norm 即每次操作分配的字节数），结果保存为 JSON
+ * <pre>
+ *   java -jar benchmarks/target/benchmarks.jar [结果文件，默认 jmh-result.json] [基准正则，默认全部]
+ * </pre>
+ * 两次结果用 {@link BenchmarkCompare} 对比，检测版本之间的回退。
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        String resultFile = args.length > 0 ? args[0] : "jmh-result.json";
+        String include = args.length > 1 ? args[1] : "com\\.example\\.proxyservice\\.benchmarks\\..*Benchmark.*";
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultFile)
+                .build();
+        new Runner(options).run();
+        System.out.println("结果已保存到 " + resultFile);
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.proxyservice.benchmarks;
+
+import com.example.proxyservice.ProxyServiceApplication;
+import com.example.proxyservice.service.ProxyService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端转发：完整的 Spring 上下文中调用 ProxyService.forwardRequest，上游为进程内替身
+ *
+ * 不经过 Tomcat，测量的是代理自身的处理开销（限流、并发限制、副本选择、头处理、连接池、响应构建）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(8)
+public class ForwardBenchmark {
+
+    private StubUpstream upstream;
+    private ConfigurableApplicationContext context;
+    private ProxyService proxyService;
+    private byte[] newOrderBody;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        upstream = StubUpstream.start();
+        context = new SpringApplicationBuilder(ProxyServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                // 命令行参数优先于 application.yml
+                .run("--step-ca.url=" + upstream.url(),
+                        // 基准压测单个账户，限流与并发限制会把结果变成拒绝率
+                        "--proxy.rate-limit.enabled=false",
+                        "--proxy.concurrency.enabled=false",
+                        "--proxy.health-check.enabled=false",
+                        "--logging.level.com.example.proxyservice=WARN",
+                        "--logging.file.name=target/benchmark.log");
+        proxyService = context.getBean(ProxyService.class);
+
+        String header = "{\"alg\":\"ES256\",\"kid\":\"https://ca/acme/bench/account/1\","
+                + "\"nonce\":\"bench\",\"url\":\"https://ca/acme/bench/new-order\"}";
+        String payload = "{\"identifiers\":[{\"type\":\"dns\",\"value\":\"bench.example.com\"}]}";
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        newOrderBody = ("{\"protected\":\"" + encoder.encodeToString(header.getBytes(StandardCharsets.UTF_8))
+                + "\",\"payload\":\"" + encoder.encodeToString(payload.getBytes(StandardCharsets.UTF_8))
+                + "\",\"signature\":\"" + encoder.encodeToString(new byte[64]) + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        upstream.close();
+    }
+
+    /**
+     * POST new-order：每次都转发到上游
+     */
+    @Benchmark
+    public ResponseEntity<byte[]> forwardNewOrder() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/acme/bench/new-order");
+        request.setContentType("application/jose+json");
+        request.addHeader("User-Agent", "cert-manager/bench");
+        request.addHeader("Accept-Encoding", "gzip");
+        request.setContent(newOrderBody);
+        return proxyService.forwardRequest(request, newOrderBody);
+    }
+
+    /**
+     * GET directory：首次之后由响应缓存应答
+     */
+    @Benchmark
+    public ResponseEntity<byte[]> forwardCachedDirectory() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/acme/bench/directory");
+        request.addHeader("User-Agent", "cert-manager/bench");
+        return proxyService.forwardRequest(request, null);
+    }
+}
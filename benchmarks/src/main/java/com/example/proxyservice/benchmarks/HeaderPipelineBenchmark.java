@@ -0,0 +1,95 @@
+package com.example.proxyservice.benchmarks;
+
+import com.example.proxyservice.service.HeaderPipeline;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.message.BasicClassicHttpRequest;
+import org.apache.hc.core5.http.message.BasicHeader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求/响应头处理各阶段：Content-Type 清理与解析、请求头复制、响应头复制
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HeaderPipelineBenchmark {
+
+    @Param({"application/jose+json", "*/*", "application/pem-certificate-chain"})
+    private String contentType;
+
+    private HeaderPipeline pipeline;
+    private MockHttpServletRequest request;
+    private Header[] responseHeaders;
+
+    @Setup
+    public void setup() {
+        pipeline = new HeaderPipeline();
+        ReflectionTestUtils.setField(pipeline, "contentTypeCacheSize", 64);
+        pipeline.init();
+
+        // cert-manager 发出的典型 ACME 请求头
+        request = new MockHttpServletRequest("POST", "/acme/bench/new-order");
+        request.addHeader("Host", "proxy.example.com");
+        request.addHeader("User-Agent", "cert-manager-challenges/v1.14.4 (linux/amd64) cert-manager/abc123");
+        request.addHeader("Content-Type", contentType);
+        request.addHeader("Content-Length", "512");
+        request.addHeader("Accept-Encoding", "gzip");
+        request.addHeader("Accept-Language", "en-US");
+        request.addHeader("Connection", "keep-alive");
+
+        responseHeaders = new Header[]{
+                new BasicHeader("Server", "step-ca"),
+                new BasicHeader("Content-Type", "application/json"),
+                new BasicHeader("Content-Length", "312"),
+                new BasicHeader("Replay-Nonce", "bench-nonce"),
+                new BasicHeader("Location", "https://ca/acme/bench/order/1"),
+                new BasicHeader("Link", "<https://ca/acme/bench/directory>;rel=\"index\""),
+                new BasicHeader("Cache-Control", "no-store"),
+                new BasicHeader("Connection", "keep-alive"),
+                new BasicHeader("Date", "Mon, 01 Jan 2024 00:00:00 GMT")
+        };
+    }
+
+    @Benchmark
+    public String sanitizeContentType() {
+        return pipeline.sanitizeContentType(contentType);
+    }
+
+    @Benchmark
+    public ContentType parseContentType() {
+        return pipeline.parseContentType(contentType);
+    }
+
+    @Benchmark
+    public BasicClassicHttpRequest copyRequestHeaders() {
+        BasicClassicHttpRequest target = new BasicClassicHttpRequest("POST", "/acme/bench/new-order");
+        pipeline.copyRequestHeaders(request, target);
+        return target;
+    }
+
+    @Benchmark
+    public HttpHeaders copyResponseHeaders() {
+        HttpHeaders target = new HttpHeaders();
+        pipeline.copyResponseHeaders(responseHeaders, target);
+        return target;
+    }
+}
@@ -0,0 +1,851 @@
+package com.example.proxyservice.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.bouncycastle.pkcs.PKCS10CertificationRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内的轻量 step-ca ACME 服务器，用于在没有真实 step-ca 的情况下压测代理
+ *
+ * 实现 directory、new-nonce、new-account、new-order、authz、challenge、finalize、certificate、revoke-cert。
+ * 不校验 JWS 签名，也不真正访问 http-01 挑战；Replay-Nonce 一次性有效，kid 必须与资源所属账户一致，
+ * CSR 签名会被校验，证书由启动时生成的自签 CA 真实签发。代理不改写响应中的 URL，
+ * 所以 external-url 需要设为代理地址，客户端才会把后续请求发给代理。
+ * <pre>
+ *   java -cp benchmarks/target/benchmarks.jar com.example.proxyservice.benchmarks.MockAcmeServer \
+ *       --port=9000 --external-url=http://localhost:8080 --latency-ms=5 --error-rate=0.01
+ * </pre>
+ */
+public final class MockAcmeServer implements AutoCloseable {
+
+    private static final String ERROR_PREFIX = "urn:ietf:params:acme:error:";
+    private static final Base64.Decoder BASE64URL = Base64.getUrlDecoder();
+
+    private final Options options;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final SecureRandom random = new SecureRandom();
+
+    private final KeyPair caKeyPair;
+    private final X500Name caName = new X500Name("CN=Mock ACME Load Test CA");
+    private final String caPem;
+    private final String caSignatureAlgorithm;
+
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicLong nonceCounter = new AtomicLong();
+    private final Map<String, Long> nonces = new ConcurrentHashMap<>();
+    private final Map<String, Long> accountsByKey = new ConcurrentHashMap<>();
+    private final Set<Long> accounts = ConcurrentHashMap.newKeySet();
+    private final Map<Long, Order> orders = new ConcurrentHashMap<>();
+    private final Map<Long, Authz> authzs = new ConcurrentHashMap<>();
+    private final Map<Long, Issued> certificates = new ConcurrentHashMap<>();
+    private final Map<BigInteger, Issued> certificatesBySerial = new ConcurrentHashMap<>();
+
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+    private final LongAdder injectedErrors = new LongAdder();
+    private final LongAdder badNonces = new LongAdder();
+
+    private volatile String externalUrl;
+
+    private MockAcmeServer(Options options) throws Exception {
+        this.options = options;
+        if ("rsa".equalsIgnoreCase(options.keyType)) {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            caKeyPair = generator.generateKeyPair();
+            caSignatureAlgorithm = "SHA256withRSA";
+        } else {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+            caKeyPair = generator.generateKeyPair();
+            caSignatureAlgorithm = "SHA256withECDSA";
+        }
+        caPem = pem(selfSignedCa().getEncoded());
+
+        // 默认未开启 TCP_NODELAY，响应头与响应体分两次写出时会碰上 Nagle + 延迟 ACK 的 40ms 等待
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(options.host, options.port), 1024);
+        // 注入的延迟会占住处理线程，用无界线程池避免服务端线程数成为瓶颈
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "mock-acme");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        externalUrl = options.externalUrl;
+    }
+
+    public static MockAcmeServer start(Options options) throws Exception {
+        MockAcmeServer mock = new MockAcmeServer(options);
+        mock.server.start();
+        return mock;
+    }
+
+    /**
+     * 服务器自身的监听地址，作为代理的 step-ca.url
+     */
+    public String url() {
+        return "http://" + options.host + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * 设置写入响应（directory、Location、订单中的链接）的对外地址，通常为代理地址
+     */
+    public void setExternalUrl(String externalUrl) {
+        this.externalUrl = externalUrl;
+    }
+
+    private String base(String provisioner) {
+        String root = externalUrl != null ? externalUrl : url();
+        return root + "/acme/" + provisioner;
+    }
+
+    // ---------------------------------------------------------------- 请求分发
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readAllBytes();
+            }
+            String path = exchange.getRequestURI().getPath();
+            if ("/health".equals(path)) {
+                count("health");
+                send(exchange, 200, "application/json", "{\"status\":\"ok\"}".getBytes(StandardCharsets.UTF_8), null, null);
+                return;
+            }
+            if ("/roots.pem".equals(path)) {
+                count("roots");
+                send(exchange, 200, "application/x-pem-file", caPem.getBytes(StandardCharsets.US_ASCII), null, null);
+                return;
+            }
+
+            // /acme/{provisioner}/{resource}[/{id}[/{sub}]]
+            String[] segments = path.split("/");
+            if (segments.length < 4 || !"acme".equals(segments[1])) {
+                problem(exchange, 404, "malformed", "unknown resource " + path, null);
+                return;
+            }
+            String provisioner = segments[2];
+            String resource = segments[3];
+            count(resource + ("finalize".equals(segments[segments.length - 1]) ? "/finalize" : ""));
+
+            simulateLatency();
+            if (options.errorRate > 0 && ThreadLocalRandom.current().nextDouble() < options.errorRate) {
+                injectedErrors.increment();
+                // 一半模拟 step-ca 内部错误，一半模拟过载（带 Retry-After），分别触发熔断与退避路径
+                if (ThreadLocalRandom.current().nextBoolean()) {
+                    problem(exchange, 500, "serverInternal", "injected failure", provisioner);
+                } else {
+                    exchange.getResponseHeaders().set("Retry-After", String.valueOf(options.retryAfterSeconds));
+                    problem(exchange, 503, "rateLimited", "injected overload", provisioner);
+                }
+                return;
+            }
+
+            String method = exchange.getRequestMethod();
+            if ("directory".equals(resource)) {
+                directory(exchange, provisioner);
+                return;
+            }
+            if ("new-nonce".equals(resource)) {
+                send(exchange, "HEAD".equals(method) ? 200 : 204, null, null, null, provisioner);
+                return;
+            }
+            if (!"POST".equals(method)) {
+                problem(exchange, 405, "malformed", method + " not allowed on " + resource, provisioner);
+                return;
+            }
+
+            Jws jws = parseJws(body);
+            if (jws == null) {
+                problem(exchange, 400, "malformed", "request body is not a flattened JWS", provisioner);
+                return;
+            }
+            if (options.validateNonces && (jws.nonce == null || nonces.remove(jws.nonce) == null)) {
+                badNonces.increment();
+                problem(exchange, 400, "badNonce", "unknown or reused nonce", provisioner);
+                return;
+            }
+
+            switch (resource) {
+                case "new-account" -> newAccount(exchange, provisioner, jws);
+                case "account" -> account(exchange, provisioner, jws, id(segments, 4));
+                case "new-order" -> newOrder(exchange, provisioner, jws);
+                case "order" -> {
+                    if (segments.length > 5 && "finalize".equals(segments[5])) {
+                        finalizeOrder(exchange, provisioner, jws, id(segments, 4));
+                    } else {
+                        order(exchange, provisioner, jws, id(segments, 4));
+                    }
+                }
+                case "authz" -> authz(exchange, provisioner, jws, id(segments, 4));
+                case "challenge" -> challenge(exchange, provisioner, jws, id(segments, 4));
+                case "certificate" -> certificate(exchange, provisioner, jws, id(segments, 4));
+                case "revoke-cert" -> revoke(exchange, provisioner, jws);
+                default -> problem(exchange, 404, "malformed", "unknown resource " + resource, provisioner);
+            }
+        } catch (Exception e) {
+            problem(exchange, 500, "serverInternal", String.valueOf(e.getMessage()), null);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // ---------------------------------------------------------------- ACME 资源
+
+    private void directory(HttpExchange exchange, String provisioner) throws IOException {
+        String base = base(provisioner);
+        ObjectNode directory = mapper.createObjectNode();
+        directory.put("newNonce", base + "/new-nonce");
+        directory.put("newAccount", base + "/new-account");
+        directory.put("newOrder", base + "/new-order");
+        directory.put("revokeCert", base + "/revoke-cert");
+        directory.put("keyChange", base + "/key-change");
+        directory.putObject("meta").put("externalAccountRequired", false);
+        sendJson(exchange, 200, directory, null, provisioner);
+    }
+
+    private void newAccount(HttpExchange exchange, String provisioner, Jws jws) throws IOException {
+        if (jws.jwk == null) {
+            problem(exchange, 400, "malformed", "new-account requires a jwk", provisioner);
+            return;
+        }
+        // 以规范化的 JWK 作为账户标识，重复注册返回已有账户
+        String key = canonical(jws.jwk);
+        Long existing = accountsByKey.get(key);
+        if (existing == null && jws.payload.path("onlyReturnExisting").asBoolean(false)) {
+            problem(exchange, 400, "accountDoesNotExist", "no account for this key", provisioner);
+            return;
+        }
+        long accountId = existing != null ? existing : accountsByKey.computeIfAbsent(key, k -> ids.incrementAndGet());
+        accounts.add(accountId);
+        sendJson(exchange, existing != null ? 200 : 201, accountJson(provisioner, accountId),
+                base(provisioner) + "/account/" + accountId, provisioner);
+    }
+
+    private void account(HttpExchange exchange, String provisioner, Jws jws, long accountId) throws IOException {
+        if (jws.accountId() != accountId) {
+            problem(exchange, 403, "unauthorized", "account does not match kid", provisioner);
+            return;
+        }
+        sendJson(exchange, 200, accountJson(provisioner, accountId), null, provisioner);
+    }
+
+    private ObjectNode accountJson(String provisioner, long accountId) {
+        ObjectNode account = mapper.createObjectNode();
+        account.put("status", "valid");
+        account.putArray("contact");
+        account.put("orders", base(provisioner) + "/account/" + accountId + "/orders");
+        return account;
+    }
+
+    private void newOrder(HttpExchange exchange, String provisioner, Jws jws) throws IOException {
+        long accountId = jws.accountId();
+        if (!accounts.contains(accountId)) {
+            problem(exchange, 400, "accountDoesNotExist", "unknown kid", provisioner);
+            return;
+        }
+        List<String> identifiers = new ArrayList<>();
+        for (JsonNode identifier : jws.payload.path("identifiers")) {
+            identifiers.add(identifier.path("value").asText());
+        }
+        if (identifiers.isEmpty()) {
+            problem(exchange, 400, "malformed", "order has no identifiers", provisioner);
+            return;
+        }
+        Order order = new Order(ids.incrementAndGet(), accountId, identifiers);
+        for (String identifier : identifiers) {
+            Authz authz = new Authz(ids.incrementAndGet(), accountId, identifier, token());
+            authzs.put(authz.id, authz);
+            order.authzIds.add(authz.id);
+        }
+        orders.put(order.id, order);
+        sendJson(exchange, 201, orderJson(provisioner, order), base(provisioner) + "/order/" + order.id, provisioner);
+    }
+
+    private void order(HttpExchange exchange, String provisioner, Jws jws, long orderId) throws IOException {
+        Order order = owned(exchange, provisioner, jws, orders.get(orderId));
+        if (order != null) {
+            sendJson(exchange, 200, orderJson(provisioner, order), null, provisioner);
+        }
+    }
+
+    private void authz(HttpExchange exchange, String provisioner, Jws jws, long authzId) throws IOException {
+        Authz authz = owned(exchange, provisioner, jws, authzs.get(authzId));
+        if (authz != null) {
+            sendJson(exchange, 200, authzJson(provisioner, authz), null, provisioner);
+        }
+    }
+
+    private void challenge(HttpExchange exchange, String provisioner, Jws jws, long authzId) throws IOException {
+        Authz authz = owned(exchange, provisioner, jws, authzs.get(authzId));
+        if (authz == null) {
+            return;
+        }
+        // 带 {} 载荷的 POST 触发验证，POST-as-GET 只查询状态
+        if (!jws.postAsGet) {
+            authz.trigger(Instant.now().plusMillis(options.validationDelayMs));
+        }
+        exchange.getResponseHeaders().add("Link", "<" + base(provisioner) + "/authz/" + authz.id + ">;rel=\"up\"");
+        sendJson(exchange, 200, challengeJson(provisioner, authz), null, provisioner);
+    }
+
+    private void finalizeOrder(HttpExchange exchange, String provisioner, Jws jws, long orderId) throws Exception {
+        Order order = owned(exchange, provisioner, jws, orders.get(orderId));
+        if (order == null) {
+            return;
+        }
+        synchronized (order) {
+            if (!"ready".equals(orderStatus(order))) {
+                problem(exchange, 403, "orderNotReady", "order is " + orderStatus(order), provisioner);
+                return;
+            }
+            String csr = jws.payload.path("csr").asText(null);
+            if (csr == null) {
+                problem(exchange, 400, "malformed", "finalize requires a csr", provisioner);
+                return;
+            }
+            Issued issued;
+            try {
+                issued = issue(order, BASE64URL.decode(csr));
+            } catch (IllegalArgumentException e) {
+                problem(exchange, 400, "badCSR", e.getMessage(), provisioner);
+                return;
+            }
+            certificates.put(issued.id, issued);
+            certificatesBySerial.put(issued.serial, issued);
+            order.certificateId = issued.id;
+            order.issuedAt = Instant.now().plusMillis(options.issueDelayMs);
+        }
+        sendJson(exchange, 200, orderJson(provisioner, order), null, provisioner);
+    }
+
+    private void certificate(HttpExchange exchange, String provisioner, Jws jws, long certificateId) throws IOException {
+        Issued issued = owned(exchange, provisioner, jws, certificates.get(certificateId));
+        if (issued != null) {
+            send(exchange, 200, "application/pem-certificate-chain",
+                    issued.chain.getBytes(StandardCharsets.US_ASCII), null, provisioner);
+        }
+    }
+
+    private void revoke(HttpExchange exchange, String provisioner, Jws jws) throws IOException {
+        String encoded = jws.payload.path("certificate").asText(null);
+        if (encoded == null) {
+            problem(exchange, 400, "malformed", "revoke-cert requires a certificate", provisioner);
+            return;
+        }
+        Issued issued;
+        try {
+            issued = certificatesBySerial.get(new X509CertificateHolder(BASE64URL.decode(encoded)).getSerialNumber());
+        } catch (IOException | IllegalArgumentException e) {
+            problem(exchange, 400, "badCertificate", "cannot parse certificate", provisioner);
+            return;
+        }
+        if (issued == null) {
+            problem(exchange, 404, "malformed", "certificate was not issued by this CA", provisioner);
+            return;
+        }
+        // 账户吊销（kid）只能吊销自己的证书；jwk 方式视为证书私钥持有者，不做检查
+        if (jws.kid != null && jws.accountId() != issued.accountId) {
+            problem(exchange, 403, "unauthorized", "certificate belongs to another account", provisioner);
+            return;
+        }
+        if (!issued.revoke()) {
+            problem(exchange, 400, "alreadyRevoked", "certificate is already revoked", provisioner);
+            return;
+        }
+        send(exchange, 200, null, null, null, provisioner);
+    }
+
+    /**
+     * 资源不存在返回 404，kid 不是资源所属账户返回 403（用于发现代理缓存或快照串账户）
+     */
+    private <T extends Owned> T owned(HttpExchange exchange, String provisioner, Jws jws, T resource) throws IOException {
+        if (resource == null) {
+            problem(exchange, 404, "malformed", "no such resource", provisioner);
+            return null;
+        }
+        if (jws.accountId() != resource.accountId()) {
+            problem(exchange, 403, "unauthorized", "resource belongs to another account", provisioner);
+            return null;
+        }
+        return resource;
+    }
+
+    // ---------------------------------------------------------------- 状态与 JSON
+
+    private String orderStatus(Order order) {
+        if (order.certificateId > 0) {
+            return Instant.now().isBefore(order.issuedAt) ? "processing" : "valid";
+        }
+        for (long authzId : order.authzIds) {
+            if (!"valid".equals(authzs.get(authzId).status())) {
+                return "pending";
+            }
+        }
+        return "ready";
+    }
+
+    private ObjectNode orderJson(String provisioner, Order order) {
+        String base = base(provisioner);
+        ObjectNode json = mapper.createObjectNode();
+        String status = orderStatus(order);
+        json.put("status", status);
+        json.put("expires", order.created.plus(Duration.ofDays(1)).toString());
+        ArrayNode identifiers = json.putArray("identifiers");
+        for (String identifier : order.identifiers) {
+            identifiers.addObject().put("type", "dns").put("value", identifier);
+        }
+        ArrayNode authorizations = json.putArray("authorizations");
+        for (long authzId : order.authzIds) {
+            authorizations.add(base + "/authz/" + authzId);
+        }
+        json.put("finalize", base + "/order/" + order.id + "/finalize");
+        if ("valid".equals(status)) {
+            json.put("certificate", base + "/certificate/" + order.certificateId);
+        }
+        return json;
+    }
+
+    private ObjectNode authzJson(String provisioner, Authz authz) {
+        ObjectNode json = mapper.createObjectNode();
+        json.put("status", authz.status());
+        json.put("expires", authz.created.plus(Duration.ofDays(1)).toString());
+        json.putObject("identifier").put("type", "dns").put("value", authz.identifier);
+        json.putArray("challenges").add(challengeJson(provisioner, authz));
+        return json;
+    }
+
+    private ObjectNode challengeJson(String provisioner, Authz authz) {
+        ObjectNode json = mapper.createObjectNode();
+        json.put("type", "http-01");
+        json.put("url", base(provisioner) + "/challenge/" + authz.id + "/http-01");
+        json.put("token", authz.token);
+        String status = authz.status();
+        json.put("status", status);
+        if ("valid".equals(status)) {
+            json.put("validated", authz.validAt.toString());
+        }
+        return json;
+    }
+
+    // ---------------------------------------------------------------- 签发
+
+    private Issued issue(Order order, byte[] der) throws Exception {
+        PKCS10CertificationRequest csr;
+        try {
+            csr = new PKCS10CertificationRequest(der);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("cannot parse CSR");
+        }
+        if (!csr.isSignatureValid(new JcaContentVerifierProviderBuilder().build(csr.getSubjectPublicKeyInfo()))) {
+            throw new IllegalArgumentException("CSR signature is invalid");
+        }
+
+        Instant now = Instant.now();
+        BigInteger serial = new BigInteger(128, random);
+        GeneralName[] names = new GeneralName[order.identifiers.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = new GeneralName(GeneralName.dNSName, order.identifiers.get(i));
+        }
+        X509v3CertificateBuilder builder = new X509v3CertificateBuilder(caName, serial,
+                Date.from(now.minus(Duration.ofMinutes(1))), Date.from(now.plus(Duration.ofHours(24))),
+                new X500Name("CN=" + order.identifiers.get(0)), csr.getSubjectPublicKeyInfo());
+        builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(false));
+        builder.addExtension(Extension.keyUsage, true, new KeyUsage(KeyUsage.digitalSignature | KeyUsage.keyEncipherment));
+        builder.addExtension(Extension.extendedKeyUsage, false,
+                new ExtendedKeyUsage(new KeyPurposeId[]{KeyPurposeId.id_kp_serverAuth, KeyPurposeId.id_kp_clientAuth}));
+        builder.addExtension(Extension.subjectAlternativeName, false, new GeneralNames(names));
+        X509CertificateHolder certificate = builder.build(
+                new JcaContentSignerBuilder(caSignatureAlgorithm).build(caKeyPair.getPrivate()));
+
+        // 额外签名耗时模拟远程 KMS/HSM 往返，用 sleep 而不是自旋，不占用本机 CPU
+        if (options.signingCostMs > 0) {
+            sleep(options.signingCostMs);
+        }
+        return new Issued(ids.incrementAndGet(), order.accountId, serial, pem(certificate.getEncoded()) + caPem);
+    }
+
+    private X509CertificateHolder selfSignedCa() throws Exception {
+        Instant now = Instant.now();
+        X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(caName, BigInteger.ONE,
+                Date.from(now.minus(Duration.ofMinutes(1))), Date.from(now.plus(Duration.ofDays(30))),
+                caName, caKeyPair.getPublic());
+        builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(true));
+        builder.addExtension(Extension.keyUsage, true, new KeyUsage(KeyUsage.keyCertSign | KeyUsage.cRLSign));
+        return builder.build(new JcaContentSignerBuilder(caSignatureAlgorithm).build(caKeyPair.getPrivate()));
+    }
+
+    private static String pem(byte[] der) {
+        return "-----BEGIN CERTIFICATE-----\n"
+                + Base64.getMimeEncoder(64, new byte[]{'\n'}).encodeToString(der)
+                + "\n-----END CERTIFICATE-----\n";
+    }
+
+    // ---------------------------------------------------------------- JWS 与响应
+
+    private Jws parseJws(byte[] body) {
+        try {
+            JsonNode jws = mapper.readTree(body);
+            JsonNode header = mapper.readTree(BASE64URL.decode(jws.path("protected").asText()));
+            String payload = jws.path("payload").asText("");
+            return new Jws(header.path("nonce").asText(null), header.path("kid").asText(null),
+                    header.get("jwk"), payload.isEmpty(),
+                    payload.isEmpty() ? mapper.createObjectNode() : mapper.readTree(BASE64URL.decode(payload)));
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void sendJson(HttpExchange exchange, int status, JsonNode json, String location, String provisioner)
+            throws IOException {
+        send(exchange, status, "application/json", mapper.writeValueAsBytes(json), location, provisioner);
+    }
+
+    private void problem(HttpExchange exchange, int status, String type, String detail, String provisioner)
+            throws IOException {
+        ObjectNode json = mapper.createObjectNode();
+        json.put("type", ERROR_PREFIX + type);
+        json.put("detail", detail);
+        json.put("status", status);
+        send(exchange, status, "application/problem+json", mapper.writeValueAsBytes(json), null, provisioner);
+    }
+
+    /**
+     * 每个响应都带新的 Replay-Nonce；provisioner 已知时附带 rel="index" 链接
+     */
+    private void send(HttpExchange exchange, int status, String contentType, byte[] body, String location,
+                      String provisioner) throws IOException {
+        var headers = exchange.getResponseHeaders();
+        headers.set("Replay-Nonce", nonce());
+        headers.set("Cache-Control", "no-store");
+        if (provisioner != null) {
+            headers.add("Link", "<" + base(provisioner) + "/directory>;rel=\"index\"");
+        }
+        if (location != null) {
+            headers.set("Location", location);
+        }
+        if (contentType != null) {
+            headers.set("Content-Type", contentType);
+        }
+        boolean empty = body == null || body.length == 0 || "HEAD".equals(exchange.getRequestMethod());
+        exchange.sendResponseHeaders(status, empty ? -1 : body.length);
+        if (!empty) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private String nonce() {
+        String nonce = Long.toString(nonceCounter.incrementAndGet(), 36) + "-"
+                + Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36);
+        long now = System.currentTimeMillis();
+        nonces.put(nonce, now);
+        // 客户端拿到后不使用的 nonce 会一直留在表中，超过上限时清掉五分钟前签发的
+        if (nonces.size() > options.maxNonces) {
+            nonces.values().removeIf(issuedAt -> issuedAt < now - 300_000);
+        }
+        return nonce;
+    }
+
+    private String token() {
+        byte[] bytes = new byte[24];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private String canonical(JsonNode jwk) {
+        // 字段排序后序列化，同一把公钥不受客户端字段顺序影响
+        Map<String, String> fields = new TreeMap<>();
+        jwk.fields().forEachRemaining(field -> fields.put(field.getKey(), field.getValue().asText()));
+        return fields.toString();
+    }
+
+    private void simulateLatency() {
+        long delay = options.latencyMs;
+        if (options.jitterMs > 0) {
+            delay += ThreadLocalRandom.current().nextLong(options.jitterMs + 1);
+        }
+        if (delay > 0) {
+            sleep(delay);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long id(String[] segments, int index) {
+        try {
+            return segments.length > index ? Long.parseLong(segments[index]) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void count(String endpoint) {
+        requests.computeIfAbsent(endpoint, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * 各端点请求数、注入错误数、badNonce 数与签发/吊销数
+     */
+    public Map<String, Long> stats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        new TreeMap<>(requests).forEach((endpoint, count) -> stats.put(endpoint, count.sum()));
+        stats.put("injected-errors", injectedErrors.sum());
+        stats.put("bad-nonces", badNonces.sum());
+        stats.put("issued", (long) certificates.size());
+        stats.put("revoked", certificates.values().stream().filter(issued -> issued.revoked).count());
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    // ---------------------------------------------------------------- 内部类型
+
+    private interface Owned {
+        long accountId();
+    }
+
+    private record Jws(String nonce, String kid, JsonNode jwk, boolean postAsGet, JsonNode payload) {
+
+        /**
+         * kid 形如 .../account/{id}，没有 kid 时返回 -1
+         */
+        long accountId() {
+            if (kid == null) {
+                return -1;
+            }
+            try {
+                return Long.parseLong(kid.substring(kid.lastIndexOf('/') + 1));
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+
+    private static final class Order implements Owned {
+        final long id;
+        final long accountId;
+        final List<String> identifiers;
+        final List<Long> authzIds = new ArrayList<>();
+        final Instant created = Instant.now();
+        volatile long certificateId;
+        volatile Instant issuedAt;
+
+        Order(long id, long accountId, List<String> identifiers) {
+            this.id = id;
+            this.accountId = accountId;
+            this.identifiers = identifiers;
+        }
+
+        @Override
+        public long accountId() {
+            return accountId;
+        }
+    }
+
+    private static final class Authz implements Owned {
+        final long id;
+        final long accountId;
+        final String identifier;
+        final String token;
+        final Instant created = Instant.now();
+        volatile Instant validAt;
+
+        Authz(long id, long accountId, String identifier, String token) {
+            this.id = id;
+            this.accountId = accountId;
+            this.identifier = identifier;
+            this.token = token;
+        }
+
+        synchronized void trigger(Instant at) {
+            if (validAt == null) {
+                validAt = at;
+            }
+        }
+
+        String status() {
+            Instant at = validAt;
+            if (at == null) {
+                return "pending";
+            }
+            return Instant.now().isBefore(at) ? "processing" : "valid";
+        }
+
+        @Override
+        public long accountId() {
+            return accountId;
+        }
+    }
+
+    private static final class Issued implements Owned {
+        final long id;
+        final long accountId;
+        final BigInteger serial;
+        final String chain;
+        volatile boolean revoked;
+
+        Issued(long id, long accountId, BigInteger serial, String chain) {
+            this.id = id;
+            this.accountId = accountId;
+            this.serial = serial;
+            this.chain = chain;
+        }
+
+        synchronized boolean revoke() {
+            if (revoked) {
+                return false;
+            }
+            revoked = true;
+            return true;
+        }
+
+        @Override
+        public long accountId() {
+            return accountId;
+        }
+    }
+
+    // ---------------------------------------------------------------- 配置
+
+    /**
+     * 命令行形式的选项（--name=value），未给出的取默认值
+     */
+    public static final class Options {
+        String host = "127.0.0.1";
+        int port;
+        /** 写入响应链接的对外地址，默认为服务器自身地址 */
+        String externalUrl;
+        /** 每个请求的固定延迟与随机抖动上限 */
+        long latencyMs;
+        long jitterMs;
+        /** 注入错误的概率（0~1），一半 500，一半 503 + Retry-After */
+        double errorRate;
+        int retryAfterSeconds = 1;
+        /** CA 密钥类型：ec（P-256）或 rsa（2048） */
+        String keyType = "ec";
+        /** 每次签发额外的耗时 */
+        long signingCostMs;
+        /** 触发挑战后授权变为 valid、finalize 后订单变为 valid 的延迟 */
+        long validationDelayMs;
+        long issueDelayMs;
+        boolean validateNonces = true;
+        int maxNonces = 100_000;
+
+        public static Options from(Map<String, String> args) {
+            Options options = new Options();
+            options.host = args.getOrDefault("host", options.host);
+            options.port = Integer.parseInt(args.getOrDefault("port", "0"));
+            options.externalUrl = args.get("external-url");
+            options.latencyMs = Long.parseLong(args.getOrDefault("latency-ms", "0"));
+            options.jitterMs = Long.parseLong(args.getOrDefault("jitter-ms", "0"));
+            options.errorRate = Double.parseDouble(args.getOrDefault("error-rate", "0"));
+            options.retryAfterSeconds = Integer.parseInt(args.getOrDefault("retry-after-seconds", "1"));
+            options.keyType = args.getOrDefault("key-type", options.keyType);
+            options.signingCostMs = Long.parseLong(args.getOrDefault("signing-cost-ms", "0"));
+            options.validationDelayMs = Long.parseLong(args.getOrDefault("validation-delay-ms", "0"));
+            options.issueDelayMs = Long.parseLong(args.getOrDefault("issue-delay-ms", "0"));
+            options.validateNonces = Boolean.parseBoolean(args.getOrDefault("validate-nonces", "true"));
+            options.maxNonces = Integer.parseInt(args.getOrDefault("max-nonces", "100000"));
+            return options;
+        }
+
+        @Override
+        public String toString() {
+            return "latency=" + latencyMs + "ms+" + jitterMs + "ms, error-rate=" + errorRate
+                    + ", key=" + keyType + ", signing-cost=" + signingCostMs + "ms"
+                    + ", validation-delay=" + validationDelayMs + "ms, issue-delay=" + issueDelayMs + "ms";
+        }
+    }
+
+    /**
+     * 解析 --name=value 形式的参数，单独的 --flag 视为 true
+     */
+    static Map<String, String> arguments(String[] args) {
+        Map<String, String> parsed = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                continue;
+            }
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                parsed.put(arg.substring(2), "true");
+            } else {
+                parsed.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+        return parsed;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.from(arguments(args));
+        MockAcmeServer mock = start(options);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println(mock.stats());
+            mock.close();
+        }));
+        System.out.println("Mock ACME 服务器已启动: " + mock.url() + "（" + options + "）");
+        System.out.println("directory: " + mock.base("acme") + "/directory");
+        new CountDownLatch(1).await();
+    }
+}
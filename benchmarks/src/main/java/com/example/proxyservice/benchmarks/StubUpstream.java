@@ -0,0 +1,75 @@
+package com.example.proxyservice.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内的 step-ca 替身：固定响应 + 递增 Replay-Nonce，延迟只来自本机回环，基准结果反映代理自身的开销
+ */
+final class StubUpstream implements AutoCloseable {
+
+    private static final byte[] ORDER = ("{\"status\":\"pending\",\"expires\":\"2030-01-01T00:00:00Z\","
+            + "\"identifiers\":[{\"type\":\"dns\",\"value\":\"bench.example.com\"}],"
+            + "\"authorizations\":[\"https://ca/acme/bench/authz/1\"],"
+            + "\"finalize\":\"https://ca/acme/bench/order/1/finalize\"}").getBytes(StandardCharsets.UTF_8);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong nonces = new AtomicLong();
+
+    private StubUpstream(HttpServer server, ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    static StubUpstream start() throws IOException {
+        // 默认未开启 TCP_NODELAY，响应头与响应体分两次写出时会碰上 Nagle + 延迟 ACK 的 40ms 等待
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 512);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        StubUpstream stub = new StubUpstream(server, executor);
+        server.createContext("/", stub::handle);
+        server.setExecutor(executor);
+        server.start();
+        return stub;
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        exchange.getResponseHeaders().set("Replay-Nonce", "bench-" + nonces.incrementAndGet());
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("Location", "https://ca/acme/bench/order/1");
+        // POST new-order 返回 201，GET（directory 等）返回 200 以便进入响应缓存
+        exchange.sendResponseHeaders("POST".equals(exchange.getRequestMethod()) ? 201 : 200, ORDER.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(ORDER);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.proxyservice.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * 已签发证书存储配置（acme.cert-store.*）
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "acme.cert-store")
+public class CertificateStoreProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * 段文件与索引快照所在目录
+     */
+    private String directory = "data/certs";
+
+    /**
+     * 单个段文件大小，写满后新建下一个段；整个段映射进内存，单条记录不能超过该大小
+     */
+    private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+    /**
+     * 有新写入时多久写一次索引快照；启动时只需从快照位置往后扫描段文件
+     */
+    private long snapshotIntervalMs = 300000;
+}
@@ -0,0 +1,55 @@
+package com.example.proxyservice.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按 ACME 操作分类的自适应并发限制配置（proxy.concurrency.*）
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "proxy.concurrency")
+public class ConcurrencyLimitProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * routes 中未单独配置的操作使用的限制
+     */
+    private Limit defaults = new Limit();
+
+    /**
+     * 乘性减小系数：上游变慢或出错时 limit 乘以该值
+     */
+    private double backoffRatio = 0.9;
+
+    /**
+     * 单次延迟超过基线延迟的倍数时视为过载信号
+     */
+    private double latencyTolerance = 2.0;
+
+    /**
+     * 拒绝请求时返回的 Retry-After
+     */
+    private Duration retryAfter = Duration.ofSeconds(1);
+
+    /**
+     * 按操作覆盖限制，键为操作名，例如 finalize、new-order、directory
+     */
+    private Map<String, Limit> routes = new LinkedHashMap<>();
+
+    @Data
+    public static class Limit {
+
+        private int initialLimit = 20;
+
+        private int minLimit = 2;
+
+        private int maxLimit = 200;
+    }
+}
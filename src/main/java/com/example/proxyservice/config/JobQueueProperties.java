@@ -0,0 +1,41 @@
+package com.example.proxyservice.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 异步签发任务队列配置（acme.jobs.*）
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "acme.jobs")
+public class JobQueueProperties {
+
+    /**
+     * 专用工作线程数，决定同时进行的签发数量
+     */
+    private int workers = 4;
+
+    /**
+     * 排队上限，队列满时提交返回 503
+     */
+    private int capacity = 1000;
+
+    /**
+     * 任务文件目录，每个任务一个 JSON 文件，重启时从这里恢复未完成的任务
+     */
+    private String directory = "data/jobs";
+
+    /**
+     * 已完成任务保留多久供查询，到期后删除内存记录与文件（结果中包含私钥）
+     */
+    private Duration retention = Duration.ofHours(24);
+
+    /**
+     * 队列满时返回的 Retry-After
+     */
+    private Duration retryAfter = Duration.ofSeconds(5);
+}
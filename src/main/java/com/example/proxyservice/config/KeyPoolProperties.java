@@ -0,0 +1,52 @@
+package com.example.proxyservice.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 预生成密钥对池配置（acme.key-pool.*）
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "acme.key-pool")
+public class KeyPoolProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * 后台生成线程数，生成 RSA 密钥是纯 CPU 计算，不宜超过空闲核数
+     */
+    private int workers = 1;
+
+    /**
+     * 每种密钥的最小与最大预生成深度，实际目标深度按需求在两者之间调整
+     */
+    private int minDepth = 2;
+
+    private int maxDepth = 64;
+
+    /**
+     * 目标深度 = 近期每秒取用数 × refill-horizon，即池中的密钥足以覆盖这段时间的需求
+     */
+    private Duration refillHorizon = Duration.ofSeconds(30);
+
+    /**
+     * 需求统计与目标深度的调整周期
+     */
+    private Duration rebalanceInterval = Duration.ofSeconds(10);
+
+    /**
+     * 需求速率的 EWMA 平滑系数
+     */
+    private double ewmaAlpha = 0.3;
+
+    /**
+     * 预生成的密钥规格，格式为 算法-长度，例如 RSA-2048、EC-256、Ed25519-0；只为这些规格建池，其他规格内联生成
+     */
+    private List<String> prewarm = new ArrayList<>(List.of("RSA-2048"));
+}
@@ -1,41 +1,123 @@
 package com.example.proxyservice.config;
 
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
 import org.apache.hc.client5.http.impl.classic.HttpClients;
 import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.socket.ConnectionSocketFactory;
+import org.apache.hc.client5.http.socket.PlainConnectionSocketFactory;
+import org.apache.hc.client5.http.ssl.ClientTlsStrategyBuilder;
+import org.apache.hc.client5.http.ssl.HttpsSupport;
+import org.apache.hc.client5.http.ssl.NoopHostnameVerifier;
 import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactory;
 import org.apache.hc.client5.http.ssl.TrustAllStrategy;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.config.RegistryBuilder;
+import org.apache.hc.core5.http.protocol.HttpContext;
 import org.apache.hc.core5.ssl.SSLContextBuilder;
+import org.apache.hc.core5.ssl.SSLContexts;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
-import org.apache.hc.client5.http.socket.ConnectionSocketFactory;
-import org.apache.hc.client5.http.socket.PlainConnectionSocketFactory;
-import org.apache.hc.core5.http.config.Registry;
-import org.apache.hc.core5.http.config.RegistryBuilder;
+import org.apache.hc.core5.pool.PoolConcurrencyPolicy;
+import org.apache.hc.core5.pool.PoolReusePolicy;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 
+import jakarta.annotation.PostConstruct;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.function.Consumer;
 
+@Slf4j
 @Configuration
 public class ProxyConfig implements WebMvcConfigurer {
 
+    /**
+     * 新建连接时 socket 工厂写入 HttpContext 的耗时（纳秒，Long）：建连总耗时（含 TLS）与其中的 TLS 握手耗时
+     */
+    public static final String CONNECT_NANOS_ATTRIBUTE = "proxy.connect-nanos";
+    public static final String TLS_NANOS_ATTRIBUTE = "proxy.tls-nanos";
+
     @Value("${step-ca.url:https://step.it.com}")
     private String stepCaUrl;
 
     @Value("${proxy.trust-all-certs:true}")
     private boolean trustAllCerts;
 
-    @Bean
-    public CloseableHttpClient httpClient() throws Exception {
+    @Value("${proxy.streaming.enabled:false}")
+    private boolean streamingEnabled;
+
+    @Value("${proxy.engine:blocking}")
+    private String engine;
+
+    @Value("${proxy.max-connections:100}")
+    private int maxConnections;
+
+    @Value("${proxy.max-connections-per-route:100}")
+    private int maxConnectionsPerRoute;
+
+    @Value("${proxy.pool.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+
+    @Value("${proxy.pool.response-timeout-ms:${step-ca.timeout:30000}}")
+    private long responseTimeoutMs;
+
+    @Value("${proxy.pool.connection-request-timeout-ms:5000}")
+    private long connectionRequestTimeoutMs;
+
+    @Value("${proxy.pool.idle-timeout-ms:60000}")
+    private long idleTimeoutMs;
+
+    @Value("${proxy.pool.validate-after-inactivity-ms:2000}")
+    private long validateAfterInactivityMs;
+
+    /**
+     * 连接最长存活时间，小于等于 0 表示不限制
+     */
+    @Value("${proxy.pool.time-to-live-ms:-1}")
+    private long timeToLiveMs;
+
+    /**
+     * LIFO 优先复用最近归还的连接，FIFO 在连接间轮转
+     */
+    @Value("${proxy.pool.reuse-policy:LIFO}")
+    private PoolReusePolicy poolReusePolicy;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreadsEnabled;
+
+    @PostConstruct
+    public void checkThreadingMode() {
+        if (virtualThreadsEnabled && Runtime.version().feature() < 21) {
+            // Spring Boot 在 Java 21 以下会静默忽略该配置，这里显式提示
+            log.warn("spring.threads.virtual.enabled is set but the runtime is Java {}; falling back to platform threads",
+                    Runtime.version().feature());
+        } else if (virtualThreadsEnabled) {
+            log.info("Request handling and step-ca calls run on virtual threads");
+        }
+    }
+
+    /**
+     * 按 proxy.* 配置创建一个独立的连接池；socket 工厂会把建连与 TLS 握手耗时写入请求的 HttpContext
+     */
+    public PoolingHttpClientConnectionManager createConnectionManager() throws Exception {
+        SSLConnectionSocketFactory sslSocketFactory;
         if (trustAllCerts) {
-            SSLContext sslContext = SSLContextBuilder.create()
-                    .loadTrustMaterial(TrustAllStrategy.INSTANCE)
-                    .build();
-            
             // 创建信任所有主机名的验证器
             HostnameVerifier allHostsValid = new HostnameVerifier() {
                 @Override
@@ -43,30 +125,152 @@ public class ProxyConfig implements WebMvcConfigurer {
                     return true; // 信任所有主机名
                 }
             };
-            
-            SSLConnectionSocketFactory sslSocketFactory = new SSLConnectionSocketFactory(
-                    sslContext, 
-                    allHostsValid // 使用自定义的主机名验证器
-            );
-            
-            Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory>create()
-                    .register("http", PlainConnectionSocketFactory.getSocketFactory())
-                    .register("https", sslSocketFactory)
-                    .build();
-            PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(socketFactoryRegistry);
-            connectionManager.setMaxTotal(100);
-            connectionManager.setDefaultMaxPerRoute(20);
-            return HttpClients.custom()
-                    .setConnectionManager(connectionManager)
-                    .build();
+            sslSocketFactory = new TimedSslSocketFactory(trustAllSslContext(), allHostsValid);
         } else {
-            PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
-            connectionManager.setMaxTotal(100);
-            connectionManager.setDefaultMaxPerRoute(20);
-            return HttpClients.custom()
-                    .setConnectionManager(connectionManager)
-                    .build();
+            sslSocketFactory = new TimedSslSocketFactory(SSLContexts.createDefault(), HttpsSupport.getDefaultHostnameVerifier());
+        }
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create()
+                        .register("http", new TimedPlainSocketFactory())
+                        .register("https", sslSocketFactory)
+                        .build(),
+                PoolConcurrencyPolicy.STRICT, poolReusePolicy, null);
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        connectionManager.setDefaultConnectionConfig(connectionConfig());
+        return connectionManager;
+    }
+
+    /**
+     * customizer 可以在构建前追加执行链拦截器等
+     */
+    public CloseableHttpClient createHttpClient(PoolingHttpClientConnectionManager connectionManager,
+                                                Consumer<HttpClientBuilder> customizer) {
+        HttpClientBuilder builder = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig())
+                .evictIdleConnections(TimeValue.ofMilliseconds(idleTimeoutMs))
+                .evictExpiredConnections();
+        customizer.accept(builder);
+        return builder.build();
+    }
+
+    /**
+     * 非阻塞转发引擎使用的连接池，仅在 proxy.engine=async 时创建
+     */
+    @Bean
+    @ConditionalOnProperty(name = "proxy.engine", havingValue = "async")
+    public PoolingAsyncClientConnectionManager asyncConnectionManager() throws Exception {
+        PoolingAsyncClientConnectionManagerBuilder connectionManagerBuilder = PoolingAsyncClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setConnPoolPolicy(poolReusePolicy)
+                .setPoolConcurrencyPolicy(PoolConcurrencyPolicy.STRICT)
+                .setDefaultConnectionConfig(connectionConfig());
+        if (trustAllCerts) {
+            connectionManagerBuilder.setTlsStrategy(ClientTlsStrategyBuilder.create()
+                    .setSslContext(trustAllSslContext())
+                    .setHostnameVerifier(NoopHostnameVerifier.INSTANCE)
+                    .build());
+        }
+        return connectionManagerBuilder.build();
+    }
+
+    /**
+     * 非阻塞转发引擎使用的异步客户端，仅在 proxy.engine=async 时创建
+     */
+    @Bean
+    @ConditionalOnProperty(name = "proxy.engine", havingValue = "async")
+    public CloseableHttpAsyncClient httpAsyncClient(PoolingAsyncClientConnectionManager asyncConnectionManager) {
+        CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+                .setConnectionManager(asyncConnectionManager)
+                .setDefaultRequestConfig(requestConfig())
+                .evictIdleConnections(TimeValue.ofMilliseconds(idleTimeoutMs))
+                .evictExpiredConnections()
+                .build();
+        client.start();
+        return client;
+    }
+
+    /**
+     * 累加到 HttpContext 的耗时属性：一次执行可能依次尝试多个地址
+     */
+    private static void addNanos(HttpContext context, String attribute, long nanos) {
+        if (context == null) {
+            return;
         }
+        Object previous = context.getAttribute(attribute);
+        context.setAttribute(attribute, previous instanceof Long value ? value + nanos : nanos);
+    }
+
+    private static final class TimedPlainSocketFactory extends PlainConnectionSocketFactory {
+
+        @Override
+        public Socket connectSocket(Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+                                    InetSocketAddress localAddress, Timeout connectTimeout, Object attachment,
+                                    HttpContext context) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.connectSocket(socket, host, remoteAddress, localAddress, connectTimeout, attachment, context);
+            } finally {
+                addNanos(context, CONNECT_NANOS_ATTRIBUTE, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static final class TimedSslSocketFactory extends SSLConnectionSocketFactory {
+
+        TimedSslSocketFactory(SSLContext sslContext, HostnameVerifier hostnameVerifier) {
+            super(sslContext, hostnameVerifier);
+        }
+
+        @Override
+        public Socket connectSocket(Socket socket, HttpHost host, InetSocketAddress remoteAddress,
+                                    InetSocketAddress localAddress, Timeout connectTimeout, Object attachment,
+                                    HttpContext context) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.connectSocket(socket, host, remoteAddress, localAddress, connectTimeout, attachment, context);
+            } finally {
+                addNanos(context, CONNECT_NANOS_ATTRIBUTE, System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public Socket createLayeredSocket(Socket socket, String target, int port, Object attachment,
+                                          HttpContext context) throws IOException {
+            long start = System.nanoTime();
+            try {
+                return super.createLayeredSocket(socket, target, port, attachment, context);
+            } finally {
+                addNanos(context, TLS_NANOS_ATTRIBUTE, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private SSLContext trustAllSslContext() throws Exception {
+        return SSLContextBuilder.create()
+                .loadTrustMaterial(TrustAllStrategy.INSTANCE)
+                .build();
+    }
+
+    private ConnectionConfig connectionConfig() {
+        return ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                .setSocketTimeout(Timeout.ofMilliseconds(responseTimeoutMs))
+                .setValidateAfterInactivity(TimeValue.ofMilliseconds(validateAfterInactivityMs))
+                .setTimeToLive(TimeValue.ofMilliseconds(timeToLiveMs))
+                .build();
+    }
+
+    /**
+     * 客户端默认的请求级超时，按请求覆盖时以此为基础
+     */
+    public RequestConfig requestConfig() {
+        return RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectionRequestTimeoutMs))
+                .setResponseTimeout(Timeout.ofMilliseconds(responseTimeoutMs))
+                .build();
     }
 
     @Override
@@ -81,5 +285,13 @@ public class ProxyConfig implements WebMvcConfigurer {
     public String getStepCaUrl() {
         return stepCaUrl;
     }
+
+    public boolean isStreamingEnabled() {
+        return streamingEnabled;
+    }
+
+    public String getEngine() {
+        return engine;
+    }
 }
 
@@ -0,0 +1,43 @@
+package com.example.proxyservice.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 只读 GET 资源响应缓存配置（proxy.cache.*）
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "proxy.cache")
+public class ResponseCacheProperties {
+
+    private boolean enabled = true;
+
+    /**
+     * 最多缓存的 URL 数量，超出后先淘汰超出 max-stale 的条目，再淘汰最早过期的条目
+     */
+    private int maxEntries = 256;
+
+    /**
+     * 过期后仍可返回旧内容、同时在后台重新验证的时间窗口
+     */
+    private Duration maxStale = Duration.ofMinutes(1);
+
+    private List<Route> routes = new ArrayList<>();
+
+    @Data
+    public static class Route {
+
+        /**
+         * Ant 风格路径，例如 /roots.pem
+         */
+        private String pattern;
+
+        private Duration ttl = Duration.ofMinutes(5);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.proxyservice.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按 ACME 操作分类的上游超时预算配置（proxy.timeouts.*）
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "proxy.timeouts")
+public class TimeoutProperties {
+
+    /**
+     * 客户端声明剩余等待时间（毫秒）的请求头，存在时缩短上游截止时间
+     */
+    private String deadlineHeader = "X-Request-Timeout";
+
+    /**
+     * 剩余时间低于该值时不再转发，直接返回 504
+     */
+    private Duration minRemaining = Duration.ofMillis(50);
+
+    /**
+     * routes 中未单独配置的操作使用的预算
+     */
+    private Budget defaults = new Budget();
+
+    /**
+     * 按操作覆盖预算，键为操作名，例如 directory、new-nonce、finalize
+     */
+    private Map<String, Budget> routes = new LinkedHashMap<>();
+
+    @Data
+    public static class Budget {
+
+        /**
+         * 建立 TCP/TLS 连接的超时
+         */
+        private Duration connect = Duration.ofSeconds(5);
+
+        /**
+         * 等待上游响应数据的超时（两次读取之间）
+         */
+        private Duration response = Duration.ofSeconds(30);
+
+        /**
+         * 从开始转发到读完响应的总时长，到期后取消上游请求
+         */
+        private Duration total = Duration.ofSeconds(30);
+    }
+}
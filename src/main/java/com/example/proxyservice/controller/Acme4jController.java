@@ -6,6 +6,7 @@ import com.example.proxyservice.model.RevokeRequest;
 import com.example.proxyservice.service.Acme4jCertificateService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -47,7 +48,15 @@ public class Acme4jController {
     public ResponseEntity<CertificateResponse> downloadCertificate(@PathVariable String serialNumber) {
         log.info("Downloading certificate with serial: {}", serialNumber);
         CertificateResponse response = acme4jCertificateService.downloadCertificate(serialNumber);
-        return ResponseEntity.ok(response);
+        
+        if (response == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(CertificateResponse.error("Certificate not found: " + serialNumber));
+        } else if ("success".equals(response.getStatus())) {
+            return ResponseEntity.ok(response);
+        } else {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
     }
 
     /**
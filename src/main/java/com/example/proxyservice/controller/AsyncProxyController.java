@@ -0,0 +1,43 @@
+package com.example.proxyservice.controller;
+
+import com.example.proxyservice.service.AsyncProxyService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import jakarta.servlet.http.HttpServletRequest;
+import java.io.IOException;
+
+/**
+ * proxy.engine=async 时替代 {@link ProxyController}，转发期间不占用 Tomcat 工作线程
+ */
+@Slf4j
+@RestController
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "proxy.engine", havingValue = "async")
+public class AsyncProxyController {
+
+    private final AsyncProxyService asyncProxyService;
+
+    @RequestMapping(value = "/acme/**", method = {RequestMethod.GET, RequestMethod.POST, RequestMethod.PUT, RequestMethod.DELETE, RequestMethod.PATCH})
+    public DeferredResult<ResponseEntity<byte[]>> forwardAcmeRequest(HttpServletRequest request) throws IOException {
+        log.info("Received {} request for path: {}", request.getMethod(), request.getRequestURI());
+        byte[] body = StreamUtils.copyToByteArray(request.getInputStream());
+        return asyncProxyService.forwardRequest(request, body.length > 0 ? body : null);
+    }
+
+    @RequestMapping(value = "/roots.pem", method = RequestMethod.GET)
+    public DeferredResult<ResponseEntity<byte[]>> forwardRootsRequest(HttpServletRequest request) {
+        log.info("Received request for roots.pem");
+        return asyncProxyService.forwardRequest(request, null);
+    }
+
+    @RequestMapping(value = "/health", method = RequestMethod.GET)
+    public ResponseEntity<String> health() {
+        return ResponseEntity.ok("OK");
+    }
+}
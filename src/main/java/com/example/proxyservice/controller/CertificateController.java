@@ -1,17 +1,35 @@
 package com.example.proxyservice.controller;
 
+import com.example.proxyservice.model.CertificateJob;
 import com.example.proxyservice.model.CertificateRequest;
 import com.example.proxyservice.model.CertificateResponse;
 import com.example.proxyservice.model.RevokeRequest;
+import com.example.proxyservice.service.BatchIssuer;
 import com.example.proxyservice.service.CertificateService;
+import com.example.proxyservice.service.CertificateStore;
+import com.example.proxyservice.service.IssuanceJobQueue;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
 
 @Slf4j
 @RestController
@@ -19,7 +37,16 @@ import jakarta.validation.Valid;
 @RequiredArgsConstructor
 public class CertificateController {
 
+    // Tomcat 的 sendfile 请求属性，由连接器用 FileChannel.transferTo 发送文件区间
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
     private final CertificateService certificateService;
+    private final BatchIssuer batchIssuer;
+    private final IssuanceJobQueue issuanceJobQueue;
+    private final CertificateStore certificateStore;
 
     @PostMapping("/generate")
     public ResponseEntity<CertificateResponse> generateCertificate(@Valid @RequestBody CertificateRequest request) {
@@ -33,6 +60,43 @@ public class CertificateController {
         }
     }
 
+    /**
+     * 批量签发：请求体为 CertificateRequest 的 JSON 数组或 NDJSON，结果按完成顺序以 NDJSON 流式返回
+     */
+    @PostMapping(value = "/generate-batch",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE},
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void generateBatch(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        log.info("Starting batch certificate generation");
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        batchIssuer.run(request.getInputStream(), response.getOutputStream());
+    }
+
+    /**
+     * 异步签发：任务落盘入队后立即返回 202，Location 指向任务状态
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<CertificateJob> submitJob(@Valid @RequestBody CertificateRequest request) throws IOException {
+        CertificateJob job = issuanceJobQueue.submit(request);
+        if (job == null) {
+            log.warn("Issuance job queue full, rejecting CN: {}", request.getCommonName());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(issuanceJobQueue.getRetryAfter().toSeconds()))
+                    .build();
+        }
+        log.info("Queued certificate job {} for CN: {}", job.getId(), request.getCommonName());
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/certificates/jobs/" + job.getId()))
+                .body(job);
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<CertificateJob> getJob(@PathVariable String id) {
+        CertificateJob job = issuanceJobQueue.get(id);
+        return job != null ? ResponseEntity.ok(job) : ResponseEntity.notFound().build();
+    }
+
     @PostMapping("/revoke")
     public ResponseEntity<CertificateResponse> revokeCertificate(@Valid @RequestBody RevokeRequest request) {
         log.info("Revoking certificate with serial: {}", request.getSerialNumber());
@@ -45,23 +109,58 @@ public class CertificateController {
         }
     }
 
+    /**
+     * 下载证书 PEM：支持 sendfile 时由 Tomcat 直接从段文件发送，否则写出映射区切片
+     */
     @GetMapping("/download/{serialNumber}")
-    public ResponseEntity<String> downloadCertificate(@PathVariable String serialNumber) {
-        // 这里应该从数据库或存储中获取证书
-        // 为了演示，返回一个示例响应
+    public void downloadCertificate(@PathVariable String serialNumber, HttpServletRequest request,
+                                    HttpServletResponse response) throws IOException {
         log.info("Downloading certificate with serial: {}", serialNumber);
         
-        String certificateContent = "-----BEGIN CERTIFICATE-----\n" +
-                "示例证书内容，实际应该从存储中获取\n" +
-                "-----END CERTIFICATE-----";
-        
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.TEXT_PLAIN);
-        headers.setContentDispositionFormData("attachment", serialNumber + ".pem");
+        CertificateStore.StoredPem stored = certificateStore.find(serialNumber);
+        if (stored == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Certificate not found: " + serialNumber);
+            return;
+        }
         
-        return ResponseEntity.ok()
-                .headers(headers)
-                .body(certificateContent);
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename(stored.entry().serialNumber() + ".pem").build().toString());
+        response.setContentLengthLong(stored.length());
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, stored.file().toString());
+            request.setAttribute(SENDFILE_START, stored.offset());
+            request.setAttribute(SENDFILE_END, stored.offset() + stored.length());
+            return;
+        }
+        try (WritableByteChannel channel = Channels.newChannel(response.getOutputStream())) {
+            ByteBuffer content = stored.content();
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+        }
+    }
+
+    /**
+     * 按 CN、SAN 或到期时间查询已签发证书
+     */
+    @GetMapping("/search")
+    public ResponseEntity<List<CertificateStore.Entry>> searchCertificates(
+            @RequestParam(required = false) String commonName,
+            @RequestParam(required = false) String san,
+            @RequestParam(required = false) Integer expiringWithinDays,
+            @RequestParam(defaultValue = "100") @Min(1) @Max(1000) int limit) {
+        List<CertificateStore.Entry> entries;
+        if (commonName != null) {
+            entries = certificateStore.findByCommonName(commonName);
+        } else if (san != null) {
+            entries = certificateStore.findBySubjectAlternativeName(san);
+        } else if (expiringWithinDays != null) {
+            entries = certificateStore.expiringBefore(Instant.now().plus(expiringWithinDays, ChronoUnit.DAYS), limit);
+        } else {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(entries.size() > limit ? entries.subList(0, limit) : entries);
     }
 
     @GetMapping("/status")
@@ -3,15 +3,19 @@ package com.example.proxyservice.controller;
 import com.example.proxyservice.service.ProxyService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.bind.annotation.*;
 
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
 
 @Slf4j
 @RestController
 @RequiredArgsConstructor
+@ConditionalOnProperty(name = "proxy.engine", havingValue = "blocking", matchIfMissing = true)
 public class ProxyController {
 
     private final ProxyService proxyService;
@@ -19,15 +23,27 @@ public class ProxyController {
     @RequestMapping(value = "/acme/**", method = {RequestMethod.GET, RequestMethod.POST, RequestMethod.PUT, RequestMethod.DELETE, RequestMethod.PATCH})
     public ResponseEntity<byte[]> forwardAcmeRequest(
             HttpServletRequest request,
-            @RequestBody(required = false) byte[] body) throws IOException {
+            HttpServletResponse response) throws IOException {
         
         log.info("Received {} request for path: {}", request.getMethod(), request.getRequestURI());
-        return proxyService.forwardRequest(request, body);
+        if (proxyService.isStreamingEnabled()) {
+            // 流式模式直接写 servlet 响应，不再由 Spring 序列化
+            proxyService.streamRequest(request, response);
+            return null;
+        }
+        byte[] body = StreamUtils.copyToByteArray(request.getInputStream());
+        return proxyService.forwardRequest(request, body.length > 0 ? body : null);
     }
 
     @RequestMapping(value = "/roots.pem", method = RequestMethod.GET)
-    public ResponseEntity<byte[]> forwardRootsRequest(HttpServletRequest request) throws IOException {
+    public ResponseEntity<byte[]> forwardRootsRequest(
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
         log.info("Received request for roots.pem");
+        if (proxyService.isStreamingEnabled()) {
+            proxyService.streamRequest(request, response);
+            return null;
+        }
         return proxyService.forwardRequest(request, null);
     }
 
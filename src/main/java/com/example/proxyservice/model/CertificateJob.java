@@ -0,0 +1,41 @@
+package com.example.proxyservice.model;
+
+import lombok.Data;
+
+import java.time.Instant;
+
+/**
+ * 异步签发任务，状态变化时整体写入磁盘
+ */
+@Data
+public class CertificateJob {
+
+    public enum State {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+
+    private String id;
+
+    private State state;
+
+    private CertificateRequest request;
+
+    private CertificateResponse result;
+
+    private String message;
+
+    /**
+     * 执行次数，重启时中断的任务会再次执行
+     */
+    private int attempts;
+
+    private Instant submittedAt;
+
+    private Instant startedAt;
+
+    private Instant finishedAt;
+
+    public boolean isFinished() {
+        return state == State.SUCCEEDED || state == State.FAILED;
+    }
+}
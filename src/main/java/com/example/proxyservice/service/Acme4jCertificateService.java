@@ -10,6 +10,7 @@ import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
 import javax.net.ssl.*;
+import java.nio.charset.StandardCharsets;
 import java.security.*;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
@@ -20,6 +21,10 @@ import java.util.*;
 @RequiredArgsConstructor
 public class Acme4jCertificateService {
 
+    private final KeyPairPool keyPairPool;
+    private final CsrBuilder csrBuilder;
+    private final CertificateStore certificateStore;
+
     @Value("${step-ca.url:https://step.it.com}")
     private String stepCaUrl;
 
@@ -90,10 +95,11 @@ public class Acme4jCertificateService {
             log.info("Generating certificate for domains: {}", request.getSubjectAlternativeNames());
             
             // 生成密钥对
-            KeyPair domainKey = createKeyPair(request.getKeySize());
+            CsrBuilder.KeySpec keySpec = csrBuilder.resolve(request.getKeyType(), request.getKeySize());
+            KeyPair domainKey = createKeyPair(keySpec);
             
-            // 创建简化的证书请求
-            String csr = createSimpleCSR(request, domainKey);
+            // 创建 PKCS#10 证书请求
+            String csr = csrBuilder.build(request, domainKey, keySpec);
             
             // 模拟向 step-ca 请求签名证书
             String signedCertificate = simulateCertificateRequest(csr, request);
@@ -102,10 +108,13 @@ public class Acme4jCertificateService {
                 // 转换私钥为 PEM 格式
                 String privateKeyPem = convertPrivateKeyToPEM(domainKey.getPrivate());
                 
-                // 获取证书序列号
-                String serialNumber = extractSerialNumber(signedCertificate);
+                // 保存证书并取得其真实序列号
+                CertificateStore.Entry stored = certificateStore.store(signedCertificate, request);
                 
-                return CertificateResponse.success(serialNumber, signedCertificate, privateKeyPem, signedCertificate);
+                CertificateResponse response = CertificateResponse.success(stored.serialNumber(), signedCertificate, privateKeyPem, signedCertificate);
+                response.setIssuedAt(stored.notBefore().toString());
+                response.setExpiresAt(stored.notAfter().toString());
+                return response;
             } else {
                 return CertificateResponse.error("Failed to obtain certificate from step-ca");
             }
@@ -138,19 +147,21 @@ public class Acme4jCertificateService {
     }
 
     /**
-     * 下载证书
+     * 下载证书，证书库中没有该序列号时返回 null
      */
     public CertificateResponse downloadCertificate(String serialNumber) {
         try {
             log.info("Downloading certificate with serial: {}", serialNumber);
             
-            // 这里需要实现从存储中根据序列号查找证书
-            // 或者通过 ACME 服务器查询证书状态
-            // 暂时返回模拟响应
+            CertificateStore.StoredPem stored = certificateStore.find(serialNumber);
+            if (stored == null) {
+                return null;
+            }
+            String certificate = StandardCharsets.US_ASCII.decode(stored.content()).toString();
             
-            CertificateResponse response = new CertificateResponse();
-            response.setStatus("success");
-            response.setMessage("Certificate download not implemented yet");
+            CertificateResponse response = CertificateResponse.success(stored.entry().serialNumber(), certificate, null, certificate);
+            response.setIssuedAt(stored.entry().notBefore().toString());
+            response.setExpiresAt(stored.entry().notAfter().toString());
             return response;
             
         } catch (Exception e) {
@@ -162,49 +173,8 @@ public class Acme4jCertificateService {
     /**
      * 创建密钥对
      */
-    private KeyPair createKeyPair(int keySize) throws NoSuchAlgorithmException {
-        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
-        keyPairGenerator.initialize(keySize);
-        return keyPairGenerator.generateKeyPair();
-    }
-
-    /**
-     * 创建简化的证书请求
-     */
-    private String createSimpleCSR(CertificateRequest request, KeyPair keyPair) throws Exception {
-        // 构建主题名称
-        StringBuilder subjectBuilder = new StringBuilder();
-        subjectBuilder.append("CN=").append(request.getCommonName());
-        
-        if (request.getOrganization() != null) {
-            subjectBuilder.append(", O=").append(request.getOrganization());
-        }
-        if (request.getOrganizationalUnit() != null) {
-            subjectBuilder.append(", OU=").append(request.getOrganizationalUnit());
-        }
-        if (request.getCountry() != null) {
-            subjectBuilder.append(", C=").append(request.getCountry());
-        }
-        if (request.getState() != null) {
-            subjectBuilder.append(", ST=").append(request.getState());
-        }
-        if (request.getLocality() != null) {
-            subjectBuilder.append(", L=").append(request.getLocality());
-        }
-
-        // 简化处理：创建一个基本的CSR格式字符串
-        // 实际项目中应该使用标准的PKCS#10 CSR格式
-        Map<String, Object> csrData = new HashMap<>();
-        csrData.put("subject", subjectBuilder.toString());
-        csrData.put("publicKey", Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded()));
-        csrData.put("keyType", "RSA");
-        csrData.put("keySize", request.getKeySize());
-        
-        if (request.getSubjectAlternativeNames() != null && !request.getSubjectAlternativeNames().isEmpty()) {
-            csrData.put("subjectAlternativeNames", request.getSubjectAlternativeNames());
-        }
-
-        return new com.fasterxml.jackson.databind.ObjectMapper().writeValueAsString(csrData);
+    private KeyPair createKeyPair(CsrBuilder.KeySpec keySpec) throws NoSuchAlgorithmException {
+        return keyPairPool.take(keySpec.algorithm(), keySpec.keySize());
     }
 
     /**
@@ -251,19 +221,6 @@ public class Acme4jCertificateService {
                "\n-----END PRIVATE KEY-----";
     }
 
-    /**
-     * 提取证书序列号
-     */
-    private String extractSerialNumber(String certificatePem) {
-        try {
-            // 简化处理，实际应该解析PEM格式的证书
-            return String.valueOf(System.currentTimeMillis());
-        } catch (Exception e) {
-            log.error("Error extracting serial number", e);
-            return "unknown";
-        }
-    }
-
     /**
      * 获取账户信息
      */
@@ -0,0 +1,154 @@
+package com.example.proxyservice.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 从 ACME 请求的 JWS（flattened JSON）中提取账户标识，用于按账户选择 step-ca 副本
+ *
+ * 只定位 "protected" 字段并解码这一段，不解析 payload；优先返回 kid，new-account 等没有 kid 的请求返回 jwk 原文。
+ * 同时用于判断请求是否为 POST-as-GET（payload 为空字符串）。
+ */
+final class AcmeAccountKey {
+
+    private static final byte[] PROTECTED = "\"protected\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KID = "\"kid\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] JWK = "\"jwk\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PAYLOAD = "\"payload\"".getBytes(StandardCharsets.US_ASCII);
+
+    private AcmeAccountKey() {
+    }
+
+    /**
+     * 提取账户标识，body 不是 JWS 或无法识别时返回 null
+     */
+    static String extract(byte[] body) {
+        if (body == null || body.length == 0) {
+            return null;
+        }
+        int[] value = stringValue(body, body.length, PROTECTED);
+        if (value == null) {
+            return null;
+        }
+        byte[] header;
+        try {
+            ByteBuffer encoded = ByteBuffer.wrap(body, value[0], value[1] - value[0]);
+            ByteBuffer decoded = Base64.getUrlDecoder().decode(encoded);
+            header = new byte[decoded.remaining()];
+            decoded.get(header);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        int[] kid = stringValue(header, header.length, KID);
+        if (kid != null) {
+            return new String(header, kid[0], kid[1] - kid[0], StandardCharsets.UTF_8);
+        }
+        int[] jwk = objectValue(header, JWK);
+        if (jwk != null) {
+            return "jwk:" + new String(header, jwk[0], jwk[1] - jwk[0], StandardCharsets.UTF_8);
+        }
+        return null;
+    }
+
+    /**
+     * 是否为 POST-as-GET（RFC 8555 6.3）：JWS payload 为空字符串，只读取资源不修改状态
+     */
+    static boolean isPostAsGet(byte[] body) {
+        if (body == null || body.length == 0) {
+            return false;
+        }
+        int[] payload = stringValue(body, body.length, PAYLOAD);
+        return payload != null && payload[0] == payload[1];
+    }
+
+    /**
+     * 查找 "name": "value"，返回 value 的 [起始, 结束) 下标
+     */
+    private static int[] stringValue(byte[] json, int length, byte[] name) {
+        int colon = valueStart(json, length, name);
+        if (colon < 0 || colon >= length || json[colon] != '"') {
+            return null;
+        }
+        int start = colon + 1;
+        for (int i = start; i < length; i++) {
+            if (json[i] == '\\') {
+                i++;
+            } else if (json[i] == '"') {
+                return new int[]{start, i};
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 查找 "name": {...}，返回对象（含花括号）的 [起始, 结束) 下标
+     */
+    private static int[] objectValue(byte[] json, byte[] name) {
+        int start = valueStart(json, json.length, name);
+        if (start < 0 || start >= json.length || json[start] != '{') {
+            return null;
+        }
+        int depth = 0;
+        boolean inString = false;
+        for (int i = start; i < json.length; i++) {
+            byte b = json[i];
+            if (inString) {
+                if (b == '\\') {
+                    i++;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{') {
+                depth++;
+            } else if (b == '}' && --depth == 0) {
+                return new int[]{start, i + 1};
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 返回字段名之后、冒号和空白之后的第一个字节下标，找不到返回 -1
+     */
+    private static int valueStart(byte[] json, int length, byte[] name) {
+        int at = indexOf(json, length, name);
+        if (at < 0) {
+            return -1;
+        }
+        int i = skipWhitespace(json, length, at + name.length);
+        if (i >= length || json[i] != ':') {
+            return -1;
+        }
+        return skipWhitespace(json, length, i + 1);
+    }
+
+    private static int skipWhitespace(byte[] json, int length, int from) {
+        int i = from;
+        while (i < length && (json[i] == ' ' || json[i] == '\t' || json[i] == '\r' || json[i] == '\n')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int indexOf(byte[] data, int length, byte[] pattern) {
+        byte first = pattern[0];
+        int last = length - pattern.length;
+        for (int i = 0; i <= last; i++) {
+            if (data[i] != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < pattern.length && data[i + j] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.proxyservice.service;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * 代理自身产生的 ACME 错误响应（RFC 8555 6.7，application/problem+json）
+ */
+final class AcmeProblems {
+
+    static final String SERVER_INTERNAL = "urn:ietf:params:acme:error:serverInternal";
+    static final String RATE_LIMITED = "urn:ietf:params:acme:error:rateLimited";
+
+    private static final String PROBLEM_JSON = "application/problem+json";
+
+    private AcmeProblems() {
+    }
+
+    /**
+     * 构建 problem 响应，retryAfter 不为空时附加 Retry-After（秒，至少 1）
+     */
+    static ResponseEntity<byte[]> problem(HttpStatus status, String type, String detail, Duration retryAfter) {
+        String body = "{\"type\":\"" + type + "\",\"detail\":\"" + escape(detail) + "\",\"status\":" + status.value() + "}";
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(status)
+                .header(HttpHeaders.CONTENT_TYPE, PROBLEM_JSON)
+                .header(HttpHeaders.CACHE_CONTROL, "no-store");
+        if (retryAfter != null) {
+            builder.header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, (retryAfter.toMillis() + 999) / 1000)));
+        }
+        return builder.body(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
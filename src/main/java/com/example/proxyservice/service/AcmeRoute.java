@@ -0,0 +1,86 @@
+package com.example.proxyservice.service;
+
+/**
+ * step-ca ACME 接口按路径分类，路径形如 /acme/{provisioner}/{operation}/...
+ */
+public enum AcmeRoute {
+
+    DIRECTORY,
+    NEW_NONCE,
+    NEW_ACCOUNT,
+    NEW_ORDER,
+    REVOKE_CERT,
+    KEY_CHANGE,
+    ACCOUNT,
+    ORDER,
+    FINALIZE,
+    AUTHZ,
+    CHALLENGE,
+    CERTIFICATE,
+    ROOTS,
+    OTHER;
+
+    private static final String ACME_PREFIX = "/acme/";
+
+    /**
+     * 根据请求路径分类，只做字符比较，不分配新字符串
+     */
+    public static AcmeRoute classify(String path) {
+        if (path == null) {
+            return OTHER;
+        }
+        if ("/roots.pem".equals(path)) {
+            return ROOTS;
+        }
+        if (!path.startsWith(ACME_PREFIX)) {
+            return OTHER;
+        }
+        int operationStart = path.indexOf('/', ACME_PREFIX.length());
+        if (operationStart < 0) {
+            return OTHER;
+        }
+        operationStart++;
+        int operationEnd = path.indexOf('/', operationStart);
+        int operationLength = (operationEnd < 0 ? path.length() : operationEnd) - operationStart;
+
+        if (matches(path, operationStart, operationLength, "directory")) {
+            return DIRECTORY;
+        } else if (matches(path, operationStart, operationLength, "new-nonce")) {
+            return NEW_NONCE;
+        } else if (matches(path, operationStart, operationLength, "new-account")) {
+            return NEW_ACCOUNT;
+        } else if (matches(path, operationStart, operationLength, "new-order")) {
+            return NEW_ORDER;
+        } else if (matches(path, operationStart, operationLength, "revoke-cert")) {
+            return REVOKE_CERT;
+        } else if (matches(path, operationStart, operationLength, "key-change")) {
+            return KEY_CHANGE;
+        } else if (matches(path, operationStart, operationLength, "account")) {
+            return ACCOUNT;
+        } else if (matches(path, operationStart, operationLength, "order")) {
+            return path.endsWith("/finalize") ? FINALIZE : ORDER;
+        } else if (matches(path, operationStart, operationLength, "authz")) {
+            return AUTHZ;
+        } else if (matches(path, operationStart, operationLength, "challenge")) {
+            return CHALLENGE;
+        } else if (matches(path, operationStart, operationLength, "certificate")) {
+            return CERTIFICATE;
+        }
+        return OTHER;
+    }
+
+    /**
+     * 提取 provisioner 名称，非 ACME 路径返回 null
+     */
+    public static String provisioner(String path) {
+        if (path == null || !path.startsWith(ACME_PREFIX)) {
+            return null;
+        }
+        int end = path.indexOf('/', ACME_PREFIX.length());
+        return end < 0 ? null : path.substring(ACME_PREFIX.length(), end);
+    }
+
+    private static boolean matches(String path, int offset, int length, String operation) {
+        return length == operation.length() && path.regionMatches(offset, operation, 0, length);
+    }
+}
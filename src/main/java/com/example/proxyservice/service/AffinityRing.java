@@ -0,0 +1,115 @@
+package com.example.proxyservice.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 带虚拟节点的一致性哈希环，支持有界负载（consistent hashing with bounded loads）
+ *
+ * 账户哈希到环上后顺时针查找第一个在途请求数未超过 ceil(c × (总在途 + 1) / 副本数) 的副本，
+ * 副本加入或移出时只有落在相邻区间的账户会改变归属。环本身不可变，副本集合变化时整体重建。
+ */
+final class AffinityRing {
+
+    private final long[] points;
+    private final Upstream[] owners;
+    private final List<Upstream> upstreams;
+
+    AffinityRing(List<Upstream> upstreams, int virtualNodes) {
+        this.upstreams = upstreams;
+        int size = upstreams.size() * virtualNodes;
+        long[] hashes = new long[size];
+        Upstream[] nodes = new Upstream[size];
+        int n = 0;
+        for (Upstream upstream : upstreams) {
+            for (int v = 0; v < virtualNodes; v++) {
+                hashes[n] = pointHash(upstream.getUrl() + "#" + v);
+                nodes[n] = upstream;
+                n++;
+            }
+        }
+        // 按哈希值排序，owner 跟随移动
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(hashes[a], hashes[b]));
+        this.points = new long[size];
+        this.owners = new Upstream[size];
+        for (int i = 0; i < size; i++) {
+            points[i] = hashes[order[i]];
+            owners[i] = nodes[order[i]];
+        }
+    }
+
+    /**
+     * 账户在环上的首选副本，不考虑负载
+     */
+    Upstream primary(String key) {
+        return owners[indexOf(key)];
+    }
+
+    /**
+     * 为账户选择副本：从首选位置顺时针查找第一个未超过负载上限的副本
+     */
+    Upstream select(String key, double loadFactor) {
+        int index = indexOf(key);
+        long totalOutstanding = 0;
+        for (Upstream upstream : upstreams) {
+            totalOutstanding += upstream.getOutstanding();
+        }
+        long capacity = (long) Math.ceil(loadFactor * (totalOutstanding + 1) / upstreams.size());
+
+        for (int step = 0; step < points.length; step++) {
+            Upstream candidate = owners[(index + step) % points.length];
+            if (candidate.getOutstanding() < capacity) {
+                return candidate;
+            }
+        }
+        return owners[index];
+    }
+
+    private int indexOf(String key) {
+        int index = Arrays.binarySearch(points, keyHash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index == points.length ? 0 : index;
+    }
+
+    /**
+     * 虚拟节点位置只在重建时计算，使用 MD5 保证分布均匀
+     */
+    private static long pointHash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < 8; i++) {
+                hash = (hash << 8) | (digest[i] & 0xff);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 not available", e);
+        }
+    }
+
+    /**
+     * 每个请求都要计算，使用 FNV-1a 加 64 位混合，不分配对象
+     */
+    private static long keyHash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9f31a8d8ae3L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
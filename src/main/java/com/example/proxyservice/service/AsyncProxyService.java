@@ -0,0 +1,227 @@
+package com.example.proxyservice.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import jakarta.servlet.http.HttpServletRequest;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 非阻塞转发引擎：上游调用期间释放 servlet 工作线程，响应由 httpclient5 的 I/O 线程回填 DeferredResult
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "proxy.engine", havingValue = "async")
+public class AsyncProxyService {
+
+    private final CloseableHttpAsyncClient httpAsyncClient;
+    private final ProxyService proxyService;
+    private final ProxyMetrics proxyMetrics;
+    private final ResponseCache responseCache;
+    private final UpstreamRegistry upstreamRegistry;
+    private final RequestCoalescer requestCoalescer;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final RateLimiter rateLimiter;
+    private final PollDamper pollDamper;
+    private final NoncePool noncePool;
+    private final RequestDeadlines requestDeadlines;
+    private final HeaderPipeline headerPipeline;
+    private final TrafficRecorder trafficRecorder;
+
+    public DeferredResult<ResponseEntity<byte[]>> forwardRequest(HttpServletRequest request, byte[] body) {
+        // 回调在 httpclient 的 I/O 线程上执行，DeferredResult 超时后 servlet 请求可能已被回收，
+        // 回调需要的请求内容先取到局部变量
+        String method = request.getMethod();
+        String requestUri = request.getRequestURI();
+        String queryString = request.getQueryString();
+        // 异步请求的超时与上游截止时间一致，到期时返回 504
+        RequestDeadlines.Deadline deadline = requestDeadlines.start(request);
+        DeferredResult<ResponseEntity<byte[]>> result =
+                new DeferredResult<>(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline.remainingNanos())));
+        result.onTimeout(() -> result.setResult(requestDeadlines.exceeded(method, requestUri, deadline)));
+        TrafficRecorder.Capture capture = trafficRecorder.begin(request, body);
+        if (capture != null) {
+            result.onCompletion(() -> trafficRecorder.complete(capture,
+                    result.getResult() instanceof ResponseEntity<?> response ? response : null));
+        }
+
+        ResponseEntity<byte[]> throttled = rateLimiter.check(request, body);
+        if (throttled != null) {
+            result.setResult(throttled);
+            return result;
+        }
+        if (requestDeadlines.isExhausted(deadline)) {
+            result.setResult(requestDeadlines.exceeded(request, deadline));
+            return result;
+        }
+
+        ResponseEntity<byte[]> local = proxyService.answerLocally(request);
+        if (local != null) {
+            result.setResult(local);
+            return result;
+        }
+
+        // 相同的并发 GET/HEAD 等待已在进行中的上游调用，不再单独访问 step-ca
+        RequestCoalescer.Flight flight = requestCoalescer.begin(request);
+        if (flight != null && !flight.isLeader()) {
+            flight.result().whenComplete((response, error) -> {
+                if (error != null) {
+                    result.setErrorResult(error instanceof CompletionException ? error.getCause() : error);
+                } else {
+                    result.setResult(response);
+                }
+            });
+            return result;
+        }
+
+        String pathAndQuery;
+        SimpleHttpRequest httpRequest;
+        try {
+            // 选择副本之前创建请求：请求行无效等错误直接抛出，不占用熔断器名额
+            pathAndQuery = proxyService.buildTargetUrl("", request);
+            httpRequest = SimpleHttpRequest.create(method, URI.create(pathAndQuery));
+            if (body != null && body.length > 0) {
+                ContentType httpContentType = headerPipeline.parseContentType(request.getContentType());
+                httpRequest.setBody(body, httpContentType);
+            }
+            headerPipeline.copyRequestHeaders(request, httpRequest);
+            httpRequest.setConfig(requestDeadlines.requestConfig(deadline));
+            requestDeadlines.propagate(deadline, httpRequest);
+        } catch (RuntimeException e) {
+            // 合并的跟随者在等这次调用，不结束 flight 会让相同请求一直挂到超时
+            if (flight != null) {
+                requestCoalescer.fail(flight, e);
+            }
+            throw e;
+        }
+
+        // 异步引擎共用一个连接池，副本选择与在途计数仍按负载均衡策略进行
+        Upstream upstream = upstreamRegistry.select(AcmeAccountKey.extract(body));
+        if (upstream == null) {
+            ResponseEntity<byte[]> unavailable = proxyService.upstreamUnavailable(request);
+            if (flight != null) {
+                requestCoalescer.complete(flight, unavailable);
+            }
+            result.setResult(unavailable);
+            return result;
+        }
+        String targetUrl = upstream.getUrl() + pathAndQuery;
+        httpRequest.setUri(URI.create(targetUrl));
+
+        log.info("Forwarding {} request asynchronously to: {}", method, targetUrl);
+
+        ConcurrencyLimiter.RouteLimit permit = concurrencyLimiter.tryAcquire(requestUri);
+        if (permit == null) {
+            log.warn("Shedding {} {}: concurrency limit reached", method, requestUri);
+            upstream.release();
+            ResponseEntity<byte[]> rejection = concurrencyLimiter.rejection(requestUri);
+            if (flight != null) {
+                requestCoalescer.complete(flight, rejection);
+            }
+            result.setResult(rejection);
+            return result;
+        }
+
+        long startNanos = proxyMetrics.requestStarted(false);
+        long upstreamStart = upstream.start();
+        FutureCallback<SimpleHttpResponse> callback = new FutureCallback<>() {
+            @Override
+            public void completed(SimpleHttpResponse response) {
+                deadline.close();
+                upstream.complete(upstreamStart, response.getCode() >= 500);
+                concurrencyLimiter.release(permit, startNanos, response.getCode());
+                proxyMetrics.requestCompleted(startNanos, false, response.getCode());
+                String etag = responseCache.store(method, requestUri, queryString, response.getCode(),
+                        response.getHeaders(), response.getBodyBytes());
+                Duration retryAfter = pollDamper.observe(method, requestUri, body, response.getCode(),
+                        response.getHeaders(), response.getBodyBytes());
+                noncePool.observe(requestUri, response.getCode(), response.getFirstHeader("Replay-Nonce"));
+                ResponseEntity<byte[]> entity = toResponseEntity(response, etag, retryAfter);
+                if (flight != null) {
+                    requestCoalescer.complete(flight, entity);
+                }
+                result.setResult(entity);
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                deadline.close();
+                upstream.complete(upstreamStart, true);
+                concurrencyLimiter.release(permit, startNanos, 0);
+                proxyMetrics.requestCompleted(startNanos, false, 0);
+                log.error("Async forwarding to {} failed", targetUrl, ex);
+                if (flight != null) {
+                    requestCoalescer.fail(flight, ex);
+                }
+                if (ex instanceof InterruptedIOException) {
+                    // connect/response 超时
+                    result.setResult(requestDeadlines.exceeded(method, requestUri, deadline));
+                } else {
+                    result.setErrorResult(ex);
+                }
+            }
+
+            @Override
+            public void cancelled() {
+                deadline.close();
+                upstream.abandon();
+                concurrencyLimiter.release(permit, startNanos, 0);
+                proxyMetrics.requestCompleted(startNanos, false, 0);
+                log.warn("Async forwarding to {} cancelled", targetUrl);
+                if (flight != null) {
+                    requestCoalescer.fail(flight, new CancellationException("Upstream call cancelled"));
+                }
+                if (!result.isSetOrExpired()) {
+                    result.setResult(requestDeadlines.exceeded(method, requestUri, deadline));
+                }
+            }
+        };
+        Future<SimpleHttpResponse> future;
+        try {
+            future = httpAsyncClient.execute(httpRequest, callback);
+        } catch (RuntimeException e) {
+            // 客户端已关闭等情况下回调不会被调用，按失败处理以释放名额并结束 flight
+            callback.failed(e);
+            return result;
+        }
+        // total 到期时取消上游调用
+        requestDeadlines.cancelOnExpiry(deadline, () -> future.cancel(true));
+        return result;
+    }
+
+    private ResponseEntity<byte[]> toResponseEntity(SimpleHttpResponse response, String etag, Duration retryAfter) {
+        HttpHeaders responseHeaders = new HttpHeaders();
+        headerPipeline.copyResponseHeaders(response.getHeaders(), responseHeaders);
+        if (etag != null && !responseHeaders.containsKey(HttpHeaders.ETAG)) {
+            responseHeaders.setETag(etag);
+        }
+        if (retryAfter != null) {
+            responseHeaders.set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter.toSeconds()));
+        }
+        byte[] responseBody = response.getBodyBytes();
+
+        log.info("Response status: {}, body size: {} bytes",
+                response.getCode(), responseBody != null ? responseBody.length : 0);
+
+        return ResponseEntity.status(response.getCode())
+                .headers(responseHeaders)
+                .body(responseBody);
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.proxyservice.service;
+
+import com.example.proxyservice.model.CertificateRequest;
+import com.example.proxyservice.model.CertificateResponse;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 批量签发流水线：请求体（JSON 数组或 NDJSON）边读边签发，每完成一个就以 NDJSON 写回一行
+ *
+ * 每条请求依次经过 CPU 阶段（密钥、CSR，prepare-workers 个线程）和 I/O 阶段（step-ca 签名与编码，
+ * sign-workers 个线程）。单个批次同时处理的条目不超过 max-in-flight，结果写出后才释放名额，
+ * 名额用完时停止读取请求体，由 TCP 流控把压力传回客户端，批次再大内存占用也保持不变。
+ * 结果按完成顺序输出，用 index 与输入对应；最后一行是汇总。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BatchIssuer {
+
+    private final CertificateService certificateService;
+    private final MeterRegistry meterRegistry;
+    private final Validator validator;
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    @Value("${acme.batch.max-in-flight:64}")
+    private int maxInFlight;
+
+    /**
+     * CPU 阶段线程数，小于等于 0 时使用可用核数
+     */
+    @Value("${acme.batch.prepare-workers:0}")
+    private int prepareWorkers;
+
+    @Value("${acme.batch.sign-workers:16}")
+    private int signWorkers;
+
+    private ExecutorService prepareExecutor;
+    private ExecutorService signExecutor;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /**
+     * 输入读完时放入结果队列的哨兵，按引用比较
+     */
+    private final ObjectNode wake = objectMapper.createObjectNode();
+    private Counter succeeded;
+    private Counter failed;
+
+    @PostConstruct
+    public void init() {
+        int cpuThreads = prepareWorkers > 0 ? prepareWorkers : Runtime.getRuntime().availableProcessors();
+        prepareExecutor = Executors.newFixedThreadPool(cpuThreads, daemonThreads("batch-prepare-"));
+        signExecutor = Executors.newFixedThreadPool(Math.max(1, signWorkers), daemonThreads("batch-sign-"));
+        succeeded = Counter.builder("proxy.certificates.batch")
+                .description("Certificates issued through the batch endpoint")
+                .tag("result", "success")
+                .register(meterRegistry);
+        failed = Counter.builder("proxy.certificates.batch")
+                .description("Certificates issued through the batch endpoint")
+                .tag("result", "error")
+                .register(meterRegistry);
+        Gauge.builder("proxy.certificates.batch.inflight", inFlight, AtomicInteger::get)
+                .description("Batch items between being read and their result being written")
+                .register(meterRegistry);
+        log.info("Batch issuance pipeline: {} prepare worker(s), {} sign worker(s), {} in flight per batch",
+                cpuThreads, Math.max(1, signWorkers), maxInFlight);
+    }
+
+    @PreDestroy
+    public void close() {
+        prepareExecutor.shutdownNow();
+        signExecutor.shutdownNow();
+    }
+
+    /**
+     * 在调用线程上读取请求，结果由单独的写线程按完成顺序写到 output，全部写完后返回
+     */
+    public void run(InputStream input, OutputStream output) throws IOException {
+        Batch batch = new Batch(output);
+        Thread writer = new Thread(batch::writeLoop, "batch-writer");
+        writer.setDaemon(true);
+        writer.start();
+        long start = System.nanoTime();
+        try (JsonParser parser = objectMapper.getFactory().createParser(input)) {
+            JsonToken token = parser.nextToken();
+            boolean array = token == JsonToken.START_ARRAY;
+            if (array) {
+                token = parser.nextToken();
+            }
+            while (token != null && token != JsonToken.END_ARRAY && !batch.aborted) {
+                JsonNode item = objectMapper.readTree(parser);
+                batch.submit(item);
+                token = parser.nextToken();
+            }
+        } catch (IOException e) {
+            // 请求体格式错误或客户端断开：已提交的条目照常完成并写回
+            log.warn("Batch input stopped after {} item(s): {}", batch.submitted.get(), e.getMessage());
+            batch.inputError = e.getMessage();
+        } finally {
+            batch.finishInput();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batch.aborted = true;
+        }
+        log.info("Batch finished: {} item(s), {} succeeded, {} failed in {} ms", batch.submitted.get(),
+                batch.succeeded.get(), batch.failed.get(), (System.nanoTime() - start) / 1_000_000);
+        if (batch.writeError != null) {
+            throw batch.writeError;
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private final class Batch {
+        private final OutputStream output;
+        private final Semaphore permits = new Semaphore(Math.max(1, maxInFlight));
+        private final BlockingQueue<ObjectNode> results = new LinkedBlockingQueue<>();
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong succeeded = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong written = new AtomicLong();
+        private final long startNanos = System.nanoTime();
+        private volatile boolean inputDone;
+        private volatile boolean aborted;
+        private volatile String inputError;
+        private volatile IOException writeError;
+
+        Batch(OutputStream output) {
+            this.output = output;
+        }
+
+        void submit(JsonNode item) {
+            long index = submitted.get();
+            permits.acquireUninterruptibly();
+            if (aborted) {
+                permits.release();
+                return;
+            }
+            submitted.incrementAndGet();
+            inFlight.incrementAndGet();
+
+            CertificateRequest request;
+            try {
+                request = objectMapper.treeToValue(item, CertificateRequest.class);
+                // 与 /generate 上的 @Valid 使用同一套约束
+                Set<ConstraintViolation<CertificateRequest>> violations = validator.validate(request);
+                if (!violations.isEmpty()) {
+                    throw new IllegalArgumentException(violations.stream()
+                            .sorted(Comparator.comparing(violation -> violation.getPropertyPath().toString()))
+                            .map(ConstraintViolation::getMessage)
+                            .collect(Collectors.joining("; ")));
+                }
+            } catch (Exception e) {
+                complete(index, null, CertificateResponse.error("Invalid request: " + e.getMessage()));
+                return;
+            }
+            CompletableFuture.supplyAsync(() -> {
+                        try {
+                            return certificateService.prepare(request);
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e.getMessage(), e);
+                        }
+                    }, prepareExecutor)
+                    .thenApplyAsync(prepared -> {
+                        try {
+                            return certificateService.complete(prepared);
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e.getMessage(), e);
+                        }
+                    }, signExecutor)
+                    .whenComplete((response, error) -> complete(index, request, error == null ? response
+                            : CertificateResponse.error("Certificate generation failed: " + rootMessage(error))));
+        }
+
+        private void complete(long index, CertificateRequest request, CertificateResponse response) {
+            if ("success".equals(response.getStatus())) {
+                succeeded.incrementAndGet();
+                BatchIssuer.this.succeeded.increment();
+            } else {
+                failed.incrementAndGet();
+                BatchIssuer.this.failed.increment();
+            }
+            ObjectNode line = objectMapper.createObjectNode();
+            line.put("index", index);
+            if (request != null) {
+                line.put("commonName", request.getCommonName());
+            }
+            line.setAll((ObjectNode) objectMapper.valueToTree(response));
+            results.add(line);
+        }
+
+        void finishInput() {
+            inputDone = true;
+            // 唤醒可能在等待结果的写线程，让它检查是否已全部写完
+            results.add(wake);
+        }
+
+        void writeLoop() {
+            try {
+                while (true) {
+                    ObjectNode line = results.take();
+                    if (line == wake) {
+                        if (inputDone && written.get() == submitted.get()) {
+                            break;
+                        }
+                        continue;
+                    }
+                    write(line);
+                    written.incrementAndGet();
+                    inFlight.decrementAndGet();
+                    permits.release();
+                    if (inputDone && written.get() == submitted.get()) {
+                        break;
+                    }
+                }
+                ObjectNode summary = objectMapper.createObjectNode();
+                ObjectNode fields = summary.putObject("summary");
+                fields.put("total", submitted.get());
+                fields.put("succeeded", succeeded.get());
+                fields.put("failed", failed.get());
+                fields.put("elapsedMs", (System.nanoTime() - startNanos) / 1_000_000);
+                if (inputError != null) {
+                    fields.put("inputError", inputError);
+                }
+                write(summary);
+            } catch (IOException e) {
+                // 客户端断开：停止读取，剩余结果丢弃
+                writeError = e;
+                aborted = true;
+                drainAfterAbort();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                aborted = true;
+            }
+        }
+
+        private void write(ObjectNode line) throws IOException {
+            output.write(objectMapper.writeValueAsBytes(line));
+            output.write('\n');
+            // 队列里还有结果时合并到一次 flush
+            if (results.isEmpty()) {
+                output.flush();
+            }
+        }
+
+        /**
+         * 写出失败后继续回收在途条目的名额，避免读线程阻塞在 acquire 上
+         */
+        private void drainAfterAbort() {
+            try {
+                while (!(inputDone && written.get() == submitted.get())) {
+                    ObjectNode line = results.take();
+                    if (line != wake) {
+                        written.incrementAndGet();
+                        inFlight.decrementAndGet();
+                        permits.release();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static String rootMessage(Throwable error) {
+        Throwable root = error;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        return root.getMessage();
+    }
+}
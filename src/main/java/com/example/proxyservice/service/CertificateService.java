@@ -1,6 +1,5 @@
 package com.example.proxyservice.service;
 
-import com.example.proxyservice.config.ProxyConfig;
 import com.example.proxyservice.model.CertificateRequest;
 import com.example.proxyservice.model.CertificateResponse;
 import com.example.proxyservice.model.RevokeRequest;
@@ -9,13 +8,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.hc.client5.http.classic.methods.HttpPost;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
 import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.io.entity.StringEntity;
-import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.security.*;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
@@ -26,39 +23,113 @@ import java.util.*;
 @RequiredArgsConstructor
 public class CertificateService {
 
-    private final CloseableHttpClient httpClient;
-    private final ProxyConfig proxyConfig;
+    private final UpstreamRegistry upstreamRegistry;
+    private final KeyPairPool keyPairPool;
+    private final CsrBuilder csrBuilder;
+    private final CertificateStore certificateStore;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     public CertificateResponse generateCertificate(CertificateRequest request) {
+        FlightEvents.Issuance event = new FlightEvents.Issuance();
+        event.begin();
+        CertificateResponse response = null;
         try {
-            // 生成密钥对
-            KeyPair keyPair = generateKeyPair(request.getKeyType(), request.getKeySize());
-            
-            // 创建简化的证书请求
-            String csr = createSimpleCSR(request, keyPair);
-            
-            // 向step-ca请求签名证书
-            String signedCertificate = requestCertificateFromStepCA(csr, request);
-            
-            if (signedCertificate != null) {
-                // 转换私钥为PEM格式
-                String privateKeyPem = convertPrivateKeyToPEM(keyPair.getPrivate());
-                
-                // 获取证书序列号
-                String serialNumber = extractSerialNumber(signedCertificate);
-                
-                return CertificateResponse.success(serialNumber, signedCertificate, privateKeyPem, signedCertificate);
-            } else {
-                return CertificateResponse.error("Failed to obtain certificate from step-ca");
+            response = issue(request);
+            return response;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.commonName = request.getCommonName();
+                event.keyType = request.getKeyType();
+                event.status = response != null ? response.getStatus() : "error";
+                event.certificateBytes = response != null && response.getCertificate() != null
+                        ? response.getCertificate().length() : 0;
+                event.commit();
             }
-            
+        }
+    }
+
+    private CertificateResponse issue(CertificateRequest request) {
+        try {
+            return complete(prepare(request));
         } catch (Exception e) {
             log.error("Error generating certificate", e);
             return CertificateResponse.error("Certificate generation failed: " + e.getMessage());
         }
     }
 
+    /**
+     * 已生成密钥与 CSR、等待 step-ca 签名的签发请求
+     */
+    record Prepared(CertificateRequest request, KeyPair keyPair, String csr) {
+    }
+
+    /**
+     * 签发的 CPU 阶段：生成密钥对与 CSR
+     */
+    Prepared prepare(CertificateRequest request) throws Exception {
+        // 生成密钥对
+        CsrBuilder.KeySpec keySpec = csrBuilder.resolve(request.getKeyType(), request.getKeySize());
+        FlightEvents.IssuanceStage stage = beginStage("keygen");
+        KeyPair keyPair = generateKeyPair(keySpec);
+        commitStage(stage, request, true, 0);
+        
+        // 创建 PKCS#10 证书请求
+        stage = beginStage("csr");
+        String csr = csrBuilder.build(request, keyPair, keySpec);
+        commitStage(stage, request, true, csr.length());
+        return new Prepared(request, keyPair, csr);
+    }
+
+    /**
+     * 签发的 I/O 阶段：向 step-ca 请求签名并编码结果
+     */
+    CertificateResponse complete(Prepared prepared) throws Exception {
+        CertificateRequest request = prepared.request();
+        // 向step-ca请求签名证书
+        FlightEvents.IssuanceStage stage = beginStage("sign");
+        String signedCertificate = requestCertificateFromStepCA(prepared.csr(), request);
+        commitStage(stage, request, signedCertificate != null, signedCertificate != null ? signedCertificate.length() : 0);
+        
+        if (signedCertificate != null) {
+            // 转换私钥为PEM格式
+            stage = beginStage("pem");
+            String privateKeyPem = convertPrivateKeyToPEM(prepared.keyPair().getPrivate());
+            commitStage(stage, request, true, privateKeyPem.length());
+            
+            // 保存证书并取得其真实序列号
+            CertificateStore.Entry stored = certificateStore.store(signedCertificate, request);
+            
+            CertificateResponse response = CertificateResponse.success(stored.serialNumber(), signedCertificate, privateKeyPem, signedCertificate);
+            response.setIssuedAt(stored.notBefore().toString());
+            response.setExpiresAt(stored.notAfter().toString());
+            return response;
+        } else {
+            return CertificateResponse.error("Failed to obtain certificate from step-ca");
+        }
+    }
+
+    /**
+     * 签发阶段的 JFR 事件，阶段抛出异常时不提交，由外层 Issuance 事件体现失败
+     */
+    private static FlightEvents.IssuanceStage beginStage(String name) {
+        FlightEvents.IssuanceStage stage = new FlightEvents.IssuanceStage();
+        stage.stage = name;
+        stage.begin();
+        return stage;
+    }
+
+    private static void commitStage(FlightEvents.IssuanceStage stage, CertificateRequest request, boolean success, long bytes) {
+        stage.end();
+        if (stage.shouldCommit()) {
+            stage.commonName = request.getCommonName();
+            stage.keyType = request.getKeyType();
+            stage.success = success;
+            stage.bytes = bytes;
+            stage.commit();
+        }
+    }
+
     public CertificateResponse revokeCertificate(RevokeRequest request) {
         try {
             // 构建注销请求
@@ -73,22 +144,35 @@ public class CertificateService {
 
             String jsonPayload = objectMapper.writeValueAsString(revokePayload);
             
-            // 发送注销请求到step-ca
-            HttpPost httpPost = new HttpPost(proxyConfig.getStepCaUrl() + "/acme/revoke");
+            // 发送注销请求到step-ca，副本熔断时立即失败而不是等待超时
+            Upstream upstream = upstreamRegistry.select();
+            if (upstream == null) {
+                return CertificateResponse.error("Revocation failed: no step-ca upstream available");
+            }
+            HttpPost httpPost = new HttpPost(upstream.getUrl() + "/acme/revoke");
             httpPost.setEntity(new StringEntity(jsonPayload, ContentType.APPLICATION_JSON));
             httpPost.setHeader("Content-Type", "application/json");
 
-            try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
-                String responseBody = EntityUtils.toString(response.getEntity());
-                
-                if (response.getCode() == 200) {
-                    CertificateResponse certResponse = new CertificateResponse();
-                    certResponse.setStatus("success");
-                    certResponse.setMessage("Certificate revoked successfully");
-                    return certResponse;
-                } else {
-                    return CertificateResponse.error("Revocation failed: " + responseBody);
-                }
+            FlightEvents.Revocation event = new FlightEvents.Revocation();
+            event.begin();
+            UpstreamResponse response = UpstreamResponse.fetch(upstream, httpPost);
+            event.end();
+            if (event.shouldCommit()) {
+                event.serialNumber = request.getSerialNumber();
+                event.status = response.getStatus();
+                event.requestBytes = jsonPayload.length();
+                event.responseBytes = response.getBody() != null ? response.getBody().length : 0;
+                event.commit();
+            }
+            String responseBody = response.getBody() != null ? new String(response.getBody(), StandardCharsets.UTF_8) : "";
+
+            if (response.getStatus() == 200) {
+                CertificateResponse certResponse = new CertificateResponse();
+                certResponse.setStatus("success");
+                certResponse.setMessage("Certificate revoked successfully");
+                return certResponse;
+            } else {
+                return CertificateResponse.error("Revocation failed: " + responseBody);
             }
             
         } catch (Exception e) {
@@ -97,46 +181,9 @@ public class CertificateService {
         }
     }
 
-    private KeyPair generateKeyPair(String keyType, int keySize) throws NoSuchAlgorithmException {
-        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(keyType);
-        keyPairGenerator.initialize(keySize);
-        return keyPairGenerator.generateKeyPair();
-    }
-
-    private String createSimpleCSR(CertificateRequest request, KeyPair keyPair) throws Exception {
-        // 构建主题名称
-        StringBuilder subjectBuilder = new StringBuilder();
-        subjectBuilder.append("CN=").append(request.getCommonName());
-        
-        if (request.getOrganization() != null) {
-            subjectBuilder.append(", O=").append(request.getOrganization());
-        }
-        if (request.getOrganizationalUnit() != null) {
-            subjectBuilder.append(", OU=").append(request.getOrganizationalUnit());
-        }
-        if (request.getCountry() != null) {
-            subjectBuilder.append(", C=").append(request.getCountry());
-        }
-        if (request.getState() != null) {
-            subjectBuilder.append(", ST=").append(request.getState());
-        }
-        if (request.getLocality() != null) {
-            subjectBuilder.append(", L=").append(request.getLocality());
-        }
-
-        // 简化处理：创建一个基本的CSR格式字符串
-        // 实际项目中应该使用标准的PKCS#10 CSR格式
-        Map<String, Object> csrData = new HashMap<>();
-        csrData.put("subject", subjectBuilder.toString());
-        csrData.put("publicKey", Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded()));
-        csrData.put("keyType", request.getKeyType());
-        csrData.put("keySize", request.getKeySize());
-        
-        if (request.getSubjectAlternativeNames() != null && !request.getSubjectAlternativeNames().isEmpty()) {
-            csrData.put("subjectAlternativeNames", request.getSubjectAlternativeNames());
-        }
-
-        return objectMapper.writeValueAsString(csrData);
+    private KeyPair generateKeyPair(CsrBuilder.KeySpec keySpec) throws NoSuchAlgorithmException {
+        // 优先取后台预生成的密钥，池空时内联生成
+        return keyPairPool.take(keySpec.algorithm(), keySpec.keySize());
     }
 
     private String requestCertificateFromStepCA(String csr, CertificateRequest request) {
@@ -149,19 +196,22 @@ public class CertificateService {
 
             String jsonPayload = objectMapper.writeValueAsString(acmeRequest);
             
-            HttpPost httpPost = new HttpPost(proxyConfig.getStepCaUrl() + "/acme/new-cert");
+            Upstream upstream = upstreamRegistry.select();
+            if (upstream == null) {
+                log.error("Failed to get certificate from step-ca: no upstream available (circuit open)");
+                return null;
+            }
+            HttpPost httpPost = new HttpPost(upstream.getUrl() + "/acme/new-cert");
             httpPost.setEntity(new StringEntity(jsonPayload, ContentType.APPLICATION_JSON));
             httpPost.setHeader("Content-Type", "application/json");
 
-            try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
-                if (response.getCode() == 200 || response.getCode() == 201) {
-                    String responseBody = EntityUtils.toString(response.getEntity());
-                    JsonNode jsonResponse = objectMapper.readTree(responseBody);
-                    return jsonResponse.get("certificate").asText();
-                } else {
-                    log.error("Failed to get certificate from step-ca: {}", response.getCode());
-                    return null;
-                }
+            UpstreamResponse response = UpstreamResponse.fetch(upstream, httpPost);
+            if (response.getStatus() == 200 || response.getStatus() == 201) {
+                JsonNode jsonResponse = objectMapper.readTree(response.getBody());
+                return jsonResponse.get("certificate").asText();
+            } else {
+                log.error("Failed to get certificate from step-ca: {}", response.getStatus());
+                return null;
             }
         } catch (Exception e) {
             log.error("Error requesting certificate from step-ca", e);
@@ -176,15 +226,5 @@ public class CertificateService {
                Base64.getEncoder().encodeToString(privateKey.getEncoded()) +
                "\n-----END PRIVATE KEY-----";
     }
-
-    private String extractSerialNumber(String certificatePem) {
-        try {
-            // 简化处理，实际应该解析PEM格式的证书
-            return String.valueOf(System.currentTimeMillis());
-        } catch (Exception e) {
-            log.error("Error extracting serial number", e);
-            return "unknown";
-        }
-    }
 }
 
@@ -0,0 +1,631 @@
+package com.example.proxyservice.service;
+
+import com.example.proxyservice.config.CertificateStoreProperties;
+import com.example.proxyservice.model.CertificateRequest;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.asn1.x500.RDN;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x500.style.BCStyle;
+import org.bouncycastle.asn1.x500.style.IETFUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 已签发证书存储：只追加的内存映射段文件 + 内存索引（序列号、CN、SAN、到期时间）
+ *
+ * 段文件 segment-NNNNNNNN.log 预分配为固定大小并整体映射，记录格式为
+ * [长度 int][CRC32 int][notBefore long][notAfter long][storedAt long][serial][cn][SAN 数 short + SAN][PEM 长度 int + PEM]，
+ * 字符串为 short 长度 + UTF-8。先写内容与 CRC、最后写长度并 force，长度为 0 表示段内已无记录，
+ * 崩溃留下的半条记录因 CRC 不符在恢复时被丢弃。
+ *
+ * 索引只保存记录位置（段号 << 32 | 段内偏移），条目信息与 PEM 按需从映射区读取。
+ * 索引快照 index.snapshot 记录所有条目的索引字段与其覆盖到的日志位置，启动时加载快照后只扫描之后追加的记录。
+ * 下载时 PEM 直接取映射区切片，或由 Tomcat sendfile 从段文件发送，不经过 String 与 byte[]。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CertificateStore {
+
+    private static final int HEADER_BYTES = 8;
+    private static final long SNAPSHOT_MAGIC = 0x4345525449445831L;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final String SNAPSHOT_FILE = "index.snapshot";
+    private static final Pattern HEX_SERIAL = Pattern.compile("(?i)0x[0-9a-f]+|[0-9a-f]{2}(:[0-9a-f]{2})+|[0-9a-f]*[a-f][0-9a-f]*");
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final CertificateStoreProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final Map<String, Long> bySerial = new ConcurrentHashMap<>();
+    private final Map<String, long[]> byCommonName = new ConcurrentHashMap<>();
+    private final Map<String, long[]> bySan = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, long[]> byExpiry = new ConcurrentSkipListMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private Path directory;
+    private int segmentSize;
+    /**
+     * 下一条记录的写入位置，只在 writeLock 内修改
+     */
+    private volatile long writePosition;
+    private volatile long snapshotPosition = -1;
+    private Timer appendTimer;
+    private Timer lookupTimer;
+
+    /**
+     * 证书条目的索引信息，serialNumber 为十进制
+     */
+    public record Entry(String serialNumber, String commonName, List<String> subjectAlternativeNames,
+                        Instant notBefore, Instant notAfter, Instant storedAt) {
+    }
+
+    /**
+     * 映射区中的 PEM：file/offset/length 指向段文件中的字节，content 为对应的只读映射切片
+     */
+    public record StoredPem(Entry entry, Path file, long offset, int length, ByteBuffer content) {
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!properties.isEnabled()) {
+            log.info("Certificate store disabled, issued certificates are not kept");
+            return;
+        }
+        directory = Paths.get(properties.getDirectory()).toAbsolutePath();
+        Files.createDirectories(directory);
+        segmentSize = (int) Math.min(Integer.MAX_VALUE, properties.getSegmentSize().toBytes());
+
+        long start = System.nanoTime();
+        openSegments();
+        long scanFrom = loadSnapshot();
+        int scanned = scan(scanFrom);
+        log.info("Certificate store opened in {} ms: {} certificate(s) in {} segment(s), {} from snapshot, {} scanned",
+                (System.nanoTime() - start) / 1_000_000, bySerial.size(), segments.size(),
+                bySerial.size() - scanned, scanned);
+
+        appendTimer = Timer.builder("proxy.certstore.append")
+                .description("Time to append and force a certificate record")
+                .register(meterRegistry);
+        lookupTimer = Timer.builder("proxy.certstore.lookup")
+                .description("Time to look a certificate up by serial number")
+                .register(meterRegistry);
+        Gauge.builder("proxy.certstore.certificates", bySerial, Map::size)
+                .description("Certificates in the store")
+                .register(meterRegistry);
+        Gauge.builder("proxy.certstore.bytes", this, store -> store.usedBytes())
+                .description("Bytes of certificate records in the segment files")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (directory == null) {
+            return;
+        }
+        snapshot();
+        writeLock.lock();
+        try {
+            for (Segment segment : segments) {
+                segment.channel.close();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to close certificate segments: {}", e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 解析并保存签发的证书（PEM 链，第一张为叶子证书），返回索引信息
+     *
+     * 证书无法解析时（例如模拟签发的证书）用请求中的 CN、SAN 与有效期，并分配随机序列号。
+     * 写入失败只记录日志，不影响已签发证书返回给客户端。
+     */
+    public Entry store(String certificatePem, CertificateRequest request) {
+        Entry entry = describe(certificatePem, request);
+        if (directory == null) {
+            return entry;
+        }
+        try {
+            return append(entry, certificatePem.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to store certificate {} for {}", entry.serialNumber(), entry.commonName(), e);
+            return entry;
+        }
+    }
+
+    /**
+     * 按序列号（十进制，或 0x 前缀/冒号分隔的十六进制）查找 PEM，不存在时返回 null
+     */
+    public StoredPem find(String serialNumber) {
+        long start = System.nanoTime();
+        try {
+            String serial = normalizeSerial(serialNumber);
+            Long location = serial != null ? bySerial.get(serial) : null;
+            return location != null ? read(location) : null;
+        } finally {
+            if (lookupTimer != null) {
+                lookupTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    public List<Entry> findByCommonName(String commonName) {
+        return entries(byCommonName.get(commonName.trim().toLowerCase(Locale.ROOT)));
+    }
+
+    public List<Entry> findBySubjectAlternativeName(String name) {
+        return entries(bySan.get(name.trim().toLowerCase(Locale.ROOT)));
+    }
+
+    /**
+     * 在 before 之前到期的证书，按到期时间排序，最多 limit 条
+     */
+    public List<Entry> expiringBefore(Instant before, int limit) {
+        List<Entry> result = new ArrayList<>();
+        for (long[] locations : byExpiry.headMap(before.toEpochMilli()).values()) {
+            for (long location : locations) {
+                if (result.size() >= limit) {
+                    return result;
+                }
+                result.add(read(location).entry());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 有新记录时写索引快照：先写临时文件并 fsync，再原子替换
+     */
+    @Scheduled(fixedDelayString = "${acme.cert-store.snapshot-interval-ms:300000}")
+    public void snapshot() {
+        if (directory == null || writePosition == snapshotPosition) {
+            return;
+        }
+        long position;
+        List<Long> locations;
+        writeLock.lock();
+        try {
+            position = writePosition;
+            locations = new ArrayList<>(bySerial.values());
+        } finally {
+            writeLock.unlock();
+        }
+        // 位置之前的记录不再变化，可以在锁外读取
+        Path target = directory.resolve(SNAPSHOT_FILE);
+        Path temp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try {
+            CRC32 crc = new CRC32();
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                OutputStream stream = new CheckedOutputStream(Channels.newOutputStream(channel), crc);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+                out.writeLong(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                out.writeLong(position);
+                out.writeInt(locations.size());
+                for (long location : locations) {
+                    Entry entry = read(location).entry();
+                    out.writeLong(location);
+                    out.writeLong(entry.notAfter().toEpochMilli());
+                    out.writeUTF(entry.serialNumber());
+                    out.writeUTF(entry.commonName());
+                    out.writeShort(entry.subjectAlternativeNames().size());
+                    for (String san : entry.subjectAlternativeNames()) {
+                        out.writeUTF(san);
+                    }
+                }
+                out.flush();
+                out.writeLong(crc.getValue());
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            snapshotPosition = position;
+            log.debug("Wrote certificate index snapshot with {} entries", locations.size());
+        } catch (IOException e) {
+            log.warn("Failed to write certificate index snapshot: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 追加一条记录并建立索引；同一序列号已存在时不重复写入，返回已有条目
+     */
+    private Entry append(Entry entry, byte[] pem) throws IOException {
+        byte[] serial = utf8(entry.serialNumber());
+        byte[] commonName = utf8(entry.commonName());
+        List<byte[]> sans = new ArrayList<>();
+        int length = 8 * 3 + 2 + serial.length + 2 + commonName.length + 2 + 4 + pem.length;
+        for (String san : entry.subjectAlternativeNames()) {
+            byte[] bytes = utf8(san);
+            sans.add(bytes);
+            length += 2 + bytes.length;
+        }
+        if (HEADER_BYTES + length > segmentSize) {
+            throw new IOException("Certificate record of " + length + " bytes exceeds the segment size");
+        }
+
+        long start = System.nanoTime();
+        writeLock.lock();
+        try {
+            Long existing = bySerial.get(entry.serialNumber());
+            if (existing != null) {
+                return read(existing).entry();
+            }
+            int segmentIndex = segmentIndex(writePosition);
+            int offset = segmentOffset(writePosition);
+            if (offset + HEADER_BYTES + length > segments.get(segmentIndex).capacity) {
+                // 当前段剩余空间不足：剩余部分保持为 0，扫描时据此进入下一段
+                segmentIndex = segments.size();
+                offset = 0;
+                segments.add(Segment.open(segmentFile(segmentIndex), segmentSize));
+            }
+            Segment segment = segments.get(segmentIndex);
+            ByteBuffer record = segment.buffer.slice(offset + HEADER_BYTES, length);
+            record.putLong(entry.notBefore().toEpochMilli());
+            record.putLong(entry.notAfter().toEpochMilli());
+            record.putLong(entry.storedAt().toEpochMilli());
+            putString(record, serial);
+            putString(record, commonName);
+            record.putShort((short) sans.size());
+            for (byte[] san : sans) {
+                putString(record, san);
+            }
+            record.putInt(pem.length);
+            record.put(pem);
+
+            CRC32 crc = new CRC32();
+            crc.update(segment.buffer.slice(offset + HEADER_BYTES, length));
+            segment.buffer.putInt(offset + 4, (int) crc.getValue());
+            segment.buffer.putInt(offset, length);
+            segment.buffer.force(offset, HEADER_BYTES + length);
+
+            long location = location(segmentIndex, offset);
+            writePosition = location(segmentIndex, offset + HEADER_BYTES + length);
+            index(location, entry.serialNumber(), entry.commonName(), entry.subjectAlternativeNames(),
+                    entry.notAfter().toEpochMilli());
+            return entry;
+        } finally {
+            writeLock.unlock();
+            appendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void index(long location, String serial, String commonName, List<String> sans, long notAfter) {
+        bySerial.put(serial, location);
+        addLocation(byCommonName, commonName.toLowerCase(Locale.ROOT), location);
+        for (String san : sans) {
+            addLocation(bySan, san, location);
+        }
+        addLocation(byExpiry, notAfter, location);
+    }
+
+    private static <K> void addLocation(Map<K, long[]> index, K key, long location) {
+        index.merge(key, new long[]{location}, (current, added) -> {
+            long[] grown = Arrays.copyOf(current, current.length + 1);
+            grown[current.length] = location;
+            return grown;
+        });
+    }
+
+    private List<Entry> entries(long[] locations) {
+        if (locations == null) {
+            return List.of();
+        }
+        List<Entry> result = new ArrayList<>(locations.length);
+        for (long location : locations) {
+            result.add(read(location).entry());
+        }
+        result.sort(Comparator.comparing(Entry::notAfter).reversed());
+        return result;
+    }
+
+    /**
+     * 读取已提交的记录；记录一旦写入不再修改，用绝对位置读取，无需加锁
+     */
+    private StoredPem read(long location) {
+        Segment segment = segments.get(segmentIndex(location));
+        int offset = segmentOffset(location);
+        int length = segment.buffer.getInt(offset);
+        ByteBuffer record = segment.buffer.slice(offset + HEADER_BYTES, length);
+        Instant notBefore = Instant.ofEpochMilli(record.getLong());
+        Instant notAfter = Instant.ofEpochMilli(record.getLong());
+        Instant storedAt = Instant.ofEpochMilli(record.getLong());
+        String serial = getString(record);
+        String commonName = getString(record);
+        int sanCount = Short.toUnsignedInt(record.getShort());
+        List<String> sans = new ArrayList<>(sanCount);
+        for (int i = 0; i < sanCount; i++) {
+            sans.add(getString(record));
+        }
+        int pemLength = record.getInt();
+        int pemOffset = offset + HEADER_BYTES + record.position();
+        Entry entry = new Entry(serial, commonName, sans, notBefore, notAfter, storedAt);
+        return new StoredPem(entry, segment.path, pemOffset, pemLength,
+                segment.buffer.slice(pemOffset, pemLength).asReadOnlyBuffer());
+    }
+
+    private void openSegments() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(path -> path.getFileName().toString().matches("segment-\\d{8}\\.log"))
+                    .sorted()
+                    .toList();
+        }
+        for (int i = 0; i < files.size(); i++) {
+            if (!files.get(i).equals(segmentFile(i))) {
+                throw new IOException("Certificate segments are not contiguous, expected " + segmentFile(i)
+                        + " but found " + files.get(i));
+            }
+            segments.add(Segment.open(files.get(i), segmentSize));
+        }
+        if (segments.isEmpty()) {
+            segments.add(Segment.open(segmentFile(0), segmentSize));
+        }
+    }
+
+    /**
+     * 加载索引快照，返回需要继续扫描的日志位置；快照缺失或损坏时返回 0（全量扫描）
+     */
+    private long loadSnapshot() {
+        Path file = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length - 8);
+            if (ByteBuffer.wrap(bytes, bytes.length - 8, 8).getLong() != crc.getValue()) {
+                throw new IOException("checksum mismatch");
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 8));
+            if (in.readLong() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("unknown snapshot format");
+            }
+            long position = in.readLong();
+            if (segmentIndex(position) >= segments.size()) {
+                throw new IOException("snapshot is ahead of the segment files");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long location = in.readLong();
+                long notAfter = in.readLong();
+                String serial = in.readUTF();
+                String commonName = in.readUTF();
+                int sanCount = in.readUnsignedShort();
+                List<String> sans = new ArrayList<>(sanCount);
+                for (int j = 0; j < sanCount; j++) {
+                    sans.add(in.readUTF());
+                }
+                index(location, serial, commonName, sans, notAfter);
+            }
+            snapshotPosition = position;
+            return position;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring certificate index snapshot {}, rebuilding from segments: {}", file, e.getMessage());
+            bySerial.clear();
+            byCommonName.clear();
+            bySan.clear();
+            byExpiry.clear();
+            return 0;
+        }
+    }
+
+    /**
+     * 从 position 开始扫描段文件建立索引，返回扫描到的记录数；最后一段中 CRC 不符的尾部视为未完成的写入并清零
+     */
+    private int scan(long position) throws IOException {
+        int scanned = 0;
+        int segmentIndex = segmentIndex(position);
+        int offset = segmentOffset(position);
+        while (true) {
+            Segment segment = segments.get(segmentIndex);
+            boolean last = segmentIndex == segments.size() - 1;
+            int length = offset + HEADER_BYTES <= segment.capacity ? segment.buffer.getInt(offset) : 0;
+            boolean valid = length > 0 && offset + HEADER_BYTES + length <= segment.capacity;
+            if (valid) {
+                CRC32 crc = new CRC32();
+                crc.update(segment.buffer.slice(offset + HEADER_BYTES, length));
+                valid = segment.buffer.getInt(offset + 4) == (int) crc.getValue();
+            }
+            if (valid) {
+                long location = location(segmentIndex, offset);
+                Entry entry = read(location).entry();
+                index(location, entry.serialNumber(), entry.commonName(), entry.subjectAlternativeNames(),
+                        entry.notAfter().toEpochMilli());
+                offset += HEADER_BYTES + length;
+                scanned++;
+                continue;
+            }
+            if (length != 0) {
+                log.warn("Discarding torn certificate record at {}:{}", segment.path.getFileName(), offset);
+                if (last) {
+                    int end = (int) Math.min(segment.capacity, (long) offset + HEADER_BYTES + Math.max(0, length));
+                    segment.buffer.put(offset, new byte[end - offset]);
+                    segment.buffer.force(offset, end - offset);
+                }
+            }
+            if (last) {
+                writePosition = location(segmentIndex, offset);
+                return scanned;
+            }
+            segmentIndex++;
+            offset = 0;
+        }
+    }
+
+    private long usedBytes() {
+        return (long) segmentIndex(writePosition) * segmentSize + segmentOffset(writePosition);
+    }
+
+    private Path segmentFile(int index) {
+        return directory.resolve(String.format("segment-%08d.log", index));
+    }
+
+    private static long location(int segmentIndex, int offset) {
+        return ((long) segmentIndex << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int segmentIndex(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int segmentOffset(long location) {
+        return (int) location;
+    }
+
+    private static byte[] utf8(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= 0xFFFF ? bytes : Arrays.copyOf(bytes, 0xFFFF);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 序列号统一为十进制；十六进制写法（0x 前缀或冒号分隔）转换为十进制，无法识别时返回 null
+     */
+    static String normalizeSerial(String serialNumber) {
+        if (serialNumber == null || serialNumber.isBlank()) {
+            return null;
+        }
+        String serial = serialNumber.trim();
+        try {
+            if (serial.chars().allMatch(Character::isDigit)) {
+                return new BigInteger(serial).toString();
+            }
+            if (HEX_SERIAL.matcher(serial).matches()) {
+                return new BigInteger(serial.replaceFirst("(?i)^0x", "").replace(":", ""), 16).toString();
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return null;
+    }
+
+    /**
+     * 从 PEM 中解析叶子证书的序列号、CN、SAN（DNS 与 IP）与有效期
+     */
+    static Entry describe(String certificatePem, CertificateRequest request) {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        try {
+            X509Certificate certificate = (X509Certificate) CertificateFactory.getInstance("X.509")
+                    .generateCertificate(new ByteArrayInputStream(certificatePem.getBytes(StandardCharsets.US_ASCII)));
+            Set<String> sans = new LinkedHashSet<>();
+            Collection<List<?>> names = certificate.getSubjectAlternativeNames();
+            if (names != null) {
+                for (List<?> name : names) {
+                    int type = (Integer) name.get(0);
+                    if (type == 2 || type == 7) {
+                        sans.add(String.valueOf(name.get(1)).toLowerCase(Locale.ROOT));
+                    }
+                }
+            }
+            X500Name subject = X500Name.getInstance(certificate.getSubjectX500Principal().getEncoded());
+            RDN[] commonNames = subject.getRDNs(BCStyle.CN);
+            String commonName = commonNames.length > 0
+                    ? IETFUtils.valueToString(commonNames[0].getFirst().getValue())
+                    : request.getCommonName();
+            return new Entry(certificate.getSerialNumber().toString(), commonName, List.copyOf(sans),
+                    certificate.getNotBefore().toInstant(), certificate.getNotAfter().toInstant(), now);
+        } catch (Exception e) {
+            log.warn("Could not parse issued certificate for {}, storing it under a generated serial: {}",
+                    request.getCommonName(), e.getMessage());
+            Set<String> sans = new LinkedHashSet<>();
+            sans.add(request.getCommonName().trim().toLowerCase(Locale.ROOT));
+            if (request.getSubjectAlternativeNames() != null) {
+                for (String san : request.getSubjectAlternativeNames()) {
+                    if (san != null && !san.isBlank()) {
+                        sans.add(san.trim().toLowerCase(Locale.ROOT));
+                    }
+                }
+            }
+            int validityDays = request.getValidityDays() != null ? request.getValidityDays() : 365;
+            return new Entry(new BigInteger(63, RANDOM).toString(), request.getCommonName(), List.copyOf(sans),
+                    now, now.plus(validityDays, ChronoUnit.DAYS), now);
+        }
+    }
+
+    private static final class Segment {
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final int capacity;
+
+        private Segment(Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity();
+        }
+
+        /**
+         * 映射段文件；新段按 segmentSize 预分配，已有的段按实际大小映射
+         */
+        static Segment open(Path path, int segmentSize) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            long size = Math.max(channel.size(), segmentSize);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(size, Integer.MAX_VALUE));
+            return new Segment(path, channel, buffer);
+        }
+    }
+}
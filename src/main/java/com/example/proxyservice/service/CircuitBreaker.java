@@ -0,0 +1,194 @@
+package com.example.proxyservice.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 单个 step-ca 副本的熔断器
+ *
+ * 最近 window-size 次调用中失败率或慢调用率超过阈值时打开，打开期间不再向该副本发送请求；
+ * open-duration 之后进入半开状态，放行少量试探请求，全部成功则关闭，任一失败则重新打开。
+ * 滑动窗口是一个环形数组，每个槽位通过 getAndSet 原子替换，记录结果不加锁。
+ */
+@Slf4j
+class CircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final int RECORDED = 1;
+    private static final int FAILURE = 2;
+    private static final int SLOW = 4;
+
+    private final String name;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final int halfOpenCalls;
+
+    private final AtomicIntegerArray outcomes;
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final AtomicInteger recorded = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicInteger slowCalls = new AtomicInteger();
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private volatile long openedAt;
+    private final AtomicInteger halfOpenPermits = new AtomicInteger();
+    private final AtomicInteger halfOpenSuccesses = new AtomicInteger();
+
+    CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold,
+                   double slowCallRateThreshold, long slowCallNanos, long openNanos, int halfOpenCalls) {
+        this.name = name;
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = slowCallNanos;
+        this.openNanos = openNanos;
+        this.halfOpenCalls = halfOpenCalls;
+        this.outcomes = new AtomicIntegerArray(windowSize);
+    }
+
+    /**
+     * 是否可以向该副本发送请求，只用于筛选候选副本，不消耗半开状态的试探名额
+     */
+    boolean isCallPermitted() {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        if (current == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                return false;
+            }
+            transitionToHalfOpen();
+        }
+        return halfOpenPermits.get() > 0;
+    }
+
+    /**
+     * 申请一次调用；半开状态下原子地占用一个试探名额（大于 0 时才减一），名额用完返回 false。
+     * 申请成功但最终没有发出请求时必须调用 {@link #releasePermission()} 归还
+     */
+    boolean tryAcquirePermission() {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        if (current == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                return false;
+            }
+            transitionToHalfOpen();
+        }
+        while (true) {
+            int permits = halfOpenPermits.get();
+            if (permits <= 0) {
+                return false;
+            }
+            if (halfOpenPermits.compareAndSet(permits, permits - 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 归还未使用的试探名额；期间熔断器已重新打开或关闭时名额已作废，不做处理
+     */
+    void releasePermission() {
+        if (state.get() == State.HALF_OPEN) {
+            halfOpenPermits.incrementAndGet();
+        }
+    }
+
+    /**
+     * 记录一次调用结果
+     */
+    void onCallCompleted(long latencyNanos, boolean failed) {
+        boolean slow = latencyNanos > slowCallNanos;
+        State current = state.get();
+        if (current == State.HALF_OPEN) {
+            if (failed || slow) {
+                transitionToOpen(State.HALF_OPEN, failed ? "failed" : "slow");
+            } else if (halfOpenSuccesses.incrementAndGet() >= halfOpenCalls) {
+                transitionToClosed();
+            }
+            return;
+        }
+        if (current == State.OPEN) {
+            return;
+        }
+
+        int outcome = RECORDED | (failed ? FAILURE : 0) | (slow ? SLOW : 0);
+        int previous = outcomes.getAndSet(Math.floorMod(cursor.getAndIncrement(), windowSize), outcome);
+        if ((previous & RECORDED) == 0) {
+            recorded.incrementAndGet();
+        }
+        failures.addAndGet(((outcome & FAILURE) - (previous & FAILURE)) / FAILURE);
+        slowCalls.addAndGet(((outcome & SLOW) - (previous & SLOW)) / SLOW);
+
+        int calls = recorded.get();
+        if (calls < minimumCalls) {
+            return;
+        }
+        if (failures.get() >= failureRateThreshold * calls) {
+            transitionToOpen(State.CLOSED, "failure rate " + failures.get() + "/" + calls);
+        } else if (slowCalls.get() >= slowCallRateThreshold * calls) {
+            transitionToOpen(State.CLOSED, "slow call rate " + slowCalls.get() + "/" + calls);
+        }
+    }
+
+    State getState() {
+        State current = state.get();
+        if (current == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            return State.HALF_OPEN;
+        }
+        return current;
+    }
+
+    /**
+     * 距离进入半开状态的剩余时间，未打开时为 0
+     */
+    long remainingOpenNanos() {
+        if (state.get() != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, openNanos - (System.nanoTime() - openedAt));
+    }
+
+    private void transitionToOpen(State from, String reason) {
+        if (state.get() != from) {
+            return;
+        }
+        openedAt = System.nanoTime();
+        if (state.compareAndSet(from, State.OPEN)) {
+            log.warn("Circuit for upstream {} opened ({})", name, reason);
+        }
+    }
+
+    private void transitionToHalfOpen() {
+        if (state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+            halfOpenSuccesses.set(0);
+            halfOpenPermits.set(halfOpenCalls);
+            log.info("Circuit for upstream {} half-open, allowing {} trial calls", name, halfOpenCalls);
+        }
+    }
+
+    private void transitionToClosed() {
+        if (state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+            for (int i = 0; i < windowSize; i++) {
+                outcomes.set(i, 0);
+            }
+            recorded.set(0);
+            failures.set(0);
+            slowCalls.set(0);
+            log.info("Circuit for upstream {} closed", name);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.proxyservice.service;
+
+import com.example.proxyservice.config.ConcurrencyLimitProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按 ACME 操作分类的自适应并发限制（AIMD）
+ *
+ * 每类操作维护独立的 limit：请求成功且延迟不超过基线的 latency-tolerance 倍时加性增大（约每轮 +1），
+ * 上游返回 5xx、I/O 失败或延迟明显高于基线时乘性减小。超过 limit 的请求立即返回 503 + Retry-After，
+ * 不在 Tomcat 队列中堆积，也不会让 finalize 等重操作挤占 directory、轮询等轻量请求。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ConcurrencyLimiter {
+
+    /**
+     * 基线延迟使用慢速 EWMA，跟随上游的长期变化而不被单次尖峰拉高
+     */
+    private static final double BASELINE_ALPHA = 0.05;
+
+    /**
+     * 未启用限制时返回的占位额度，release 时不做任何调整
+     */
+    private static final RouteLimit UNLIMITED = new RouteLimit(AcmeRoute.OTHER, 1, 1, 1);
+
+    private final ConcurrencyLimitProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<AcmeRoute, RouteLimit> limits = new EnumMap<>(AcmeRoute.class);
+
+    @PostConstruct
+    public void init() {
+        for (AcmeRoute route : AcmeRoute.values()) {
+            ConcurrencyLimitProperties.Limit config = routeConfig(route);
+            RouteLimit limit = new RouteLimit(route, config.getMinLimit(), config.getMaxLimit(), config.getInitialLimit());
+            limits.put(route, limit);
+
+            String tag = routeTag(route);
+            Gauge.builder("proxy.concurrency.limit", limit, RouteLimit::getLimit)
+                    .description("Current adaptive concurrency limit per ACME operation")
+                    .tag("route", tag)
+                    .register(meterRegistry);
+            Gauge.builder("proxy.concurrency.inflight", limit, RouteLimit::getInflight)
+                    .description("Upstream requests in flight per ACME operation")
+                    .tag("route", tag)
+                    .register(meterRegistry);
+            limit.rejected = Counter.builder("proxy.concurrency.rejected")
+                    .description("Requests shed with 503 because the operation was at its concurrency limit")
+                    .tag("route", tag)
+                    .register(meterRegistry);
+        }
+        log.info("Adaptive concurrency limiting {}", properties.isEnabled() ? "enabled" : "disabled");
+    }
+
+    /**
+     * 尝试为一次上游调用占用并发额度，超过限制时返回 null
+     */
+    public RouteLimit tryAcquire(String path) {
+        if (!properties.isEnabled()) {
+            return UNLIMITED;
+        }
+        RouteLimit limit = limits.get(AcmeRoute.classify(path));
+        if (limit.tryAcquire()) {
+            return limit;
+        }
+        limit.rejected.increment();
+        return null;
+    }
+
+    /**
+     * 超过并发限制时的 503 响应
+     */
+    public ResponseEntity<byte[]> rejection(String path) {
+        return AcmeProblems.problem(HttpStatus.SERVICE_UNAVAILABLE, AcmeProblems.SERVER_INTERNAL,
+                "Proxy is at its concurrency limit for " + routeTag(AcmeRoute.classify(path)) + " requests, retry later",
+                properties.getRetryAfter());
+    }
+
+    /**
+     * 释放额度并用本次结果调整 limit；status 为 0 表示 I/O 失败
+     */
+    public void release(RouteLimit limit, long startNanos, int status) {
+        if (limit == null || limit == UNLIMITED) {
+            return;
+        }
+        long latency = System.nanoTime() - startNanos;
+        limit.release(latency, status == 0 || status >= 500, properties.getBackoffRatio(), properties.getLatencyTolerance());
+    }
+
+    private ConcurrencyLimitProperties.Limit routeConfig(AcmeRoute route) {
+        for (Map.Entry<String, ConcurrencyLimitProperties.Limit> entry : properties.getRoutes().entrySet()) {
+            if (entry.getKey().replace('-', '_').equalsIgnoreCase(route.name())) {
+                return entry.getValue();
+            }
+        }
+        return properties.getDefaults();
+    }
+
+    private static String routeTag(AcmeRoute route) {
+        return route.name().toLowerCase().replace('_', '-');
+    }
+
+    /**
+     * 单个操作分类的 limit 与在途请求数
+     */
+    public static final class RouteLimit {
+        private final AcmeRoute route;
+        private final int minLimit;
+        private final int maxLimit;
+        private final AtomicInteger inflight = new AtomicInteger();
+        /**
+         * double 形式的 limit，以 bit 形式存放以便 CAS 更新
+         */
+        private final AtomicLong limitBits;
+        private volatile double baselineNanos;
+        private Counter rejected;
+
+        private RouteLimit(AcmeRoute route, int minLimit, int maxLimit, int initialLimit) {
+            this.route = route;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.limitBits = new AtomicLong(Double.doubleToLongBits(Math.max(minLimit, Math.min(maxLimit, initialLimit))));
+        }
+
+        private boolean tryAcquire() {
+            int limit = (int) getLimit();
+            while (true) {
+                int current = inflight.get();
+                if (current >= limit) {
+                    return false;
+                }
+                if (inflight.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private void release(long latencyNanos, boolean failed, double backoffRatio, double latencyTolerance) {
+            int inflightAtRelease = inflight.getAndDecrement();
+            double baseline = baselineNanos;
+            boolean slow = baseline > 0 && latencyNanos > baseline * latencyTolerance;
+            if (!failed) {
+                baselineNanos = baseline == 0 ? latencyNanos : baseline + BASELINE_ALPHA * (latencyNanos - baseline);
+            }
+
+            long bits;
+            double next;
+            do {
+                bits = limitBits.get();
+                double current = Double.longBitsToDouble(bits);
+                if (failed || slow) {
+                    next = Math.max(minLimit, current * backoffRatio);
+                } else if (inflightAtRelease * 2 >= current) {
+                    // 只有接近满载时才增大，避免空闲期间 limit 无限上涨
+                    next = Math.min(maxLimit, current + 1.0 / current);
+                } else {
+                    return;
+                }
+            } while (!limitBits.compareAndSet(bits, Double.doubleToLongBits(next)));
+
+            if ((int) next != (int) Double.longBitsToDouble(bits)) {
+                log.debug("Concurrency limit for {} adjusted to {}", route, (int) next);
+            }
+        }
+
+        public double getLimit() {
+            return Double.longBitsToDouble(limitBits.get());
+        }
+
+        public int getInflight() {
+            return inflight.get();
+        }
+    }
+}
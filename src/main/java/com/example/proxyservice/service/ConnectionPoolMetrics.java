@@ -0,0 +1,55 @@
+package com.example.proxyservice.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.core5.pool.ConnPoolControl;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * 上游连接池实时指标：proxy.pool.connections{pool, state=leased|pending|available|max}
+ *
+ * 每个 step-ca 副本的连接池由 UpstreamRegistry 以 upstream:&lt;name&gt; 注册，异步引擎的连接池为 async
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ConnectionPoolMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final ObjectProvider<PoolingAsyncClientConnectionManager> asyncConnectionManager;
+
+    @PostConstruct
+    public void init() {
+        asyncConnectionManager.ifAvailable(manager -> register("async", manager));
+    }
+
+    /**
+     * 为一个连接池注册 leased / pending / available / max 四个 gauge
+     */
+    public void register(String poolName, ConnPoolControl<HttpRoute> pool) {
+        Gauge.builder("proxy.pool.connections", pool, p -> p.getTotalStats().getLeased())
+                .description("Upstream connection pool state")
+                .tags("pool", poolName, "state", "leased")
+                .register(meterRegistry);
+        Gauge.builder("proxy.pool.connections", pool, p -> p.getTotalStats().getPending())
+                .description("Upstream connection pool state")
+                .tags("pool", poolName, "state", "pending")
+                .register(meterRegistry);
+        Gauge.builder("proxy.pool.connections", pool, p -> p.getTotalStats().getAvailable())
+                .description("Upstream connection pool state")
+                .tags("pool", poolName, "state", "available")
+                .register(meterRegistry);
+        Gauge.builder("proxy.pool.connections", pool, p -> p.getTotalStats().getMax())
+                .description("Upstream connection pool state")
+                .tags("pool", poolName, "state", "max")
+                .register(meterRegistry);
+        log.info("Registered connection pool metrics for pool {}", poolName);
+    }
+}
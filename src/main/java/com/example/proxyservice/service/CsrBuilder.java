@@ -0,0 +1,232 @@
+package com.example.proxyservice.service;
+
+import com.example.proxyservice.model.CertificateRequest;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.edec.EdECObjectIdentifiers;
+import org.bouncycastle.asn1.pkcs.PKCSObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x500.X500NameBuilder;
+import org.bouncycastle.asn1.x500.style.BCStyle;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.ExtensionsGenerator;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.RuntimeOperatorException;
+import org.bouncycastle.pkcs.PKCS10CertificationRequest;
+import org.bouncycastle.pkcs.jcajce.JcaPKCS10CertificationRequestBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * 标准 PKCS#10 CSR 构建：主题、SAN 扩展（DNS 名与 IP），支持 RSA、ECDSA P-256/P-384 与 Ed25519
+ *
+ * 签名器按线程缓存：每个线程为每种签名算法保留一个 {@link Signature} 实例，签名时只 initSign 新的私钥，
+ * 省去每次按算法名查找 provider 与构造 ContentSigner 的开销；AlgorithmIdentifier 为常量。
+ */
+@Component
+public class CsrBuilder {
+
+    private static final Pattern IPV4 = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}");
+
+    private static final ThreadLocal<Map<String, Signature>> SIGNATURES = ThreadLocal.withInitial(HashMap::new);
+
+    /**
+     * 允许的最大 RSA 密钥长度，生成耗时随长度近似三次方增长
+     */
+    @Value("${acme.csr.max-rsa-key-size:4096}")
+    private int maxRsaKeySize;
+
+    /**
+     * 密钥规格：KeyPairGenerator 算法名与长度，以及对应的 CSR 签名算法
+     */
+    public record KeySpec(String algorithm, int keySize, String signatureAlgorithm, AlgorithmIdentifier signatureId) {
+    }
+
+    private static final KeySpec EC_P256 = new KeySpec("EC", 256, "SHA256withECDSA",
+            new AlgorithmIdentifier(X9ObjectIdentifiers.ecdsa_with_SHA256));
+    private static final KeySpec EC_P384 = new KeySpec("EC", 384, "SHA384withECDSA",
+            new AlgorithmIdentifier(X9ObjectIdentifiers.ecdsa_with_SHA384));
+    private static final KeySpec ED25519 = new KeySpec("Ed25519", 0, "Ed25519",
+            new AlgorithmIdentifier(EdECObjectIdentifiers.id_Ed25519));
+    private static final AlgorithmIdentifier SHA256_WITH_RSA =
+            new AlgorithmIdentifier(PKCSObjectIdentifiers.sha256WithRSAEncryption, DERNull.INSTANCE);
+
+    /**
+     * 按请求中的 keyType/keySize 解析密钥规格：
+     * RSA（默认 2048，最大 acme.csr.max-rsa-key-size，须为 8 的倍数）、EC/ECDSA（256 或 384，也接受 P-256、P-384 写法）、
+     * Ed25519（忽略 keySize）
+     */
+    public KeySpec resolve(String keyType, Integer keySize) {
+        String type = keyType == null ? "RSA" : keyType.trim().toUpperCase(Locale.ROOT);
+        switch (type) {
+            case "RSA":
+                int bits = keySize != null ? keySize : 2048;
+                if (bits < 2048) {
+                    throw new IllegalArgumentException("RSA keys must be at least 2048 bits");
+                }
+                if (bits > maxRsaKeySize) {
+                    throw new IllegalArgumentException("RSA keys must be at most " + maxRsaKeySize + " bits");
+                }
+                if (bits % 8 != 0) {
+                    throw new IllegalArgumentException("RSA key size must be a multiple of 8");
+                }
+                return new KeySpec("RSA", bits, "SHA256withRSA", SHA256_WITH_RSA);
+            case "EC":
+            case "ECDSA":
+                if (keySize == null || keySize == 256 || keySize == 2048) {
+                    // keySize 缺省值是按 RSA 设计的 2048，对 EC 视为未指定
+                    return EC_P256;
+                }
+                if (keySize == 384) {
+                    return EC_P384;
+                }
+                throw new IllegalArgumentException("Unsupported EC key size " + keySize + " (expected 256 or 384)");
+            case "P-256":
+            case "P256":
+                return EC_P256;
+            case "P-384":
+            case "P384":
+                return EC_P384;
+            case "ED25519":
+                return ED25519;
+            default:
+                throw new IllegalArgumentException("Unsupported key type " + keyType + " (expected RSA, EC or Ed25519)");
+        }
+    }
+
+    /**
+     * 构建并签名 CSR，返回 PEM（CERTIFICATE REQUEST）
+     */
+    public String build(CertificateRequest request, KeyPair keyPair, KeySpec spec) throws IOException, GeneralSecurityException {
+        X500NameBuilder subject = new X500NameBuilder(BCStyle.INSTANCE);
+        if (request.getCountry() != null) {
+            subject.addRDN(BCStyle.C, request.getCountry());
+        }
+        if (request.getState() != null) {
+            subject.addRDN(BCStyle.ST, request.getState());
+        }
+        if (request.getLocality() != null) {
+            subject.addRDN(BCStyle.L, request.getLocality());
+        }
+        if (request.getOrganization() != null) {
+            subject.addRDN(BCStyle.O, request.getOrganization());
+        }
+        if (request.getOrganizationalUnit() != null) {
+            subject.addRDN(BCStyle.OU, request.getOrganizationalUnit());
+        }
+        subject.addRDN(BCStyle.CN, request.getCommonName());
+        X500Name name = subject.build();
+
+        JcaPKCS10CertificationRequestBuilder builder = new JcaPKCS10CertificationRequestBuilder(name, keyPair.getPublic());
+        ExtensionsGenerator extensions = new ExtensionsGenerator();
+        extensions.addExtension(Extension.subjectAlternativeName, false, subjectAlternativeNames(request));
+        builder.addAttribute(PKCSObjectIdentifiers.pkcs_9_at_extensionRequest, extensions.generate());
+
+        PKCS10CertificationRequest csr = builder.build(signer(spec, keyPair.getPrivate()));
+        return toPem(csr.getEncoded());
+    }
+
+    /**
+     * SAN 包含 commonName 与 subjectAlternativeNames（去重），IP 地址写成 iPAddress，其余写成 dNSName
+     */
+    private static GeneralNames subjectAlternativeNames(CertificateRequest request) {
+        Set<String> names = new LinkedHashSet<>();
+        names.add(request.getCommonName().trim().toLowerCase(Locale.ROOT));
+        if (request.getSubjectAlternativeNames() != null) {
+            for (String san : request.getSubjectAlternativeNames()) {
+                if (san != null && !san.isBlank()) {
+                    names.add(san.trim().toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        GeneralName[] generalNames = new GeneralName[names.size()];
+        int i = 0;
+        for (String san : names) {
+            boolean ip = IPV4.matcher(san).matches() || san.indexOf(':') >= 0;
+            generalNames[i++] = new GeneralName(ip ? GeneralName.iPAddress : GeneralName.dNSName, san);
+        }
+        return new GeneralNames(generalNames);
+    }
+
+    private static ContentSigner signer(KeySpec spec, PrivateKey privateKey) throws GeneralSecurityException {
+        Signature signature = SIGNATURES.get().get(spec.signatureAlgorithm());
+        if (signature == null) {
+            signature = Signature.getInstance(spec.signatureAlgorithm());
+            SIGNATURES.get().put(spec.signatureAlgorithm(), signature);
+        }
+        signature.initSign(privateKey);
+        return new ThreadSignatureSigner(signature, spec.signatureId());
+    }
+
+    private static String toPem(byte[] der) {
+        return "-----BEGIN CERTIFICATE REQUEST-----\n"
+                + Base64.getMimeEncoder(64, new byte[]{'\n'}).encodeToString(der)
+                + "\n-----END CERTIFICATE REQUEST-----\n";
+    }
+
+    /**
+     * 包装已 initSign 的线程缓存 Signature；只在构建当前 CSR 的线程内使用
+     */
+    private static final class ThreadSignatureSigner implements ContentSigner {
+        private final Signature signature;
+        private final AlgorithmIdentifier algorithmIdentifier;
+        private final OutputStream stream;
+
+        ThreadSignatureSigner(Signature signature, AlgorithmIdentifier algorithmIdentifier) {
+            this.signature = signature;
+            this.algorithmIdentifier = algorithmIdentifier;
+            this.stream = new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    try {
+                        signature.update(bytes, offset, length);
+                    } catch (SignatureException e) {
+                        throw new IOException(e);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public AlgorithmIdentifier getAlgorithmIdentifier() {
+            return algorithmIdentifier;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return stream;
+        }
+
+        @Override
+        public byte[] getSignature() {
+            try {
+                return signature.sign();
+            } catch (SignatureException e) {
+                throw new RuntimeOperatorException("Unable to sign CSR: " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.proxyservice.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 代理与签发路径上的 JFR 事件，在 JMC 的 "ACME Proxy" 分类下查看
+ *
+ * 用法统一为 begin → 业务逻辑 → end → shouldCommit 时再填字段并提交；
+ * 没有录制在运行或事件被禁用时，begin/end/shouldCommit 近乎零开销，字段也不会计算。
+ */
+public final class FlightEvents {
+
+    private FlightEvents() {
+    }
+
+    @Name("com.example.proxyservice.Forward")
+    @Label("ACME Forward")
+    @Category("ACME Proxy")
+    @Description("A request forwarded to step-ca by ProxyService, including local answers")
+    @StackTrace(false)
+    public static final class Forward extends Event {
+        @Label("Route")
+        public String route;
+
+        @Label("Method")
+        public String method;
+
+        @Label("Status")
+        public int status;
+
+        @Label("Request Bytes")
+        @DataAmount
+        public long requestBytes;
+
+        @Label("Response Bytes")
+        @DataAmount
+        public long responseBytes;
+    }
+
+    @Name("com.example.proxyservice.IssuanceStage")
+    @Label("Certificate Issuance Stage")
+    @Category("ACME Proxy")
+    @Description("One stage of CertificateService.generateCertificate: keygen, csr, sign or pem")
+    @StackTrace(false)
+    public static final class IssuanceStage extends Event {
+        @Label("Stage")
+        public String stage;
+
+        @Label("Common Name")
+        public String commonName;
+
+        @Label("Key Type")
+        public String keyType;
+
+        @Label("Success")
+        public boolean success;
+
+        @Label("Bytes")
+        @Description("Size of the stage output: CSR, signed certificate or PEM private key")
+        @DataAmount
+        public long bytes;
+    }
+
+    @Name("com.example.proxyservice.Issuance")
+    @Label("Certificate Issuance")
+    @Category("ACME Proxy")
+    @Description("A complete CertificateService.generateCertificate call")
+    @StackTrace(false)
+    public static final class Issuance extends Event {
+        @Label("Common Name")
+        public String commonName;
+
+        @Label("Key Type")
+        public String keyType;
+
+        @Label("Status")
+        public String status;
+
+        @Label("Certificate Bytes")
+        @DataAmount
+        public long certificateBytes;
+    }
+
+    @Name("com.example.proxyservice.Revocation")
+    @Label("Certificate Revocation")
+    @Category("ACME Proxy")
+    @Description("The step-ca revocation call made by CertificateService.revokeCertificate")
+    @StackTrace(false)
+    public static final class Revocation extends Event {
+        @Label("Serial Number")
+        public String serialNumber;
+
+        @Label("Upstream Status")
+        public int status;
+
+        @Label("Request Bytes")
+        @DataAmount
+        public long requestBytes;
+
+        @Label("Response Bytes")
+        @DataAmount
+        public long responseBytes;
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.proxyservice.service;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * 常驻的 JFR 连续录制：数据只保留最近 max-age / max-size 的环形窗口，出现慢签发等事故后再 dump 出来分析
+ *
+ * 默认 settings=default 是 JDK 自带的低开销配置（官方标称 1% 以内），代理自己的事件按阈值启用。
+ * 通过 /actuator/flightrecorder 启停与 dump，也可以配置 proxy.jfr.start-on-boot=true 随进程启动。
+ */
+@Slf4j
+@Component
+public class FlightRecorderControl {
+
+    private static final DateTimeFormatter DUMP_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    @Value("${proxy.jfr.start-on-boot:false}")
+    private boolean startOnBoot;
+
+    /**
+     * JDK 自带的 default 或 profile，也可以是 .jfc 文件路径
+     */
+    @Value("${proxy.jfr.settings:default}")
+    private String settings;
+
+    @Value("${proxy.jfr.max-age-minutes:15}")
+    private long maxAgeMinutes;
+
+    @Value("${proxy.jfr.max-size-mb:100}")
+    private long maxSizeMb;
+
+    /**
+     * 转发事件数量与请求数相当，只记录超过阈值的慢请求；签发与注销事件全部记录
+     */
+    @Value("${proxy.jfr.forward-threshold-ms:20}")
+    private long forwardThresholdMs;
+
+    @Value("${proxy.jfr.dump-directory:logs/jfr}")
+    private String dumpDirectory;
+
+    /**
+     * dump 目录中最多保留的文件数，超出时删除最旧的
+     */
+    @Value("${proxy.jfr.max-dumps:10}")
+    private int maxDumps;
+
+    private Recording recording;
+
+    @PostConstruct
+    public void init() {
+        if (startOnBoot) {
+            try {
+                start();
+            } catch (Exception e) {
+                log.warn("Could not start continuous flight recording: {}", e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return recording != null && recording.getState() == RecordingState.RUNNING;
+    }
+
+    /**
+     * 启动连续录制，已在运行时直接返回
+     */
+    public synchronized void start() throws IOException, ParseException {
+        if (isRunning()) {
+            return;
+        }
+        Configuration configuration = settings.endsWith(".jfc")
+                ? Configuration.create(Path.of(settings))
+                : Configuration.getConfiguration(settings);
+        Recording created = new Recording(configuration);
+        created.setName("proxy-continuous");
+        // 写入磁盘仓库，按时间和大小淘汰最旧的 chunk，内存占用只有 JFR 的线程缓冲
+        created.setToDisk(true);
+        created.setMaxAge(Duration.ofMinutes(maxAgeMinutes));
+        created.setMaxSize(maxSizeMb * 1024 * 1024);
+        created.enable(FlightEvents.Forward.class).withThreshold(Duration.ofMillis(forwardThresholdMs));
+        created.enable(FlightEvents.Issuance.class);
+        created.enable(FlightEvents.IssuanceStage.class);
+        created.enable(FlightEvents.Revocation.class);
+        created.start();
+        recording = created;
+        log.info("Continuous flight recording started: settings={}, max-age={}m, max-size={}MB",
+                settings, maxAgeMinutes, maxSizeMb);
+    }
+
+    public synchronized void stop() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+            log.info("Continuous flight recording stopped");
+        }
+    }
+
+    /**
+     * 把当前窗口内的数据写到 dump 目录，录制继续进行
+     */
+    public synchronized Path dump() throws IOException {
+        if (!isRunning()) {
+            throw new IllegalStateException("Continuous flight recording is not running");
+        }
+        Path directory = Path.of(dumpDirectory);
+        Files.createDirectories(directory);
+        Path file = directory.resolve("proxy-" + LocalDateTime.now().format(DUMP_NAME) + ".jfr");
+        recording.dump(file);
+        log.info("Flight recording dumped to {} ({} bytes)", file, Files.size(file));
+        pruneDumps(directory);
+        return file;
+    }
+
+    /**
+     * 按文件名查找 dump 文件，只接受 dump 目录下的 .jfr 文件名
+     */
+    public Path findDump(String name) {
+        if (name == null || !name.endsWith(".jfr") || name.contains("/") || name.contains("\\") || name.contains("..")) {
+            return null;
+        }
+        Path file = Path.of(dumpDirectory).resolve(name);
+        return Files.isRegularFile(file) ? file : null;
+    }
+
+    public synchronized Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("running", isRunning());
+        status.put("settings", settings);
+        status.put("maxAgeMinutes", maxAgeMinutes);
+        status.put("maxSizeMb", maxSizeMb);
+        status.put("forwardThresholdMs", forwardThresholdMs);
+        if (isRunning()) {
+            status.put("startTime", recording.getStartTime());
+        }
+        status.put("dumps", listDumps(Path.of(dumpDirectory)).stream()
+                .map(file -> file.getFileName().toString())
+                .toList());
+        return status;
+    }
+
+    private void pruneDumps(Path directory) {
+        List<Path> dumps = listDumps(directory);
+        for (int i = 0; i < dumps.size() - maxDumps; i++) {
+            try {
+                Files.deleteIfExists(dumps.get(i));
+            } catch (IOException e) {
+                log.warn("Could not delete old flight recording {}: {}", dumps.get(i), e.getMessage());
+            }
+        }
+    }
+
+    private static List<Path> listDumps(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            // 文件名带时间戳，按名称排序即按时间排序
+            return files.filter(file -> file.getFileName().toString().endsWith(".jfr")).sorted().toList();
+        } catch (IOException e) {
+            return List.of();
+        }
+    }
+}
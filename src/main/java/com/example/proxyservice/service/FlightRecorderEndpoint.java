@@ -0,0 +1,54 @@
+package com.example.proxyservice.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * /actuator/flightrecorder：查看连续录制状态；POST {"action": "start|stop|dump"} 控制录制；
+ * GET /actuator/flightrecorder/{name} 下载 dump 文件
+ *
+ * dump 含环境变量、系统属性与启动参数，默认不在 Web 上暴露，只应通过独立的内网管理端口开放
+ */
+@Component
+@RequiredArgsConstructor
+@Endpoint(id = "flightrecorder")
+public class FlightRecorderEndpoint {
+
+    private final FlightRecorderControl flightRecorderControl;
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        return flightRecorderControl.status();
+    }
+
+    @ReadOperation
+    public Resource download(@Selector String name) {
+        Path file = flightRecorderControl.findDump(name);
+        return file != null ? new FileSystemResource(file) : null;
+    }
+
+    @WriteOperation
+    public Map<String, Object> control(String action) throws Exception {
+        switch (action) {
+            case "start" -> flightRecorderControl.start();
+            case "stop" -> flightRecorderControl.stop();
+            case "dump" -> {
+                Path file = flightRecorderControl.dump();
+                Map<String, Object> status = flightRecorderControl.status();
+                status.put("dumped", file.getFileName().toString());
+                return status;
+            }
+            default -> throw new IllegalArgumentException("Unknown action: " + action + " (expected start, stop or dump)");
+        }
+        return flightRecorderControl.status();
+    }
+}
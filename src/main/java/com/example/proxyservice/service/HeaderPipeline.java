@@ -0,0 +1,287 @@
+package com.example.proxyservice.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 转发请求/响应头的处理阶段，启动时构建一次
+ *
+ * 逐跳头按名称长度预先分桶，判断时只做 equalsIgnoreCase / regionMatches，不调用 toLowerCase；
+ * Content-Type 的清理与解析结果按原始字符串缓存（有上限），常见的几种取值只解析一次。
+ * 稳态下每个请求头的判断与 Content-Type 处理不产生临时对象。
+ */
+@Slf4j
+@Component
+public class HeaderPipeline {
+
+    /**
+     * RFC 9110 7.6.1 的逐跳头，以及由代理重新计算的 Host、Content-Length
+     */
+    private static final String[] HOP_BY_HOP = {
+            "host", "connection", "keep-alive", "transfer-encoding", "te", "trailer", "upgrade", "content-length"
+    };
+    private static final String PROXY_PREFIX = "proxy-";
+
+    private static final ContentTypeEntry DEFAULT_CONTENT_TYPE = new ContentTypeEntry(null, ContentType.APPLICATION_JSON);
+
+    @Value("${proxy.headers.content-type-cache-size:64}")
+    private int contentTypeCacheSize;
+
+    /**
+     * 下标为名称长度，元素为该长度的逐跳头
+     */
+    private String[][] hopByHopByLength;
+    private final ConcurrentHashMap<String, ContentTypeEntry> contentTypes = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        int maxLength = 0;
+        for (String name : HOP_BY_HOP) {
+            maxLength = Math.max(maxLength, name.length());
+        }
+        List<List<String>> buckets = new ArrayList<>();
+        for (int i = 0; i <= maxLength; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        for (String name : HOP_BY_HOP) {
+            buckets.get(name.length()).add(name);
+        }
+        hopByHopByLength = new String[maxLength + 1][];
+        for (int i = 0; i <= maxLength; i++) {
+            hopByHopByLength[i] = buckets.get(i).toArray(new String[0]);
+        }
+    }
+
+    /**
+     * 是否为不应转发的逐跳头（忽略大小写）
+     */
+    public boolean isHopByHop(String headerName) {
+        int length = headerName.length();
+        if (length >= PROXY_PREFIX.length() && headerName.regionMatches(true, 0, PROXY_PREFIX, 0, PROXY_PREFIX.length())) {
+            return true;
+        }
+        if (length >= hopByHopByLength.length) {
+            return false;
+        }
+        for (String candidate : hopByHopByLength[length]) {
+            if (candidate.equalsIgnoreCase(headerName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 把客户端请求头复制到上游请求：跳过逐跳头和 Connection 中列出的头，清理 Content-Type
+     */
+    public void copyRequestHeaders(HttpServletRequest request, HttpRequest target) {
+        String connection = request.getHeader(HttpHeaders.CONNECTION);
+        Enumeration<String> headerNames = request.getHeaderNames();
+        while (headerNames.hasMoreElements()) {
+            String headerName = headerNames.nextElement();
+            if (isHopByHop(headerName) || isNominated(connection, headerName)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Skipping header: {}", headerName);
+                }
+                continue;
+            }
+            String headerValue = request.getHeader(headerName);
+            if (HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(headerName)) {
+                // 避免通配符子类型
+                String sanitized = sanitizeContentType(headerValue);
+                if (sanitized == null) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Skipping empty Content-Type: {}", headerValue);
+                    }
+                    continue;
+                }
+                headerValue = sanitized;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Forwarding header: {} = {}", headerName, headerValue);
+            }
+            target.setHeader(headerName, headerValue);
+        }
+    }
+
+    /**
+     * 把上游响应头复制到 Spring 响应头
+     */
+    public void copyResponseHeaders(Header[] headers, HttpHeaders target) {
+        String connection = connectionHeader(headers);
+        for (Header header : headers) {
+            String name = header.getName();
+            if (!isHopByHop(name) && !isNominated(connection, name)) {
+                target.add(name, header.getValue());
+            }
+        }
+    }
+
+    /**
+     * 把上游响应头直接写到 servlet 响应（流式转发）
+     */
+    public void copyResponseHeaders(Header[] headers, HttpServletResponse target) {
+        String connection = connectionHeader(headers);
+        for (Header header : headers) {
+            String name = header.getName();
+            if (!isHopByHop(name) && !isNominated(connection, name)) {
+                target.addHeader(name, header.getValue());
+            }
+        }
+    }
+
+    /**
+     * 解析 Content-Type，为空或无法解析时使用默认值
+     */
+    public ContentType parseContentType(String contentType) {
+        return contentTypeEntry(contentType).parsed;
+    }
+
+    /**
+     * 清理 Content-Type 头，移除通配符子类型，为空时返回 null
+     */
+    public String sanitizeContentType(String contentType) {
+        return contentTypeEntry(contentType).sanitized;
+    }
+
+    private ContentTypeEntry contentTypeEntry(String contentType) {
+        if (contentType == null) {
+            return DEFAULT_CONTENT_TYPE;
+        }
+        ContentTypeEntry entry = contentTypes.get(contentType);
+        if (entry != null) {
+            return entry;
+        }
+        String sanitized = sanitize(contentType);
+        entry = sanitized == null ? DEFAULT_CONTENT_TYPE : new ContentTypeEntry(sanitized, parse(sanitized));
+        // 超过上限后不再缓存，避免任意取值撑大内存
+        if (contentTypes.size() < contentTypeCacheSize) {
+            ContentTypeEntry existing = contentTypes.putIfAbsent(contentType, entry);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Connection 头中列出的名称也是逐跳头（RFC 9110 7.6.1），逐个 token 比较，不拆分字符串
+     */
+    private static boolean isNominated(String connection, String headerName) {
+        if (connection == null) {
+            return false;
+        }
+        int length = connection.length();
+        int start = 0;
+        while (start < length) {
+            int end = connection.indexOf(',', start);
+            if (end < 0) {
+                end = length;
+            }
+            int tokenStart = start;
+            int tokenEnd = end;
+            while (tokenStart < tokenEnd && connection.charAt(tokenStart) == ' ') {
+                tokenStart++;
+            }
+            while (tokenEnd > tokenStart && connection.charAt(tokenEnd - 1) == ' ') {
+                tokenEnd--;
+            }
+            if (tokenEnd - tokenStart == headerName.length()
+                    && connection.regionMatches(true, tokenStart, headerName, 0, headerName.length())) {
+                return true;
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    private static String connectionHeader(Header[] headers) {
+        for (Header header : headers) {
+            if (HttpHeaders.CONNECTION.equalsIgnoreCase(header.getName())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static String sanitize(String contentType) {
+        String trimmed = contentType.trim();
+        if (trimmed.isEmpty()) {
+            return null;
+        }
+        // 移除通配符子类型，使用默认的 application/json
+        if (trimmed.contains("*/")) {
+            return "application/json";
+        }
+        // 如果包含通配符，根据主类型使用具体的子类型
+        if (trimmed.contains("*")) {
+            if (trimmed.startsWith("application/")) {
+                return "application/json";
+            } else if (trimmed.startsWith("text/")) {
+                return "text/plain";
+            } else if (trimmed.startsWith("image/")) {
+                return "image/png";
+            }
+            return "application/octet-stream";
+        }
+        // 不是有效的 Content-Type 格式
+        if (!trimmed.contains("/")) {
+            return "application/json";
+        }
+        return trimmed;
+    }
+
+    private static ContentType parse(String contentType) {
+        // 使用预定义的 ContentType 常量
+        switch (contentType) {
+            case "application/json":
+                return ContentType.APPLICATION_JSON;
+            case "application/xml":
+                return ContentType.APPLICATION_XML;
+            case "text/plain":
+                return ContentType.TEXT_PLAIN;
+            case "text/html":
+                return ContentType.TEXT_HTML;
+            case "application/octet-stream":
+                return ContentType.APPLICATION_OCTET_STREAM;
+            case "application/x-www-form-urlencoded":
+                return ContentType.APPLICATION_FORM_URLENCODED;
+            case "multipart/form-data":
+                return ContentType.MULTIPART_FORM_DATA;
+            default:
+                break;
+        }
+        try {
+            return ContentType.parse(contentType);
+        } catch (Exception e) {
+            log.warn("Failed to parse Content-Type: {}, using default", contentType);
+            if (contentType.startsWith("text/")) {
+                return ContentType.TEXT_PLAIN;
+            }
+            return contentType.startsWith("application/") ? ContentType.APPLICATION_JSON : ContentType.APPLICATION_OCTET_STREAM;
+        }
+    }
+
+    private static final class ContentTypeEntry {
+        private final String sanitized;
+        private final ContentType parsed;
+
+        private ContentTypeEntry(String sanitized, ContentType parsed) {
+            this.sanitized = sanitized;
+            this.parsed = parsed;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.example.proxyservice.service;
+
+import com.example.proxyservice.config.JobQueueProperties;
+import com.example.proxyservice.model.CertificateJob;
+import com.example.proxyservice.model.CertificateRequest;
+import com.example.proxyservice.model.CertificateResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * 异步签发任务队列：提交时只落盘并入队，由专用工作线程调用 {@link CertificateService#generateCertificate}
+ *
+ * 每个任务一个 JSON 文件（先写临时文件、fsync 后原子改名），每次状态变化都重写。
+ * 启动时加载目录中的全部任务：已完成的留作查询，QUEUED 与被重启中断的 RUNNING 任务按提交顺序重新入队。
+ * 中断的任务重新执行时会生成新密钥并重新签名，step-ca 上可能留下一张未交付的证书。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IssuanceJobQueue {
+
+    private static final String SUFFIX = ".json";
+
+    private final JobQueueProperties properties;
+    private final CertificateService certificateService;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, CertificateJob> jobs = new ConcurrentHashMap<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicInteger running = new AtomicInteger();
+    private BlockingQueue<CertificateJob> queue;
+    private Path directory;
+    private FileAttribute<?>[] fileAttributes;
+    private volatile boolean stopped;
+
+    private Counter accepted;
+    private Counter rejected;
+    private Timer waitTimer;
+    private Timer succeededTimer;
+    private Timer failedTimer;
+
+    @PostConstruct
+    public void init() throws IOException {
+        directory = Paths.get(properties.getDirectory()).toAbsolutePath();
+        Files.createDirectories(directory);
+        // 任务结果包含私钥，POSIX 文件系统上只允许属主读写
+        fileAttributes = FileSystems.getDefault().supportedFileAttributeViews().contains("posix")
+                ? new FileAttribute<?>[]{PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))}
+                : new FileAttribute<?>[0];
+
+        List<CertificateJob> pending = recover();
+        queue = new LinkedBlockingQueue<>(Math.max(properties.getCapacity(), pending.size()));
+        queue.addAll(pending);
+
+        accepted = Counter.builder("proxy.jobs.submitted")
+                .description("Asynchronous issuance jobs accepted or rejected because the queue was full")
+                .tag("result", "accepted")
+                .register(meterRegistry);
+        rejected = Counter.builder("proxy.jobs.submitted")
+                .description("Asynchronous issuance jobs accepted or rejected because the queue was full")
+                .tag("result", "rejected")
+                .register(meterRegistry);
+        Gauge.builder("proxy.jobs.queue.depth", queue, BlockingQueue::size)
+                .description("Issuance jobs waiting for a worker")
+                .register(meterRegistry);
+        Gauge.builder("proxy.jobs.running", running, AtomicInteger::get)
+                .description("Issuance jobs currently being processed")
+                .register(meterRegistry);
+        waitTimer = Timer.builder("proxy.jobs.wait")
+                .description("Time from submission until a worker picks the job up")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        succeededTimer = Timer.builder("proxy.jobs.duration")
+                .description("Time a worker spent processing an issuance job")
+                .tag("result", "succeeded")
+                .register(meterRegistry);
+        failedTimer = Timer.builder("proxy.jobs.duration")
+                .description("Time a worker spent processing an issuance job")
+                .tag("result", "failed")
+                .register(meterRegistry);
+
+        for (int i = 0; i < Math.max(1, properties.getWorkers()); i++) {
+            Thread worker = new Thread(this::workLoop, "issuance-job-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+        log.info("Issuance job queue started with {} worker(s) in {}, {} job(s) recovered, {} pending",
+                workers.size(), directory, jobs.size(), pending.size());
+    }
+
+    @PreDestroy
+    public void close() {
+        // 正在执行的任务保持 RUNNING 状态落盘，下次启动时重新执行
+        stopped = true;
+        workers.forEach(Thread::interrupt);
+    }
+
+    /**
+     * 提交任务，队列已满时返回 null
+     */
+    public CertificateJob submit(CertificateRequest request) throws IOException {
+        CertificateJob job = new CertificateJob();
+        job.setId(UUID.randomUUID().toString());
+        job.setState(CertificateJob.State.QUEUED);
+        job.setRequest(request);
+        job.setSubmittedAt(Instant.now());
+        if (queue.remainingCapacity() == 0) {
+            rejected.increment();
+            return null;
+        }
+        // 先落盘再入队，确认返回给客户端的任务在重启后一定能恢复
+        persist(job);
+        jobs.put(job.getId(), job);
+        if (!queue.offer(job)) {
+            jobs.remove(job.getId());
+            Files.deleteIfExists(file(job.getId()));
+            rejected.increment();
+            return null;
+        }
+        accepted.increment();
+        return get(job.getId());
+    }
+
+    /**
+     * 任务当前状态的副本，工作线程之后的修改不会影响返回值
+     */
+    public CertificateJob get(String id) {
+        CertificateJob job = jobs.get(id);
+        if (job == null) {
+            return null;
+        }
+        synchronized (job) {
+            return objectMapper.convertValue(job, CertificateJob.class);
+        }
+    }
+
+    public Duration getRetryAfter() {
+        return properties.getRetryAfter();
+    }
+
+    private void workLoop() {
+        while (!stopped) {
+            CertificateJob job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            running.incrementAndGet();
+            try {
+                process(job);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+    }
+
+    private void process(CertificateJob job) {
+        Instant started = Instant.now();
+        waitTimer.record(Duration.between(job.getSubmittedAt(), started));
+        synchronized (job) {
+            job.setState(CertificateJob.State.RUNNING);
+            job.setStartedAt(started);
+            job.setAttempts(job.getAttempts() + 1);
+            persistQuietly(job);
+        }
+
+        long start = System.nanoTime();
+        CertificateResponse response = certificateService.generateCertificate(job.getRequest());
+        boolean success = "success".equals(response.getStatus());
+        (success ? succeededTimer : failedTimer).record(Duration.ofNanos(System.nanoTime() - start));
+        if (stopped && !success) {
+            // 关闭过程中被中断导致的失败不落盘，保留 RUNNING 以便重启后重新执行
+            return;
+        }
+        synchronized (job) {
+            job.setResult(response);
+            job.setMessage(response.getMessage());
+            job.setFinishedAt(Instant.now());
+            job.setState(success ? CertificateJob.State.SUCCEEDED : CertificateJob.State.FAILED);
+            persistQuietly(job);
+        }
+    }
+
+    /**
+     * 清理超过保留期的已完成任务
+     */
+    @Scheduled(fixedDelayString = "${acme.jobs.cleanup-interval-ms:60000}")
+    public void purgeExpired() {
+        Instant cutoff = Instant.now().minus(properties.getRetention());
+        jobs.values().removeIf(job -> {
+            if (!job.isFinished() || job.getFinishedAt().isAfter(cutoff)) {
+                return false;
+            }
+            try {
+                Files.deleteIfExists(file(job.getId()));
+            } catch (IOException e) {
+                log.warn("Failed to delete expired job file {}: {}", job.getId(), e.getMessage());
+            }
+            return true;
+        });
+    }
+
+    private List<CertificateJob> recover() throws IOException {
+        List<CertificateJob> pending = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (!name.endsWith(SUFFIX)) {
+                    // 写入过程中崩溃留下的临时文件，对应任务的上一版本仍在
+                    if (name.endsWith(SUFFIX + ".tmp")) {
+                        Files.deleteIfExists(file);
+                    }
+                    continue;
+                }
+                CertificateJob job;
+                try {
+                    job = objectMapper.readValue(file.toFile(), CertificateJob.class);
+                } catch (IOException e) {
+                    log.warn("Skipping unreadable job file {}: {}", file, e.getMessage());
+                    continue;
+                }
+                jobs.put(job.getId(), job);
+                if (!job.isFinished()) {
+                    if (job.getState() == CertificateJob.State.RUNNING) {
+                        job.setMessage("Interrupted by restart, queued again");
+                    }
+                    job.setState(CertificateJob.State.QUEUED);
+                    pending.add(job);
+                }
+            }
+        }
+        pending.sort(Comparator.comparing(CertificateJob::getSubmittedAt));
+        return pending;
+    }
+
+    private void persistQuietly(CertificateJob job) {
+        try {
+            persist(job);
+        } catch (IOException e) {
+            log.error("Failed to persist job {} in state {}", job.getId(), job.getState(), e);
+        }
+    }
+
+    /**
+     * 原子替换任务文件：写临时文件并 fsync，再改名覆盖
+     */
+    private void persist(CertificateJob job) throws IOException {
+        Path target = file(job.getId());
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        byte[] bytes = objectMapper.writeValueAsBytes(job);
+        try (FileChannel channel = FileChannel.open(temp, Set.of(StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), fileAttributes)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path file(String id) {
+        return directory.resolve(id + SUFFIX);
+    }
+}
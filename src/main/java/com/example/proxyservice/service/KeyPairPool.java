@@ -0,0 +1,251 @@
+package com.example.proxyservice.service;
+
+import com.example.proxyservice.config.KeyPoolProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 预生成密钥对池：prewarm 中列出的每种 (算法, 长度) 一个队列，后台线程按近期需求把队列补到目标深度
+ *
+ * 请求线程取用时从不等待：队列为空则在当前线程内联生成，同时唤醒后台线程补充。
+ * 只为 prewarm 列出的规格建池，其他规格总是内联生成，请求中的 keySize 不会让池的数量增长。
+ * 每个密钥对只交出一次，不会被两个证书共用。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class KeyPairPool {
+
+    private final KeyPoolProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Pool> pools = new ConcurrentHashMap<>();
+    private final Object refillSignal = new Object();
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+    private long lastRebalanceNanos;
+
+    @PostConstruct
+    public void init() {
+        if (!properties.isEnabled()) {
+            log.info("Key pair pool disabled, keys are generated on the request thread");
+            return;
+        }
+        for (String spec : properties.getPrewarm()) {
+            int separator = spec.lastIndexOf('-');
+            try {
+                createPool(spec.substring(0, separator).trim(), Integer.parseInt(spec.substring(separator + 1).trim()));
+            } catch (Exception e) {
+                log.warn("Ignoring invalid acme.key-pool.prewarm entry '{}': {}", spec, e.getMessage());
+            }
+        }
+        running = true;
+        lastRebalanceNanos = System.nanoTime();
+        for (int i = 0; i < Math.max(1, properties.getWorkers()); i++) {
+            Thread worker = new Thread(this::refillLoop, "key-pool-" + i);
+            worker.setDaemon(true);
+            // 后台预生成让位于请求处理
+            worker.setPriority(Thread.MIN_PRIORITY);
+            worker.start();
+            workers.add(worker);
+        }
+        log.info("Key pair pool started with {} worker(s), prewarming {}", workers.size(), pools.keySet());
+    }
+
+    @PreDestroy
+    public void close() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+    }
+
+    /**
+     * 取一个密钥对；池中没有现成的密钥或该规格不在 prewarm 中时内联生成
+     *
+     * @param algorithm KeyPairGenerator 算法名，例如 RSA、EC
+     * @param keySize   密钥长度，小于等于 0 时使用算法默认值
+     */
+    public KeyPair take(String algorithm, int keySize) throws NoSuchAlgorithmException {
+        if (!running) {
+            return generate(algorithm, keySize);
+        }
+        Pool pool = pools.get(key(algorithm, keySize));
+        if (pool == null || pool.broken) {
+            return generate(algorithm, keySize);
+        }
+        pool.demand.increment();
+        KeyPair keyPair = pool.queue.poll();
+        if (keyPair != null) {
+            pool.hits.increment();
+            if (pool.queue.size() < pool.target) {
+                wakeWorkers();
+            }
+            return keyPair;
+        }
+        pool.misses.increment();
+        wakeWorkers();
+        long start = System.nanoTime();
+        keyPair = generate(algorithm, keySize);
+        pool.inlineGeneration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return keyPair;
+    }
+
+    static KeyPair generate(String algorithm, int keySize) throws NoSuchAlgorithmException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance(algorithm);
+        if (keySize > 0) {
+            generator.initialize(keySize);
+        }
+        return generator.generateKeyPair();
+    }
+
+    private void createPool(String algorithm, int keySize) throws NoSuchAlgorithmException {
+        // 算法名无效时直接抛出，不建池
+        KeyPairGenerator.getInstance(algorithm);
+        String key = key(algorithm, keySize);
+        pools.computeIfAbsent(key, k -> new Pool(k, algorithm, keySize));
+    }
+
+    private static String key(String algorithm, int keySize) {
+        return algorithm.toUpperCase(Locale.ROOT) + "-" + keySize;
+    }
+
+    private void wakeWorkers() {
+        synchronized (refillSignal) {
+            refillSignal.notifyAll();
+        }
+    }
+
+    private void refillLoop() {
+        while (running) {
+            Pool pool = null;
+            try {
+                maybeRebalance();
+                pool = neediest();
+                if (pool == null) {
+                    synchronized (refillSignal) {
+                        refillSignal.wait(properties.getRebalanceInterval().toMillis());
+                    }
+                    continue;
+                }
+                long start = System.nanoTime();
+                KeyPair keyPair = generate(pool.algorithm, pool.keySize);
+                pool.backgroundGeneration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                pool.queue.offer(keyPair);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // 长度不被算法支持等配置错误：停止补充该规格，取用时内联生成并把错误抛给调用方
+                log.warn("Key pool refill for {} failed, no longer pre-generating it: {}",
+                        pool != null ? pool.key : "?", e.getMessage());
+                if (pool != null) {
+                    pool.broken = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * 缺口最大的队列，没有缺口时返回 null
+     */
+    private Pool neediest() {
+        Pool neediest = null;
+        int largestDeficit = 0;
+        for (Pool pool : pools.values()) {
+            int deficit = pool.broken ? 0 : pool.target - pool.queue.size();
+            if (deficit > largestDeficit) {
+                largestDeficit = deficit;
+                neediest = pool;
+            }
+        }
+        return neediest;
+    }
+
+    /**
+     * 按近期取用速率重新计算每个队列的目标深度
+     */
+    private synchronized void maybeRebalance() {
+        long now = System.nanoTime();
+        long elapsed = now - lastRebalanceNanos;
+        if (elapsed < properties.getRebalanceInterval().toNanos()) {
+            return;
+        }
+        lastRebalanceNanos = now;
+        double seconds = elapsed / 1e9;
+        double horizon = properties.getRefillHorizon().toMillis() / 1000.0;
+        for (Pool pool : pools.values()) {
+            double rate = pool.demand.sumThenReset() / seconds;
+            pool.demandRate = properties.getEwmaAlpha() * rate + (1 - properties.getEwmaAlpha()) * pool.demandRate;
+            int wanted = (int) Math.ceil(pool.demandRate * horizon - 0.05);
+            pool.target = Math.max(properties.getMinDepth(), Math.min(properties.getMaxDepth(), wanted));
+        }
+    }
+
+    private final class Pool {
+        final String key;
+        final String algorithm;
+        final int keySize;
+        final BlockingQueue<KeyPair> queue;
+        final LongAdder demand = new LongAdder();
+        final Counter hits;
+        final Counter misses;
+        final Timer backgroundGeneration;
+        final Timer inlineGeneration;
+        volatile int target;
+        volatile boolean broken;
+        double demandRate;
+
+        Pool(String key, String algorithm, int keySize) {
+            this.key = key;
+            this.algorithm = algorithm;
+            this.keySize = keySize;
+            this.queue = new LinkedBlockingQueue<>(Math.max(1, properties.getMaxDepth()));
+            // 启动时先按最小深度补充，之后随需求调整
+            this.target = properties.getMinDepth();
+
+            Gauge.builder("proxy.keypool.depth", queue, BlockingQueue::size)
+                    .description("Pre-generated key pairs ready in the pool")
+                    .tag("key", key)
+                    .register(meterRegistry);
+            Gauge.builder("proxy.keypool.target", this, pool -> pool.target)
+                    .description("Demand-scaled target depth of the key pair pool")
+                    .tag("key", key)
+                    .register(meterRegistry);
+            hits = Counter.builder("proxy.keypool.takes")
+                    .description("Key pairs taken from the pool (hit) or generated inline because it was empty (miss)")
+                    .tags("key", key, "result", "hit")
+                    .register(meterRegistry);
+            misses = Counter.builder("proxy.keypool.takes")
+                    .description("Key pairs taken from the pool (hit) or generated inline because it was empty (miss)")
+                    .tags("key", key, "result", "miss")
+                    .register(meterRegistry);
+            backgroundGeneration = Timer.builder("proxy.keypool.generation")
+                    .description("Key pair generation time, in the background workers or inline on a pool miss")
+                    .tags("key", key, "source", "background")
+                    .register(meterRegistry);
+            inlineGeneration = Timer.builder("proxy.keypool.generation")
+                    .description("Key pair generation time, in the background workers or inline on a pool miss")
+                    .tags("key", key, "source", "inline")
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.example.proxyservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.classic.methods.HttpHead;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
+import org.apache.hc.core5.http.Header;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按 provisioner 预取 step-ca Replay-Nonce 的本地池
+ *
+ * new-nonce 请求直接从池中应答；池深度低于 low-water 时在后台通过 HEAD new-nonce 补满。
+ * 预取的 nonce 超过 max-age 后丢弃，避免把 step-ca 已经过期的 nonce 发给客户端。
+ * 只为 step-ca 成功应答过 new-nonce 的 provisioner 建池，补货连续被 step-ca 拒绝（4xx）的池会被删除。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NoncePool {
+
+    private static final String REPLAY_NONCE = "Replay-Nonce";
+
+    private final UpstreamRegistry upstreamRegistry;
+    private final TaskScheduler taskScheduler;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${proxy.nonce-pool.enabled:true}")
+    private boolean enabled;
+
+    @Value("${proxy.nonce-pool.capacity:64}")
+    private int capacity;
+
+    @Value("${proxy.nonce-pool.low-water-mark:16}")
+    private int lowWaterMark;
+
+    @Value("${proxy.nonce-pool.max-age-seconds:300}")
+    private long maxAgeSeconds;
+
+    @Value("${proxy.nonce-pool.max-provisioners:32}")
+    private int maxProvisioners;
+
+    /**
+     * 补货连续被拒绝（4xx）达到该次数后删除池，provisioner 被删除或改名后不再反复预取
+     */
+    @Value("${proxy.nonce-pool.max-refill-failures:3}")
+    private int maxRefillFailures;
+
+    private final Map<String, ProvisionerPool> pools = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private Counter fetched;
+    private Counter harvested;
+
+    @PostConstruct
+    public void init() {
+        FunctionCounter.builder("proxy.nonce.requests", hits, AtomicLong::get)
+                .description("new-nonce requests answered by the local pool or forwarded")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("proxy.nonce.requests", misses, AtomicLong::get)
+                .description("new-nonce requests answered by the local pool or forwarded")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("proxy.nonce.hit-ratio", this, NoncePool::hitRatio)
+                .description("Share of new-nonce requests answered locally")
+                .register(meterRegistry);
+        fetched = Counter.builder("proxy.nonce.fetched")
+                .description("Nonces prefetched from step-ca with HEAD new-nonce")
+                .register(meterRegistry);
+        harvested = Counter.builder("proxy.nonce.harvested")
+                .description("Nonces taken from upstream responses that were not passed to a client")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 从池中应答 new-nonce，池为空时返回 null 由调用方转发到上游
+     */
+    public ResponseEntity<byte[]> serve(HttpServletRequest request) {
+        if (!enabled) {
+            return null;
+        }
+        String provisioner = AcmeRoute.provisioner(request.getRequestURI());
+        if (provisioner == null) {
+            return null;
+        }
+        ProvisionerPool pool = pools.get(provisioner);
+        if (pool == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        String nonce = pool.take(Instant.now().minusSeconds(maxAgeSeconds));
+        if (pool.depth() < lowWaterMark) {
+            refillAsync(pool);
+        }
+        if (nonce == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+
+        // RFC 8555 7.2：HEAD 返回 200，GET 返回 204
+        HttpStatus status = "HEAD".equalsIgnoreCase(request.getMethod()) ? HttpStatus.OK : HttpStatus.NO_CONTENT;
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(status)
+                .header(REPLAY_NONCE, nonce)
+                .header(HttpHeaders.CACHE_CONTROL, "no-store");
+        if (pool.link != null) {
+            builder.header(HttpHeaders.LINK, pool.link);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 转发到上游的 new-nonce 成功返回 nonce 时，为该 provisioner 建池并开始预取；
+     * 不存在的 provisioner 不会得到成功应答，任意路径不会占用池
+     */
+    public void observe(String requestUri, int status, Header nonceHeader) {
+        if (!enabled || status >= 400 || nonceHeader == null
+                || AcmeRoute.classify(requestUri) != AcmeRoute.NEW_NONCE) {
+            return;
+        }
+        String provisioner = AcmeRoute.provisioner(requestUri);
+        if (provisioner == null || pools.containsKey(provisioner)) {
+            return;
+        }
+        ProvisionerPool pool = createPool(provisioner);
+        if (pool != null) {
+            log.info("Nonce pool created for provisioner {}", provisioner);
+            refillAsync(pool);
+        }
+    }
+
+    /**
+     * 回收不会转发给客户端的上游响应中的 nonce，只放入已有的池
+     */
+    public void harvest(String provisioner, Header nonceHeader) {
+        if (!enabled || provisioner == null || nonceHeader == null) {
+            return;
+        }
+        ProvisionerPool pool = pools.get(provisioner);
+        if (pool != null && pool.offer(nonceHeader.getValue(), capacity)) {
+            harvested.increment();
+        }
+    }
+
+    /**
+     * 定期清理过期 nonce，并为低于 low-water 的池补货
+     */
+    @Scheduled(fixedDelayString = "${proxy.nonce-pool.maintenance-interval-ms:5000}")
+    public void maintain() {
+        if (!enabled) {
+            return;
+        }
+        Instant oldestAllowed = Instant.now().minusSeconds(maxAgeSeconds);
+        for (ProvisionerPool pool : pools.values()) {
+            pool.purgeOlderThan(oldestAllowed);
+            if (pool.depth() < lowWaterMark) {
+                refillAsync(pool);
+            }
+        }
+    }
+
+    /**
+     * 获取或创建 provisioner 对应的池，超过 max-provisioners 时返回 null
+     */
+    private ProvisionerPool createPool(String provisioner) {
+        ProvisionerPool existing = pools.get(provisioner);
+        if (existing != null || pools.size() >= maxProvisioners) {
+            return existing;
+        }
+        return pools.computeIfAbsent(provisioner, name -> {
+            ProvisionerPool pool = new ProvisionerPool(name);
+            pool.depthGauge = Gauge.builder("proxy.nonce.pool.depth", pool, ProvisionerPool::depth)
+                    .description("Prefetched nonces available per provisioner")
+                    .tag("provisioner", name)
+                    .register(meterRegistry);
+            return pool;
+        });
+    }
+
+    /**
+     * 记录一次补货被拒绝，连续达到 max-refill-failures 时删除池
+     */
+    private void refillFailed(ProvisionerPool pool) {
+        if (pool.refillFailures.incrementAndGet() < maxRefillFailures) {
+            return;
+        }
+        if (pools.remove(pool.provisioner, pool)) {
+            meterRegistry.remove(pool.depthGauge);
+            log.warn("Dropping nonce pool for provisioner {} after {} failed refills", pool.provisioner,
+                    pool.refillFailures.get());
+        }
+    }
+
+    private void refillAsync(ProvisionerPool pool) {
+        if (pool.refilling.compareAndSet(false, true)) {
+            taskScheduler.schedule(() -> refill(pool), Instant.now());
+        }
+    }
+
+    private void refill(ProvisionerPool pool) {
+        String path = "/acme/" + pool.provisioner + "/new-nonce";
+        try {
+            while (pool.depth() < capacity) {
+                // step-ca 副本共享 nonce 存储，每次预取按负载均衡策略选择副本
+                Upstream upstream = upstreamRegistry.select();
+                if (upstream == null) {
+                    log.debug("No step-ca upstream available, skipping nonce prefetch for {}", pool.provisioner);
+                    return;
+                }
+                HttpHead head = new HttpHead(upstream.getUrl() + path);
+                long startNanos = upstream.start();
+                int status = 0;
+                try (CloseableHttpResponse response = upstream.getHttpClient().execute(head)) {
+                    status = response.getCode();
+                    Header nonceHeader = response.getFirstHeader(REPLAY_NONCE);
+                    if (response.getCode() >= 400 || nonceHeader == null) {
+                        log.warn("Nonce prefetch for provisioner {} returned status {}", pool.provisioner, response.getCode());
+                        if (response.getCode() < 500) {
+                            // 4xx 说明 provisioner 不存在或已删除；5xx 与连接失败是上游故障，不计入
+                            refillFailed(pool);
+                        }
+                        return;
+                    }
+                    pool.refillFailures.set(0);
+                    Header linkHeader = response.getFirstHeader(HttpHeaders.LINK);
+                    if (linkHeader != null) {
+                        pool.link = linkHeader.getValue();
+                    }
+                    if (pool.offer(nonceHeader.getValue(), capacity)) {
+                        fetched.increment();
+                    }
+                } finally {
+                    upstream.complete(startNanos, status == 0 || status >= 500);
+                }
+            }
+            log.debug("Nonce pool for provisioner {} refilled to {}", pool.provisioner, pool.depth());
+        } catch (Exception e) {
+            log.warn("Nonce prefetch for provisioner {} failed: {}", pool.provisioner, e.getMessage());
+        } finally {
+            pool.refilling.set(false);
+        }
+    }
+
+    private double hitRatio() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    private static final class ProvisionerPool {
+        private final String provisioner;
+        private final ConcurrentLinkedQueue<PooledNonce> nonces = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean refilling = new AtomicBoolean();
+        private final AtomicInteger refillFailures = new AtomicInteger();
+        private volatile String link;
+        private Gauge depthGauge;
+
+        private ProvisionerPool(String provisioner) {
+            this.provisioner = provisioner;
+        }
+
+        private String take(Instant oldestAllowed) {
+            PooledNonce nonce;
+            while ((nonce = nonces.poll()) != null) {
+                size.decrementAndGet();
+                if (nonce.fetchedAt.isAfter(oldestAllowed)) {
+                    return nonce.value;
+                }
+            }
+            return null;
+        }
+
+        private boolean offer(String value, int capacity) {
+            if (size.incrementAndGet() > capacity) {
+                size.decrementAndGet();
+                return false;
+            }
+            nonces.offer(new PooledNonce(value, Instant.now()));
+            return true;
+        }
+
+        private void purgeOlderThan(Instant oldestAllowed) {
+            PooledNonce head;
+            // 按入队顺序排列，队头最旧
+            while ((head = nonces.peek()) != null && !head.fetchedAt.isAfter(oldestAllowed)) {
+                if (nonces.remove(head)) {
+                    size.decrementAndGet();
+                }
+            }
+        }
+
+        private int depth() {
+            return size.get();
+        }
+    }
+
+    private static final class PooledNonce {
+        private final String value;
+        private final Instant fetchedAt;
+
+        private PooledNonce(String value, Instant fetchedAt) {
+            this.value = value;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.proxyservice.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.apache.hc.core5.http.Header;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单/授权轮询削峰
+ *
+ * cert-manager 在 order、authz 处于 pending/processing 时用 POST-as-GET 轮询，step-ca 通常不返回 Retry-After。
+ * 代理为这类响应注入 Retry-After（按同类资源近期从 pending 到完成所需时间的 EWMA 估算），由客户端自行放慢轮询。
+ * 每次轮询仍转发给 step-ca：代理不校验 JWS 签名与 nonce，用本地快照应答会绕过 RFC 8555 的身份验证与重放保护。
+ */
+@Component
+@RequiredArgsConstructor
+public class PollDamper {
+
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${proxy.poll-damping.enabled:true}")
+    private boolean enabled;
+
+    @Value("${proxy.poll-damping.min-retry-after-ms:1000}")
+    private long minRetryAfterMs;
+
+    @Value("${proxy.poll-damping.max-retry-after-ms:10000}")
+    private long maxRetryAfterMs;
+
+    /**
+     * 尚无完成样本时假定的 pending 持续时间
+     */
+    @Value("${proxy.poll-damping.initial-estimate-ms:5000}")
+    private long initialEstimateMs;
+
+    @Value("${proxy.poll-damping.ewma-alpha:0.2}")
+    private double ewmaAlpha;
+
+    @Value("${proxy.poll-damping.max-tracked:10000}")
+    private int maxTracked;
+
+    @Value("${proxy.poll-damping.stale-after-seconds:600}")
+    private long staleAfterSeconds;
+
+    private final Map<AcmeRoute, Progress> progress = new EnumMap<>(AcmeRoute.class);
+    private final ConcurrentHashMap<String, PollState> states = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        for (AcmeRoute route : new AcmeRoute[]{AcmeRoute.ORDER, AcmeRoute.AUTHZ}) {
+            String tag = route.name().toLowerCase();
+            Progress p = new Progress(TimeUnit.MILLISECONDS.toNanos(initialEstimateMs));
+            p.forwarded = Counter.builder("proxy.poll.requests")
+                    .description("Order/authorization polls forwarded to step-ca")
+                    .tag("route", tag)
+                    .register(meterRegistry);
+            Gauge.builder("proxy.poll.progress.estimate", p, x -> x.estimateNanos / 1_000_000.0)
+                    .description("EWMA of how long orders/authorizations stay pending")
+                    .tag("route", tag)
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+            progress.put(route, p);
+        }
+        Gauge.builder("proxy.poll.tracked", states, ConcurrentHashMap::size)
+                .description("Pending orders/authorizations currently tracked for poll damping")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 记录一次转发到上游的轮询结果，返回需要注入的 Retry-After；不是轮询或上游已给出 Retry-After 时返回 null。
+     * 参数不含 servlet 请求，异步引擎可以在 I/O 线程上调用
+     */
+    public Duration observe(String method, String uri, byte[] body, int status, Header[] headers, byte[] responseBody) {
+        if (!enabled || !"POST".equalsIgnoreCase(method)) {
+            return null;
+        }
+        Progress p = progress.get(AcmeRoute.classify(uri));
+        if (p == null || !AcmeAccountKey.isPostAsGet(body)) {
+            return null;
+        }
+        p.forwarded.increment();
+        long now = System.nanoTime();
+
+        String resourceStatus = status == HttpStatus.OK.value() ? resourceStatus(responseBody) : null;
+        if (resourceStatus == null || !isPolling(uri, resourceStatus)) {
+            PollState finished = states.remove(uri);
+            if (finished != null && resourceStatus != null) {
+                p.record(now - finished.firstPendingAt, ewmaAlpha);
+            }
+            return null;
+        }
+
+        PollState state = states.get(uri);
+        if (state == null && states.size() < maxTracked) {
+            state = states.computeIfAbsent(uri, k -> new PollState(now));
+        }
+        if (retryAfterHeader(headers) != null) {
+            return null;
+        }
+        long age = state != null ? now - state.firstPendingAt : 0;
+        return p.retryAfter(age, TimeUnit.MILLISECONDS.toNanos(minRetryAfterMs),
+                TimeUnit.MILLISECONDS.toNanos(maxRetryAfterMs));
+    }
+
+    /**
+     * 清除长时间没有再被轮询的资源（客户端放弃或订单过期）
+     */
+    @Scheduled(fixedDelayString = "${proxy.poll-damping.eviction-interval-ms:60000}")
+    public void evictStale() {
+        long staleBefore = System.nanoTime() - TimeUnit.SECONDS.toNanos(staleAfterSeconds);
+        states.values().removeIf(state -> state.firstPendingAt - staleBefore < 0);
+    }
+
+    /**
+     * order 的 pending/processing、authz 的 pending 需要客户端继续轮询
+     */
+    private static boolean isPolling(String uri, String resourceStatus) {
+        if ("pending".equals(resourceStatus)) {
+            return true;
+        }
+        return "processing".equals(resourceStatus) && AcmeRoute.classify(uri) == AcmeRoute.ORDER;
+    }
+
+    private String resourceStatus(byte[] responseBody) {
+        if (responseBody == null || responseBody.length == 0) {
+            return null;
+        }
+        try {
+            JsonNode status = objectMapper.readTree(responseBody).get("status");
+            return status != null && status.isTextual() ? status.asText() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static Duration retryAfterHeader(Header[] headers) {
+        for (Header header : headers) {
+            if (HttpHeaders.RETRY_AFTER.equalsIgnoreCase(header.getName())) {
+                try {
+                    return Duration.ofSeconds(Long.parseLong(header.getValue().trim()));
+                } catch (NumberFormatException e) {
+                    // HTTP-date 形式不做解析，按上游已设置处理，不再注入
+                    return Duration.ZERO;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static long toSeconds(long nanos) {
+        return Math.max(1, (nanos + 999_999_999L) / 1_000_000_000L);
+    }
+
+    /**
+     * 一类资源从 pending 到完成所需时间的 EWMA
+     */
+    private static final class Progress {
+        private volatile long estimateNanos;
+        private Counter forwarded;
+
+        private Progress(long initialNanos) {
+            this.estimateNanos = initialNanos;
+        }
+
+        private void record(long elapsedNanos, double alpha) {
+            long current = estimateNanos;
+            estimateNanos = current + (long) (alpha * (elapsedNanos - current));
+        }
+
+        /**
+         * 预计剩余时间；已超过预估时按预估的 1/4 退避，结果取整到秒并限制在 [min, max]
+         */
+        private Duration retryAfter(long ageNanos, long minNanos, long maxNanos) {
+            long estimate = estimateNanos;
+            long wait = Math.max(estimate - ageNanos, estimate / 4);
+            wait = Math.max(minNanos, Math.min(maxNanos, wait));
+            return Duration.ofSeconds(toSeconds(wait));
+        }
+    }
+
+    private static final class PollState {
+        private final long firstPendingAt;
+
+        private PollState(long firstPendingAt) {
+            this.firstPendingAt = firstPendingAt;
+        }
+    }
+}
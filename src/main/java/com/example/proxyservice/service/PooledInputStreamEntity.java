@@ -0,0 +1,55 @@
+package com.example.proxyservice.service;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 直接读取 servlet 输入流的请求实体，写出时借用 {@link StreamBufferPool} 的缓冲区
+ */
+class PooledInputStreamEntity extends AbstractHttpEntity {
+
+    private final InputStream content;
+    private final long length;
+    private final StreamBufferPool bufferPool;
+
+    PooledInputStreamEntity(InputStream content, long length, ContentType contentType, StreamBufferPool bufferPool) {
+        super(contentType, null);
+        this.content = content;
+        this.length = length;
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return false;
+    }
+
+    @Override
+    public long getContentLength() {
+        return length;
+    }
+
+    @Override
+    public InputStream getContent() {
+        return content;
+    }
+
+    @Override
+    public void writeTo(OutputStream outStream) throws IOException {
+        bufferPool.copyUpstream(content, outStream, length);
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        content.close();
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.proxyservice.service;
+
+import com.example.proxyservice.config.ProxyConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 转发引擎共用的指标，blocking 与 async 两种引擎输出同名指标，仅 engine 标签不同
+ */
+@Component
+@RequiredArgsConstructor
+public class ProxyMetrics {
+
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+    private final MeterRegistry meterRegistry;
+    private final ProxyConfig proxyConfig;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger threadsHeld = new AtomicInteger();
+    /**
+     * 按状态码缓存 Timer，避免每个请求都构建并在注册表中查找一次
+     */
+    private final Map<Integer, Timer> timers = new ConcurrentHashMap<>();
+    private String engine;
+
+    @PostConstruct
+    public void init() {
+        engine = proxyConfig.getEngine();
+        Gauge.builder("proxy.forward.inflight", inFlight, AtomicInteger::get)
+                .description("Forwarded requests waiting on step-ca")
+                .tag("engine", engine)
+                .register(meterRegistry);
+        Gauge.builder("proxy.forward.inflight.per-core", inFlight, value -> (double) value.get() / CORES)
+                .description("Forwarded requests waiting on step-ca per CPU core")
+                .tag("engine", engine)
+                .register(meterRegistry);
+        Gauge.builder("proxy.forward.threads.held", threadsHeld, AtomicInteger::get)
+                .description("Servlet worker threads blocked on an upstream call")
+                .tag("engine", engine)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 标记一次上游调用开始，holdsThread 表示调用期间是否占用 servlet 工作线程
+     */
+    public long requestStarted(boolean holdsThread) {
+        inFlight.incrementAndGet();
+        if (holdsThread) {
+            threadsHeld.incrementAndGet();
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * 标记一次上游调用结束，status 为 0 表示没有拿到上游响应
+     */
+    public void requestCompleted(long startNanos, boolean holdsThread, int status) {
+        inFlight.decrementAndGet();
+        if (holdsThread) {
+            threadsHeld.decrementAndGet();
+        }
+        timers.computeIfAbsent(status, this::timer).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(int status) {
+        return Timer.builder("proxy.forward.requests")
+                .description("Upstream round trips by forwarding engine")
+                .tag("engine", engine)
+                .tag("status", status > 0 ? String.valueOf(status) : "IO_ERROR")
+                .register(meterRegistry);
+    }
+}
@@ -4,150 +4,358 @@ import com.example.proxyservice.config.ProxyConfig;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.hc.client5.http.classic.methods.*;
-import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
 import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
 import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
-import org.apache.hc.core5.http.io.entity.EntityUtils;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.URI;
-import java.util.Enumeration;
+import java.time.Duration;
 
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class ProxyService {
 
-    private final CloseableHttpClient httpClient;
+    private final UpstreamRegistry upstreamRegistry;
     private final ProxyConfig proxyConfig;
+    private final StreamBufferPool bufferPool;
+    private final ProxyMetrics proxyMetrics;
+    private final ResponseCache responseCache;
+    private final NoncePool noncePool;
+    private final RequestCoalescer requestCoalescer;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final RateLimiter rateLimiter;
+    private final RequestHedger requestHedger;
+    private final PollDamper pollDamper;
+    private final RequestDeadlines requestDeadlines;
+    private final HeaderPipeline headerPipeline;
+    private final TrafficRecorder trafficRecorder;
+    private final UpstreamTimings upstreamTimings;
+
+    public boolean isStreamingEnabled() {
+        return proxyConfig.isStreamingEnabled();
+    }
 
     public ResponseEntity<byte[]> forwardRequest(HttpServletRequest request, byte[] body) throws IOException {
+        TrafficRecorder.Capture capture = trafficRecorder.begin(request, body);
+        FlightEvents.Forward event = new FlightEvents.Forward();
+        event.begin();
+        ResponseEntity<byte[]> response = null;
+        try {
+            response = handle(request, body);
+            return response;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.route = AcmeRoute.classify(request.getRequestURI()).name();
+                event.method = request.getMethod();
+                event.status = response != null ? response.getStatusCode().value() : 0;
+                event.requestBytes = body != null ? body.length : 0;
+                event.responseBytes = response != null && response.getBody() != null ? response.getBody().length : 0;
+                event.commit();
+            }
+            trafficRecorder.complete(capture, response);
+            upstreamTimings.markWriteStart(request);
+        }
+    }
+
+    private ResponseEntity<byte[]> handle(HttpServletRequest request, byte[] body) throws IOException {
+        ResponseEntity<byte[]> throttled = rateLimiter.check(request, body);
+        if (throttled != null) {
+            return throttled;
+        }
+        // 客户端声明的剩余时间已不足时不再处理
+        RequestDeadlines.Deadline deadline = requestDeadlines.start(request);
+        if (requestDeadlines.isExhausted(deadline)) {
+            return requestDeadlines.exceeded(request, deadline);
+        }
+        ResponseEntity<byte[]> local = answerLocally(request);
+        if (local != null) {
+            return local;
+        }
+        // 相同的并发 GET/HEAD 共享一次上游调用
+        return requestCoalescer.execute(request, () -> forwardUpstream(request, body, deadline));
+    }
+
+    /**
+     * 尝试在本地应答（nonce 池、响应缓存），返回 null 表示需要转发到 step-ca
+     */
+    ResponseEntity<byte[]> answerLocally(HttpServletRequest request) {
         String method = request.getMethod();
         String requestUri = request.getRequestURI();
-        String queryString = request.getQueryString();
-        
-        // 构建目标URL
-        String targetUrl = proxyConfig.getStepCaUrl() + requestUri;
-        if (queryString != null) {
-            targetUrl += "?" + queryString;
+
+        if (AcmeRoute.classify(requestUri) == AcmeRoute.NEW_NONCE) {
+            ResponseEntity<byte[]> nonceResponse = noncePool.serve(request);
+            if (nonceResponse != null) {
+                log.info("Serving {} {} from nonce pool", method, requestUri);
+                return nonceResponse;
+            }
         }
 
-        log.info("Forwarding {} request to: {}", method, targetUrl);
+        // 只读资源优先走本地缓存，命中时不占用上游连接
+        ResponseEntity<byte[]> cached = responseCache.lookup(request);
+        if (cached != null) {
+            log.info("Serving {} {} from response cache", method, requestUri);
+            return cached;
+        }
+        return null;
+    }
+
+    private ResponseEntity<byte[]> forwardUpstream(HttpServletRequest request, byte[] body,
+                                                   RequestDeadlines.Deadline deadline) throws IOException {
+        String method = request.getMethod();
+        String pathAndQuery = buildTargetUrl("", request);
 
         // 获取 Content-Type
-        String contentType = request.getContentType();
-        ContentType httpContentType = parseContentType(contentType);
+        ContentType httpContentType = headerPipeline.parseContentType(request.getContentType());
 
-        // 创建HTTP请求
-        HttpUriRequestBase httpRequest = createHttpRequest(method, targetUrl, body, httpContentType);
-        
-        // 复制请求头
-        copyRequestHeaders(request, httpRequest);
+        // 选择副本之前创建请求并复制请求头：请求行无效等错误直接抛出，不占用熔断器名额
+        HttpUriRequestBase httpRequest = createHttpRequest(method, pathAndQuery, body, httpContentType);
+        headerPipeline.copyRequestHeaders(request, httpRequest);
+        applyDeadline(deadline, httpRequest);
 
-        try (CloseableHttpResponse response = httpClient.execute(httpRequest)) {
-            // 获取响应体
-            byte[] responseBody = EntityUtils.toByteArray(response.getEntity());
+        // 按 ACME 账户选择 step-ca 副本并设置目标URL，所有副本都熔断时快速失败
+        Upstream upstream = upstreamRegistry.select(AcmeAccountKey.extract(body));
+        if (upstream == null) {
+            return upstreamUnavailable(request);
+        }
+        String targetUrl = upstream.getUrl() + pathAndQuery;
+        httpRequest.setUri(URI.create(targetUrl));
+
+        log.info("Forwarding {} request to: {}", method, targetUrl);
+
+        // 超过该类操作的并发限制时直接拒绝，不在上游排队
+        ConcurrencyLimiter.RouteLimit permit = concurrencyLimiter.tryAcquire(request.getRequestURI());
+        if (permit == null) {
+            log.warn("Shedding {} {}: concurrency limit reached", method, request.getRequestURI());
+            upstream.release();
+            return concurrencyLimiter.rejection(request.getRequestURI());
+        }
+
+        long startNanos = proxyMetrics.requestStarted(true);
+        int status = 0;
+        try {
+            // total 到期时取消上游请求
+            requestDeadlines.cancelOnExpiry(deadline, httpRequest);
+            UpstreamResponse response;
+            if (requestHedger.isHedgeable(method)) {
+                // 对冲请求在对冲线程上创建，先在当前线程取出需要的 servlet 请求内容
+                Header[] forwardedHeaders = httpRequest.getHeaders();
+                response = requestHedger.execute(upstream, httpRequest, request.getRequestURI(), other -> {
+                    HttpUriRequestBase hedgeRequest = createHttpRequest(method,
+                            other.getUrl() + pathAndQuery, body, httpContentType);
+                    hedgeRequest.setHeaders(forwardedHeaders);
+                    applyDeadline(deadline, hedgeRequest);
+                    requestDeadlines.cancelOnExpiry(deadline, hedgeRequest);
+                    return hedgeRequest;
+                });
+            } else {
+                response = UpstreamResponse.fetch(upstream, httpRequest);
+            }
+            status = response.getStatus();
+            byte[] responseBody = response.getBody();
             
             // 构建响应头
             HttpHeaders responseHeaders = new HttpHeaders();
-            for (Header header : response.getHeaders()) {
-                String headerName = header.getName();
-                // 跳过一些不应该转发的头
-                if (!shouldSkipHeader(headerName)) {
-                    responseHeaders.add(headerName, header.getValue());
-                }
-            }
+            headerPipeline.copyResponseHeaders(response.getHeaders(), responseHeaders);
 
             log.info("Response status: {}, body size: {} bytes", 
-                    response.getCode(), responseBody.length);
+                    status, responseBody != null ? responseBody.length : 0);
+
+            String etag = responseCache.store(method, request.getRequestURI(), request.getQueryString(), status,
+                    response.getHeaders(), responseBody);
+            if (etag != null && !responseHeaders.containsKey(HttpHeaders.ETAG)) {
+                responseHeaders.setETag(etag);
+            }
+            Duration retryAfter = pollDamper.observe(method, request.getRequestURI(), body, status,
+                    response.getHeaders(), responseBody);
+            noncePool.observe(request.getRequestURI(), status, response.getFirstHeader("Replay-Nonce"));
+            if (retryAfter != null) {
+                responseHeaders.set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter.toSeconds()));
+            }
 
-            return ResponseEntity.status(response.getCode())
+            return ResponseEntity.status(status)
                     .headers(responseHeaders)
                     .body(responseBody);
+        } catch (InterruptedIOException e) {
+            // connect/response 超时或 total 到期后被取消
+            log.warn("Upstream {} {} timed out: {}", method, targetUrl, e.getMessage());
+            status = HttpStatus.GATEWAY_TIMEOUT.value();
+            return requestDeadlines.exceeded(request, deadline);
+        } finally {
+            deadline.close();
+            concurrencyLimiter.release(permit, startNanos, status);
+            proxyMetrics.requestCompleted(startNanos, true, status);
         }
     }
 
     /**
-     * 解析 Content-Type 字符串为 ContentType 对象
+     * 设置按操作与剩余时间计算的超时，并把截止时间传播给 step-ca
      */
-    private ContentType parseContentType(String contentTypeStr) {
-        if (contentTypeStr == null || contentTypeStr.trim().isEmpty()) {
-            return ContentType.APPLICATION_JSON;
-        }
-        
-        // 先清理 Content-Type 字符串，移除通配符
-        String sanitizedContentType = sanitizeContentType(contentTypeStr);
-        if (sanitizedContentType == null) {
-            return ContentType.APPLICATION_JSON;
-        }
-        
-        try {
-            // 使用更安全的方式创建 ContentType
-            return createContentTypeSafely(sanitizedContentType);
-        } catch (Exception e) {
-            log.warn("Failed to parse Content-Type: {}, using default", sanitizedContentType, e);
-            return ContentType.APPLICATION_JSON;
-        }
+    private void applyDeadline(RequestDeadlines.Deadline deadline, HttpUriRequestBase httpRequest) {
+        httpRequest.setConfig(requestDeadlines.requestConfig(deadline));
+        requestDeadlines.propagate(deadline, httpRequest);
+    }
+
+    /**
+     * 所有 step-ca 副本都已熔断时的 503 响应，Retry-After 为最早一个副本进入半开状态的时间
+     */
+    ResponseEntity<byte[]> upstreamUnavailable(HttpServletRequest request) {
+        log.warn("Rejecting {} {}: no step-ca upstream available (circuit open)", request.getMethod(), request.getRequestURI());
+        return AcmeProblems.problem(HttpStatus.SERVICE_UNAVAILABLE, AcmeProblems.SERVER_INTERNAL,
+                "No step-ca upstream is currently available, retry later", upstreamRegistry.retryAfter());
     }
 
     /**
-     * 安全地创建 ContentType 对象
+     * 流式转发：请求体和响应体都通过池化的固定大小缓冲区直接在 servlet 流与上游连接之间拷贝，
+     * 不在堆上整体缓存 body
      */
-    private ContentType createContentTypeSafely(String contentTypeStr) {
-        if (contentTypeStr == null || contentTypeStr.trim().isEmpty()) {
-            return ContentType.APPLICATION_JSON;
+    public void streamRequest(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        TrafficRecorder.Capture capture = trafficRecorder.begin(request, null);
+        try {
+            stream(request, response);
+        } finally {
+            trafficRecorder.complete(capture, response);
         }
-        
-        String trimmed = contentTypeStr.trim();
-        
-        // 使用预定义的 ContentType 常量
-        if ("application/json".equals(trimmed)) {
-            return ContentType.APPLICATION_JSON;
-        } else if ("application/xml".equals(trimmed)) {
-            return ContentType.APPLICATION_XML;
-        } else if ("text/plain".equals(trimmed)) {
-            return ContentType.TEXT_PLAIN;
-        } else if ("text/html".equals(trimmed)) {
-            return ContentType.TEXT_HTML;
-        } else if ("application/octet-stream".equals(trimmed)) {
-            return ContentType.APPLICATION_OCTET_STREAM;
-        } else if ("application/x-www-form-urlencoded".equals(trimmed)) {
-            return ContentType.APPLICATION_FORM_URLENCODED;
-        } else if ("multipart/form-data".equals(trimmed)) {
-            return ContentType.MULTIPART_FORM_DATA;
-        } else if (trimmed.startsWith("application/")) {
-            // 对于其他 application 类型，尝试解析
-            try {
-                return ContentType.parse(trimmed);
-            } catch (Exception e) {
-                log.debug("Failed to parse application Content-Type: {}, using application/json", trimmed);
-                return ContentType.APPLICATION_JSON;
+    }
+
+    private void stream(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        // 请求体未缓冲，只按来源 IP 限流
+        ResponseEntity<byte[]> throttled = rateLimiter.check(request, null);
+        if (throttled != null) {
+            writeResponse(throttled, response);
+            return;
+        }
+        RequestDeadlines.Deadline deadline = requestDeadlines.start(request);
+        if (requestDeadlines.isExhausted(deadline)) {
+            writeResponse(requestDeadlines.exceeded(request, deadline), response);
+            return;
+        }
+        ResponseEntity<byte[]> local = answerLocally(request);
+        if (local != null) {
+            writeResponse(local, response);
+            return;
+        }
+        if (responseCache.isCacheable(request)) {
+            // 可缓存资源走缓冲路径以便填充缓存，缓存未命中时相同的并发请求共享一次上游调用
+            writeResponse(requestCoalescer.execute(request, () -> forwardUpstream(request, null, deadline)), response);
+            return;
+        }
+
+        String method = request.getMethod();
+        String pathAndQuery = buildTargetUrl("", request);
+
+        // 与缓冲路径相同，请求在选择副本之前创建
+        ContentType httpContentType = headerPipeline.parseContentType(request.getContentType());
+        HttpUriRequestBase httpRequest = createHttpRequest(method, pathAndQuery, null, httpContentType);
+        if (hasRequestBody(method, request)) {
+            httpRequest.setEntity(new PooledInputStreamEntity(
+                    request.getInputStream(), request.getContentLengthLong(), httpContentType, bufferPool));
+        }
+
+        headerPipeline.copyRequestHeaders(request, httpRequest);
+        applyDeadline(deadline, httpRequest);
+
+        // 请求体未缓冲，无法读取 JWS 中的账户，不做账户亲和
+        Upstream upstream = upstreamRegistry.select();
+        if (upstream == null) {
+            writeResponse(upstreamUnavailable(request), response);
+            return;
+        }
+        String targetUrl = upstream.getUrl() + pathAndQuery;
+        httpRequest.setUri(URI.create(targetUrl));
+
+        log.info("Streaming {} request to: {}", method, targetUrl);
+
+        ConcurrencyLimiter.RouteLimit permit = concurrencyLimiter.tryAcquire(request.getRequestURI());
+        if (permit == null) {
+            log.warn("Shedding {} {}: concurrency limit reached", method, request.getRequestURI());
+            upstream.release();
+            writeResponse(concurrencyLimiter.rejection(request.getRequestURI()), response);
+            return;
+        }
+
+        requestDeadlines.cancelOnExpiry(deadline, httpRequest);
+        long startNanos = proxyMetrics.requestStarted(true);
+        long upstreamStart = upstream.start();
+        int status = 0;
+        try (CloseableHttpResponse upstreamResponse = upstream.getHttpClient().execute(httpRequest)) {
+            status = upstreamResponse.getCode();
+            response.setStatus(status);
+            headerPipeline.copyResponseHeaders(upstreamResponse.getHeaders(), response);
+            noncePool.observe(request.getRequestURI(), status, upstreamResponse.getFirstHeader("Replay-Nonce"));
+
+            long streamed = 0;
+            HttpEntity entity = upstreamResponse.getEntity();
+            if (entity != null) {
+                if (entity.getContentLength() >= 0) {
+                    response.setContentLengthLong(entity.getContentLength());
+                }
+                try (InputStream upstreamBody = entity.getContent()) {
+                    streamed = bufferPool.copyDownstream(upstreamBody, response.getOutputStream());
+                }
             }
-        } else if (trimmed.startsWith("text/")) {
-            // 对于其他 text 类型，尝试解析
-            try {
-                return ContentType.parse(trimmed);
-            } catch (Exception e) {
-                log.debug("Failed to parse text Content-Type: {}, using text/plain", trimmed);
-                return ContentType.TEXT_PLAIN;
+
+            log.info("Response status: {}, streamed {} bytes, peak buffers in use: {}",
+                    upstreamResponse.getCode(), streamed, bufferPool.getPeakBuffersInUse());
+        } catch (InterruptedIOException e) {
+            log.warn("Upstream {} {} timed out: {}", method, targetUrl, e.getMessage());
+            if (response.isCommitted()) {
+                // 响应头已经发出，只能中断连接
+                throw e;
             }
-        } else {
-            // 对于其他类型，尝试解析，失败则使用默认值
-            try {
-                return ContentType.parse(trimmed);
-            } catch (Exception e) {
-                log.debug("Failed to parse Content-Type: {}, using application/octet-stream", trimmed);
-                return ContentType.APPLICATION_OCTET_STREAM;
+            status = HttpStatus.GATEWAY_TIMEOUT.value();
+            response.reset();
+            writeResponse(requestDeadlines.exceeded(request, deadline), response);
+        } finally {
+            deadline.close();
+            if (httpRequest.isCancelled()) {
+                upstream.abandon();
+            } else {
+                upstream.complete(upstreamStart, status == 0 || status >= 500);
             }
+            concurrencyLimiter.release(permit, startNanos, status);
+            proxyMetrics.requestCompleted(startNanos, true, status);
+        }
+    }
+
+    private void writeResponse(ResponseEntity<byte[]> entity, HttpServletResponse response) throws IOException {
+        response.setStatus(entity.getStatusCode().value());
+        entity.getHeaders().forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+        byte[] body = entity.getBody();
+        if (body != null) {
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
         }
     }
 
+    String buildTargetUrl(String baseUrl, HttpServletRequest request) {
+        String targetUrl = baseUrl + request.getRequestURI();
+        String queryString = request.getQueryString();
+        if (queryString != null) {
+            targetUrl += "?" + queryString;
+        }
+        return targetUrl;
+    }
+
+    private boolean hasRequestBody(String method, HttpServletRequest request) {
+        String upperMethod = method.toUpperCase();
+        boolean bodyAllowed = "POST".equals(upperMethod) || "PUT".equals(upperMethod) || "PATCH".equals(upperMethod);
+        // Content-Length 为 -1 表示 chunked 请求体
+        return bodyAllowed && request.getContentLengthLong() != 0;
+    }
+
     private HttpUriRequestBase createHttpRequest(String method, String url, byte[] body, ContentType contentType) {
         HttpUriRequestBase request;
         
@@ -155,6 +363,9 @@ public class ProxyService {
             case "GET":
                 request = new HttpGet(url);
                 break;
+            case "HEAD":
+                request = new HttpHead(url);
+                break;
             case "POST":
                 request = new HttpPost(url);
                 if (body != null && body.length > 0) {
@@ -182,85 +393,4 @@ public class ProxyService {
         
         return request;
     }
-
-    private void copyRequestHeaders(HttpServletRequest request, HttpUriRequestBase httpRequest) {
-        Enumeration<String> headerNames = request.getHeaderNames();
-        while (headerNames.hasMoreElements()) {
-            String headerName = headerNames.nextElement();
-            String headerValue = request.getHeader(headerName);
-            
-            log.debug("Processing header: {} = {}", headerName, headerValue);
-            
-            // 跳过一些不应该转发的头
-            if (!shouldSkipHeader(headerName)) {
-                // 特殊处理 Content-Type 头，避免通配符子类型
-                if ("content-type".equals(headerName.toLowerCase())) {
-                    String sanitizedContentType = sanitizeContentType(headerValue);
-                    if (sanitizedContentType != null) {
-                        log.debug("Setting sanitized Content-Type: {} -> {}", headerValue, sanitizedContentType);
-                        httpRequest.setHeader(headerName, sanitizedContentType);
-                    } else {
-                        log.debug("Skipping null Content-Type: {}", headerValue);
-                    }
-                } else {
-                    httpRequest.setHeader(headerName, headerValue);
-                }
-            } else {
-                log.debug("Skipping header: {}", headerName);
-            }
-        }
-    }
-
-    /**
-     * 清理 Content-Type 头，移除通配符子类型
-     */
-    private String sanitizeContentType(String contentType) {
-        if (contentType == null || contentType.trim().isEmpty()) {
-            return null;
-        }
-        
-        String trimmedContentType = contentType.trim();
-        
-        // 移除通配符子类型，使用默认的 application/json
-        if (trimmedContentType.contains("*/*") || trimmedContentType.contains("*/")) {
-            log.debug("Replacing wildcard Content-Type '{}' with application/json", trimmedContentType);
-            return "application/json";
-        }
-        
-        // 如果包含通配符，使用具体的类型
-        if (trimmedContentType.contains("*")) {
-            // 根据主类型返回具体的子类型
-            if (trimmedContentType.startsWith("application/")) {
-                log.debug("Replacing wildcard application Content-Type '{}' with application/json", trimmedContentType);
-                return "application/json";
-            } else if (trimmedContentType.startsWith("text/")) {
-                log.debug("Replacing wildcard text Content-Type '{}' with text/plain", trimmedContentType);
-                return "text/plain";
-            } else if (trimmedContentType.startsWith("image/")) {
-                log.debug("Replacing wildcard image Content-Type '{}' with image/png", trimmedContentType);
-                return "image/png";
-            } else {
-                log.debug("Replacing wildcard Content-Type '{}' with application/octet-stream", trimmedContentType);
-                return "application/octet-stream";
-            }
-        }
-        
-        // 检查是否是有效的 Content-Type 格式
-        if (!trimmedContentType.contains("/")) {
-            log.debug("Invalid Content-Type format '{}', using application/json", trimmedContentType);
-            return "application/json";
-        }
-        
-        return trimmedContentType;
-    }
-
-    private boolean shouldSkipHeader(String headerName) {
-        String lowerCaseName = headerName.toLowerCase();
-        return lowerCaseName.equals("host") ||
-               lowerCaseName.equals("connection") ||
-               lowerCaseName.equals("transfer-encoding") ||
-               lowerCaseName.equals("content-length") ||
-               lowerCaseName.startsWith("proxy-");
-    }
 }
-
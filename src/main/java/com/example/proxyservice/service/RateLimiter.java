@@ -0,0 +1,178 @@
+package com.example.proxyservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按 ACME 账户（JWS kid/jwk）和来源 IP 的令牌桶限流
+ *
+ * 每个桶只有一个 AtomicLong（GCRA 的理论到达时间），判断与扣减通过 CAS 完成，不加锁；
+ * 桶存放在 ConcurrentHashMap 中，数量有上限，长时间空闲的桶由定时任务清除。
+ * 超出上限后新出现的账户或 IP 共用一个溢出桶，内存不会随攻击者伪造的 key 增长。
+ *
+ * 按 IP 限流默认关闭：代理通常部署在 ingress/负载均衡之后，所有 cert-manager 客户端的来源地址相同。
+ * 开启时应同时配置 server.forward-headers-strategy=native（Tomcat RemoteIpValve 只信任
+ * server.tomcat.remoteip.internal-proxies 中代理给出的 X-Forwarded-For），使 getRemoteAddr() 为真实客户端地址。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RateLimiter {
+
+    private static final String OVERFLOW_KEY = "";
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${proxy.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${proxy.rate-limit.account.requests-per-second:10}")
+    private double accountRate;
+
+    @Value("${proxy.rate-limit.account.burst:50}")
+    private int accountBurst;
+
+    @Value("${proxy.rate-limit.ip.enabled:false}")
+    private boolean ipEnabled;
+
+    @Value("${proxy.rate-limit.ip.requests-per-second:50}")
+    private double ipRate;
+
+    @Value("${proxy.rate-limit.ip.burst:200}")
+    private int ipBurst;
+
+    @Value("${proxy.rate-limit.max-buckets:100000}")
+    private int maxBuckets;
+
+    @Value("${proxy.rate-limit.idle-timeout-seconds:300}")
+    private long idleTimeoutSeconds;
+
+    private Scope accounts;
+    private Scope addresses;
+
+    @PostConstruct
+    public void init() {
+        accounts = new Scope("account", accountRate, accountBurst);
+        addresses = ipEnabled ? new Scope("ip", ipRate, ipBurst) : null;
+        log.info("Rate limiting {}: {}/s (burst {}) per account, {}",
+                enabled ? "enabled" : "disabled", accountRate, accountBurst,
+                ipEnabled ? ipRate + "/s (burst " + ipBurst + ") per IP" : "per-IP limiting disabled");
+    }
+
+    /**
+     * 检查请求是否超限，超限时返回 429 rateLimited 响应，否则返回 null
+     *
+     * 先检查账户桶，通过后才扣减 IP 桶，被账户限流拒绝的请求不消耗 IP 额度；body 为 null 时（流式转发）只按 IP 限流
+     */
+    public ResponseEntity<byte[]> check(HttpServletRequest request, byte[] body) {
+        if (!enabled) {
+            return null;
+        }
+        long now = System.nanoTime();
+        long waitNanos = 0;
+        if (body != null) {
+            String account = AcmeAccountKey.extract(body);
+            if (account != null) {
+                waitNanos = accounts.acquire(account, now);
+            }
+        }
+        if (waitNanos == 0 && addresses != null) {
+            waitNanos = addresses.acquire(request.getRemoteAddr(), now);
+        }
+        if (waitNanos == 0) {
+            return null;
+        }
+        log.warn("Rate limited {} {} from {}", request.getMethod(), request.getRequestURI(), request.getRemoteAddr());
+        return AcmeProblems.problem(HttpStatus.TOO_MANY_REQUESTS, AcmeProblems.RATE_LIMITED,
+                "Too many requests from this account or address, retry later", Duration.ofNanos(waitNanos));
+    }
+
+    /**
+     * 清除已回满且空闲超过 idle-timeout 的桶
+     */
+    @Scheduled(fixedDelayString = "${proxy.rate-limit.eviction-interval-ms:30000}")
+    public void evictIdle() {
+        long idleBefore = System.nanoTime() - TimeUnit.SECONDS.toNanos(idleTimeoutSeconds);
+        accounts.evictIdle(idleBefore);
+        if (addresses != null) {
+            addresses.evictIdle(idleBefore);
+        }
+    }
+
+    /**
+     * 一类限流对象（账户或 IP）的全部桶
+     */
+    private final class Scope {
+        private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+        private final long emissionIntervalNanos;
+        private final long burstToleranceNanos;
+        private final Counter throttled;
+
+        private Scope(String name, double rate, int burst) {
+            this.emissionIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+            this.burstToleranceNanos = emissionIntervalNanos * Math.max(1, burst);
+            this.throttled = Counter.builder("proxy.ratelimit.throttled")
+                    .description("Requests rejected with 429 rateLimited")
+                    .tag("scope", name)
+                    .register(meterRegistry);
+            Gauge.builder("proxy.ratelimit.buckets", buckets, ConcurrentHashMap::size)
+                    .description("Rate limit buckets currently tracked")
+                    .tag("scope", name)
+                    .register(meterRegistry);
+        }
+
+        /**
+         * GCRA：允许时推进理论到达时间并返回 0，否则返回需要等待的纳秒数
+         */
+        private long acquire(String key, long now) {
+            AtomicLong tat = bucket(key == null ? OVERFLOW_KEY : key, now);
+            while (true) {
+                long current = tat.get();
+                long next = Math.max(current, now) + emissionIntervalNanos;
+                long excess = next - now - burstToleranceNanos;
+                if (excess > 0) {
+                    throttled.increment();
+                    return excess;
+                }
+                if (tat.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        private AtomicLong bucket(String key, long now) {
+            AtomicLong bucket = buckets.get(key);
+            if (bucket != null) {
+                return bucket;
+            }
+            if (buckets.size() >= maxBuckets) {
+                key = OVERFLOW_KEY;
+            }
+            return buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        }
+
+        private void evictIdle(long idleBefore) {
+            int before = buckets.size();
+            buckets.values().removeIf(tat -> tat.get() < idleBefore);
+            int evicted = before - buckets.size();
+            if (evicted > 0) {
+                log.debug("Evicted {} idle rate limit buckets", evicted);
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.proxyservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 相同的并发 GET/HEAD 请求合并为一次上游调用（single-flight）
+ *
+ * 第一个请求作为 leader 访问 step-ca，其余同键请求等待 leader 的结果。
+ * Replay-Nonce 只能使用一次，因此只保留在 leader 的响应中，follower 的副本会去掉该头。
+ * new-nonce 的响应只有 Replay-Nonce 有意义，不参与合并。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RequestCoalescer {
+
+    private static final String REPLAY_NONCE = "Replay-Nonce";
+
+    /**
+     * 会影响响应内容的请求头，值不同的请求不合并
+     */
+    private static final String[] KEY_HEADERS = {
+            HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING, HttpHeaders.ACCEPT_LANGUAGE,
+            HttpHeaders.AUTHORIZATION, HttpHeaders.IF_NONE_MATCH, HttpHeaders.IF_MODIFIED_SINCE, HttpHeaders.RANGE
+    };
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${proxy.coalescing.enabled:true}")
+    private boolean enabled;
+
+    private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private Counter leaders;
+    private Counter followers;
+
+    @PostConstruct
+    public void init() {
+        leaders = Counter.builder("proxy.coalesce.requests")
+                .description("Coalescable requests that called step-ca (leader) or shared an in-flight call (follower)")
+                .tag("role", "leader")
+                .register(meterRegistry);
+        followers = Counter.builder("proxy.coalesce.requests")
+                .description("Coalescable requests that called step-ca (leader) or shared an in-flight call (follower)")
+                .tag("role", "follower")
+                .register(meterRegistry);
+        Gauge.builder("proxy.coalesce.inflight", inFlight, Map::size)
+                .description("Distinct upstream calls currently shared by coalesced requests")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 阻塞方式合并执行：leader 调用 upstreamCall，follower 等待 leader 的结果
+     */
+    public ResponseEntity<byte[]> execute(HttpServletRequest request, UpstreamCall upstreamCall) throws IOException {
+        Flight flight = begin(request);
+        if (flight == null) {
+            return upstreamCall.call();
+        }
+        if (!flight.isLeader()) {
+            try {
+                return flight.result().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for coalesced request");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+            }
+        }
+        try {
+            ResponseEntity<byte[]> response = upstreamCall.call();
+            complete(flight, response);
+            return response;
+        } catch (IOException | RuntimeException e) {
+            fail(flight, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 登记一次请求；不可合并时返回 null。leader 必须随后调用 complete 或 fail
+     */
+    public Flight begin(HttpServletRequest request) {
+        String key = enabled ? keyFor(request) : null;
+        if (key == null) {
+            return null;
+        }
+        Flight leader = new Flight(key, true);
+        Flight existing = inFlight.putIfAbsent(key, leader);
+        if (existing == null) {
+            leaders.increment();
+            return leader;
+        }
+        followers.increment();
+        log.debug("Coalescing {} onto in-flight upstream call", key);
+        return new Flight(key, false, existing.shared);
+    }
+
+    public void complete(Flight flight, ResponseEntity<byte[]> response) {
+        inFlight.remove(flight.key, flight);
+        flight.shared.complete(response);
+    }
+
+    public void fail(Flight flight, Throwable error) {
+        inFlight.remove(flight.key, flight);
+        flight.shared.completeExceptionally(error);
+    }
+
+    private String keyFor(HttpServletRequest request) {
+        String method = request.getMethod();
+        if (!"GET".equalsIgnoreCase(method) && !"HEAD".equalsIgnoreCase(method)) {
+            return null;
+        }
+        // 合并后 follower 拿不到 nonce（nonce 池为空时才会走到这里）
+        if (AcmeRoute.classify(request.getRequestURI()) == AcmeRoute.NEW_NONCE) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(128).append(method).append(' ').append(request.getRequestURI());
+        String queryString = request.getQueryString();
+        if (queryString != null) {
+            key.append('?').append(queryString);
+        }
+        for (String name : KEY_HEADERS) {
+            String value = request.getHeader(name);
+            if (value != null) {
+                key.append('\n').append(name).append(':').append(value);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * follower 使用的响应副本：共享 body，去掉一次性的 Replay-Nonce
+     */
+    private static ResponseEntity<byte[]> forFollower(ResponseEntity<byte[]> response) {
+        if (!response.getHeaders().containsKey(REPLAY_NONCE)) {
+            return response;
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(response.getHeaders());
+        headers.remove(REPLAY_NONCE);
+        return ResponseEntity.status(response.getStatusCode()).headers(headers).body(response.getBody());
+    }
+
+    /**
+     * 上游调用，由 leader 执行
+     */
+    @FunctionalInterface
+    public interface UpstreamCall {
+        ResponseEntity<byte[]> call() throws IOException;
+    }
+
+    /**
+     * 一次合并中的参与者
+     */
+    public static final class Flight {
+        private final String key;
+        private final boolean leader;
+        private final CompletableFuture<ResponseEntity<byte[]>> shared;
+        private final CompletableFuture<ResponseEntity<byte[]>> result;
+
+        private Flight(String key, boolean leader) {
+            this(key, leader, new CompletableFuture<>());
+        }
+
+        private Flight(String key, boolean leader, CompletableFuture<ResponseEntity<byte[]>> shared) {
+            this.key = key;
+            this.leader = leader;
+            this.shared = shared;
+            this.result = leader ? shared : shared.thenApply(RequestCoalescer::forFollower);
+        }
+
+        public boolean isLeader() {
+            return leader;
+        }
+
+        /**
+         * 本参与者应得的响应；follower 的结果不含 Replay-Nonce
+         */
+        public CompletableFuture<ResponseEntity<byte[]>> result() {
+            return result;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.proxyservice.service;
+
+import com.example.proxyservice.config.ProxyConfig;
+import com.example.proxyservice.config.TimeoutProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.core5.concurrent.Cancellable;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 转发请求的超时预算与截止时间传播
+ *
+ * 每类 ACME 操作有独立的 connect/response/total 预算；客户端通过 deadline-header 声明的剩余时间更短时以客户端为准。
+ * connect/response 超时按请求设置到 RequestConfig 上，total 到期后取消上游请求；
+ * 剩余时间已不足时直接返回 504，不再占用上游连接和并发额度。剩余时间通过同一请求头继续传给 step-ca。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RequestDeadlines {
+
+    private final TimeoutProperties properties;
+    private final ProxyConfig proxyConfig;
+    private final TaskScheduler taskScheduler;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<AcmeRoute, TimeoutProperties.Budget> budgets = new EnumMap<>(AcmeRoute.class);
+    private Counter clientExpired;
+    private Counter upstreamExpired;
+
+    @PostConstruct
+    public void init() {
+        for (AcmeRoute route : AcmeRoute.values()) {
+            budgets.put(route, routeConfig(route));
+        }
+        clientExpired = Counter.builder("proxy.deadline.exceeded")
+                .description("Requests answered with 504 because the client or upstream deadline ran out")
+                .tag("stage", "client")
+                .register(meterRegistry);
+        upstreamExpired = Counter.builder("proxy.deadline.exceeded")
+                .description("Requests answered with 504 because the client or upstream deadline ran out")
+                .tag("stage", "upstream")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 按操作预算和客户端截止时间计算本次请求的截止时间
+     */
+    public Deadline start(HttpServletRequest request) {
+        TimeoutProperties.Budget budget = budgets.get(AcmeRoute.classify(request.getRequestURI()));
+        long now = System.nanoTime();
+        long totalNanos = budget.getTotal().toNanos();
+        long clientNanos = clientBudgetNanos(request.getHeader(properties.getDeadlineHeader()));
+        boolean clientBound = clientNanos >= 0 && clientNanos < totalNanos;
+        if (clientBound) {
+            totalNanos = clientNanos;
+        }
+        return new Deadline(now + totalNanos, budget.getConnect().toNanos(), budget.getResponse().toNanos(), clientBound);
+    }
+
+    /**
+     * 剩余时间是否已不足以发起上游调用
+     */
+    public boolean isExhausted(Deadline deadline) {
+        return deadline.remainingNanos() < properties.getMinRemaining().toNanos();
+    }
+
+    /**
+     * 截止时间耗尽时的 504 响应
+     */
+    public ResponseEntity<byte[]> exceeded(HttpServletRequest request, Deadline deadline) {
+        return exceeded(request.getMethod(), request.getRequestURI(), deadline);
+    }
+
+    /**
+     * 同 {@link #exceeded(HttpServletRequest, Deadline)}，供异步引擎在 I/O 线程上使用
+     */
+    public ResponseEntity<byte[]> exceeded(String method, String requestUri, Deadline deadline) {
+        if (deadline.clientBound) {
+            clientExpired.increment();
+        } else {
+            upstreamExpired.increment();
+        }
+        log.warn("Deadline exceeded for {} {} ({} deadline)", method, requestUri,
+                deadline.clientBound ? "client" : "route");
+        return AcmeProblems.problem(HttpStatus.GATEWAY_TIMEOUT, AcmeProblems.SERVER_INTERNAL,
+                "Upstream request did not complete before its deadline", null);
+    }
+
+    /**
+     * 本次请求的超时配置：connect/response 取操作预算与剩余时间的较小者
+     */
+    public RequestConfig requestConfig(Deadline deadline) {
+        return deadline.requestConfig(proxyConfig.requestConfig());
+    }
+
+    /**
+     * 把剩余时间写入发往 step-ca 的请求头
+     */
+    public void propagate(Deadline deadline, HttpRequest upstreamRequest) {
+        upstreamRequest.setHeader(properties.getDeadlineHeader(),
+                String.valueOf(TimeUnit.NANOSECONDS.toMillis(deadline.remainingNanos())));
+    }
+
+    /**
+     * 截止时间到达时取消 request；调用结束后需要 close Deadline 以取消计时器
+     */
+    public void cancelOnExpiry(Deadline deadline, Cancellable request) {
+        synchronized (deadline) {
+            deadline.attached.add(request);
+            if (deadline.timer == null) {
+                deadline.timer = taskScheduler.schedule(deadline::expire,
+                        Instant.now().plusNanos(deadline.remainingNanos()));
+            }
+        }
+    }
+
+    /**
+     * 解析客户端声明的剩余毫秒数，未声明或无法解析时返回 -1
+     */
+    private static long clientBudgetNanos(String value) {
+        if (value == null || value.isEmpty()) {
+            return -1;
+        }
+        try {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private TimeoutProperties.Budget routeConfig(AcmeRoute route) {
+        for (Map.Entry<String, TimeoutProperties.Budget> entry : properties.getRoutes().entrySet()) {
+            if (entry.getKey().replace('-', '_').equalsIgnoreCase(route.name())) {
+                return entry.getValue();
+            }
+        }
+        return properties.getDefaults();
+    }
+
+    /**
+     * 单次转发的截止时间
+     */
+    public static final class Deadline {
+        private final long deadlineNanos;
+        private final long connectNanos;
+        private final long responseNanos;
+        private final boolean clientBound;
+        private final List<Cancellable> attached = new ArrayList<>(2);
+        private ScheduledFuture<?> timer;
+        private volatile boolean expired;
+
+        private Deadline(long deadlineNanos, long connectNanos, long responseNanos, boolean clientBound) {
+            this.deadlineNanos = deadlineNanos;
+            this.connectNanos = connectNanos;
+            this.responseNanos = responseNanos;
+            this.clientBound = clientBound;
+        }
+
+        public long remainingNanos() {
+            return Math.max(0, deadlineNanos - System.nanoTime());
+        }
+
+        /**
+         * total 是否已到期（上游请求已被取消）
+         */
+        public boolean isExpired() {
+            return expired || deadlineNanos - System.nanoTime() <= 0;
+        }
+
+        @SuppressWarnings("deprecation")
+        private RequestConfig requestConfig(RequestConfig defaults) {
+            long remaining = Math.max(1, remainingNanos());
+            Timeout connect = Timeout.of(Math.min(connectNanos, remaining), TimeUnit.NANOSECONDS);
+            Timeout response = Timeout.of(Math.min(responseNanos, remaining), TimeUnit.NANOSECONDS);
+            Timeout lease = defaults.getConnectionRequestTimeout();
+            if (lease == null || lease.isDisabled() || lease.toNanoseconds() > remaining) {
+                lease = Timeout.of(remaining, TimeUnit.NANOSECONDS);
+            }
+            return RequestConfig.copy(defaults)
+                    .setConnectionRequestTimeout(lease)
+                    // httpclient 5.2 仍按请求读取 connectTimeout，覆盖连接池的默认值
+                    .setConnectTimeout(connect)
+                    .setResponseTimeout(response)
+                    .build();
+        }
+
+        /**
+         * 调用结束，取消到期计时器
+         */
+        public synchronized void close() {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            attached.clear();
+        }
+
+        private void expire() {
+            List<Cancellable> toCancel;
+            synchronized (this) {
+                expired = true;
+                toCancel = new ArrayList<>(attached);
+            }
+            for (Cancellable request : toCancel) {
+                request.cancel();
+            }
+        }
+    }
+}
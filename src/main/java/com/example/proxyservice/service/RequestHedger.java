@@ -0,0 +1,319 @@
+package com.example.proxyservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * 幂等 GET/HEAD 的对冲请求
+ *
+ * 主请求超过近期 GET 延迟的 p95 仍未返回时，向另一个副本再发一次，取先返回的结果并取消另一个。
+ * 对冲次数受预算限制（默认不超过请求数的 10%），上游负载不会因此翻倍。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RequestHedger {
+
+    private static final int SAMPLE_SIZE = 512;
+    private static final int MIN_SAMPLES = 32;
+    /**
+     * 预算以千分之一次对冲为单位累积
+     */
+    private static final long CREDIT_UNIT = 1000;
+
+    private final UpstreamRegistry upstreamRegistry;
+    private final NoncePool noncePool;
+    private final TaskScheduler taskScheduler;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${proxy.hedging.enabled:false}")
+    private boolean enabled;
+
+    @Value("${proxy.hedging.percentile:0.95}")
+    private double percentile;
+
+    @Value("${proxy.hedging.min-delay-ms:20}")
+    private long minDelayMs;
+
+    @Value("${proxy.hedging.max-delay-ms:2000}")
+    private long maxDelayMs;
+
+    /**
+     * 对冲请求占 GET 请求的最大比例
+     */
+    @Value("${proxy.hedging.budget-ratio:0.1}")
+    private double budgetRatio;
+
+    /**
+     * 同时在途的对冲请求上限，达到上限时不再对冲
+     */
+    @Value("${proxy.hedging.max-concurrent:32}")
+    private int maxConcurrent;
+
+    private final AtomicLongArray latencySamples = new AtomicLongArray(SAMPLE_SIZE);
+    private final AtomicInteger sampleCursor = new AtomicInteger();
+    private final AtomicLong credits = new AtomicLong();
+    private volatile long hedgeDelayNanos;
+    private ThreadPoolExecutor executor;
+    private Counter hedged;
+    private Counter hedgeWins;
+
+    @PostConstruct
+    public void init() {
+        hedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+        // 不排队：线程用完时直接拒绝，由 launch 放弃这次对冲
+        AtomicInteger threads = new AtomicInteger();
+        executor = new ThreadPoolExecutor(0, Math.max(1, maxConcurrent), 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "hedge-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        hedged = Counter.builder("proxy.hedge.requests")
+                .description("Hedged GET requests sent to a second replica, and how many of them answered first")
+                .tag("result", "sent")
+                .register(meterRegistry);
+        hedgeWins = Counter.builder("proxy.hedge.requests")
+                .description("Hedged GET requests sent to a second replica, and how many of them answered first")
+                .tag("result", "won")
+                .register(meterRegistry);
+        Gauge.builder("proxy.hedge.delay", this, h -> h.hedgeDelayNanos / 1_000_000.0)
+                .description("Current delay before a GET is hedged")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 是否对该请求做对冲：需要启用、幂等方法，且至少有两个副本
+     */
+    public boolean isHedgeable(String method) {
+        return enabled && upstreamRegistry.getUpstreams().size() > 1
+                && ("GET".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method));
+    }
+
+    /**
+     * 在调用线程上发送主请求，超过对冲延迟仍未返回时由对冲线程向另一个副本发送 hedgeFactory 创建的请求，
+     * 返回先成功的响应。hedgeFactory 在对冲线程上执行，不能读取 servlet 请求
+     */
+    UpstreamResponse execute(Upstream primary, HttpUriRequestBase primaryRequest, String path,
+                             Function<Upstream, HttpUriRequestBase> hedgeFactory) throws IOException {
+        addCredit();
+        Hedge hedge = new Hedge(primary, primaryRequest, path, hedgeFactory);
+        ScheduledFuture<?> timer;
+        try {
+            timer = taskScheduler.schedule(hedge::launch, Instant.now().plusNanos(hedgeDelayNanos));
+        } catch (RuntimeException e) {
+            // 调度器已关闭等情况，主请求还没有发出，归还熔断器名额
+            primary.release();
+            throw e;
+        }
+        long startNanos = System.nanoTime();
+        UpstreamResponse response = null;
+        IOException error = null;
+        try {
+            response = UpstreamResponse.fetch(primary, primaryRequest);
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            timer.cancel(false);
+        }
+        // 对冲先返回时主请求被取消，此时的耗时是主请求延迟的下限，同样计入样本，否则样本只剩下较快的主请求
+        if (response != null || primaryRequest.isCancelled()) {
+            recordLatency(System.nanoTime() - startNanos);
+        }
+        return hedge.resolve(response, error);
+    }
+
+    /**
+     * 定期用最近的 GET 延迟样本重新计算对冲延迟
+     */
+    @Scheduled(fixedDelayString = "${proxy.hedging.recompute-interval-ms:1000}")
+    public void recomputeDelay() {
+        if (!enabled) {
+            return;
+        }
+        int cursor = sampleCursor.get();
+        int count = cursor < 0 || cursor > SAMPLE_SIZE ? SAMPLE_SIZE : cursor;
+        if (count < MIN_SAMPLES) {
+            return;
+        }
+        long[] samples = new long[count];
+        for (int i = 0; i < count; i++) {
+            samples[i] = latencySamples.get(i);
+        }
+        Arrays.sort(samples);
+        long quantile = samples[Math.min(count - 1, (int) Math.ceil(percentile * count) - 1)];
+        hedgeDelayNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(minDelayMs),
+                Math.min(TimeUnit.MILLISECONDS.toNanos(maxDelayMs), quantile));
+    }
+
+    /**
+     * 一次请求的对冲状态；主请求结束后不再发出对冲
+     */
+    private final class Hedge {
+        private final Upstream primary;
+        private final HttpUriRequestBase primaryRequest;
+        private final String path;
+        private final Function<Upstream, HttpUriRequestBase> hedgeFactory;
+        private final CompletableFuture<UpstreamResponse> outcome = new CompletableFuture<>();
+        private HttpUriRequestBase request;
+        private boolean primaryDone;
+
+        Hedge(Upstream primary, HttpUriRequestBase primaryRequest, String path,
+              Function<Upstream, HttpUriRequestBase> hedgeFactory) {
+            this.primary = primary;
+            this.primaryRequest = primaryRequest;
+            this.path = path;
+            this.hedgeFactory = hedgeFactory;
+        }
+
+        /**
+         * 计时器线程上执行，只做检查和提交，不阻塞调度器
+         */
+        void launch() {
+            synchronized (this) {
+                if (primaryDone) {
+                    return;
+                }
+            }
+            if (!tryConsumeCredit()) {
+                return;
+            }
+            try {
+                executor.execute(this::send);
+            } catch (RejectedExecutionException e) {
+                // 对冲线程已满，放弃这次对冲
+                refundCredit();
+            }
+        }
+
+        private void send() {
+            Upstream other = upstreamRegistry.selectOther(primary);
+            if (other == null) {
+                refundCredit();
+                return;
+            }
+            HttpUriRequestBase hedgeRequest;
+            try {
+                hedgeRequest = hedgeFactory.apply(other);
+            } catch (RuntimeException e) {
+                other.release();
+                refundCredit();
+                log.warn("Failed to build hedge request for {}: {}", path, e.getMessage());
+                return;
+            }
+            synchronized (this) {
+                if (primaryDone) {
+                    other.release();
+                    refundCredit();
+                    return;
+                }
+                request = hedgeRequest;
+            }
+            log.info("Hedging {} to {} after {} ms", path, other.getUrl(), TimeUnit.NANOSECONDS.toMillis(hedgeDelayNanos));
+            hedged.increment();
+            try {
+                UpstreamResponse response = UpstreamResponse.fetch(other, hedgeRequest);
+                outcome.complete(response);
+                // 对冲先返回，取消主请求让调用线程结束等待
+                primaryRequest.cancel();
+            } catch (IOException e) {
+                outcome.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * 调用线程上执行：主请求成功时取消对冲；主请求失败或被取消时等待对冲结果，两个都失败时抛出主请求的错误
+         */
+        UpstreamResponse resolve(UpstreamResponse response, IOException error) throws IOException {
+            HttpUriRequestBase hedgeRequest;
+            synchronized (this) {
+                primaryDone = true;
+                hedgeRequest = request;
+            }
+            if (hedgeRequest == null) {
+                if (error != null) {
+                    throw error;
+                }
+                return response;
+            }
+            if (response != null) {
+                if (!outcome.isDone()) {
+                    hedgeRequest.cancel();
+                }
+                // 已经返回但未被使用的对冲响应中的 nonce 交给 nonce 池
+                outcome.thenAccept(unused -> noncePool.harvest(AcmeRoute.provisioner(path),
+                        unused.getFirstHeader("Replay-Nonce")));
+                return response;
+            }
+            try {
+                UpstreamResponse hedgeResponse = outcome.get();
+                hedgeWins.increment();
+                return hedgeResponse;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                hedgeRequest.cancel();
+                throw new InterruptedIOException("Interrupted while waiting for upstream");
+            } catch (ExecutionException e) {
+                throw error;
+            }
+        }
+    }
+
+    private void recordLatency(long latencyNanos) {
+        latencySamples.set(Math.floorMod(sampleCursor.getAndIncrement(), SAMPLE_SIZE), latencyNanos);
+    }
+
+    private void addCredit() {
+        long max = 10 * CREDIT_UNIT;
+        long add = (long) (budgetRatio * CREDIT_UNIT);
+        credits.getAndUpdate(current -> Math.min(max, current + add));
+    }
+
+    private void refundCredit() {
+        credits.getAndUpdate(current -> Math.min(10 * CREDIT_UNIT, current + CREDIT_UNIT));
+    }
+
+    private boolean tryConsumeCredit() {
+        while (true) {
+            long current = credits.get();
+            if (current < CREDIT_UNIT) {
+                return false;
+            }
+            if (credits.compareAndSet(current, current - CREDIT_UNIT)) {
+                return true;
+            }
+        }
+    }
+}
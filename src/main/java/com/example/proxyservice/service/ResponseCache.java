@@ -0,0 +1,303 @@
+package com.example.proxyservice.service;
+
+import com.example.proxyservice.config.ResponseCacheProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * directory、roots.pem 等只读 GET 资源的响应缓存
+ *
+ * 命中时直接返回共享的只读 body，不经过上游连接池；过期后在 max-stale 窗口内先返回旧内容，
+ * 同时在后台用 If-None-Match 向 step-ca 重新验证。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ResponseCache {
+
+    private final ResponseCacheProperties properties;
+    private final UpstreamRegistry upstreamRegistry;
+    private final TaskScheduler taskScheduler;
+    private final MeterRegistry meterRegistry;
+    private final NoncePool noncePool;
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final Map<String, CachedResponse> entries = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("proxy.cache.entries", entries, Map::size)
+                .description("URLs currently held in the response cache")
+                .register(meterRegistry);
+        log.info("Response cache {} with {} routes", properties.isEnabled() ? "enabled" : "disabled",
+                properties.getRoutes().size());
+    }
+
+    /**
+     * 请求是否落在配置的可缓存路由上。带查询参数的请求直接转发：
+     * 这些资源与查询参数无关，按原始查询串分别缓存只会让任意参数占满缓存
+     */
+    public boolean isCacheable(HttpServletRequest request) {
+        String method = request.getMethod();
+        return properties.isEnabled()
+                && ("GET".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method))
+                && request.getQueryString() == null
+                && findTtl(request.getRequestURI()) != null;
+    }
+
+    /**
+     * 查找缓存，命中时返回可直接写回客户端的响应；未命中或已超出 max-stale 时返回 null
+     */
+    public ResponseEntity<byte[]> lookup(HttpServletRequest request) {
+        if (!isCacheable(request)) {
+            return null;
+        }
+        CachedResponse entry = entries.get(request.getRequestURI());
+        if (entry == null) {
+            count("miss");
+            return null;
+        }
+
+        Instant now = Instant.now();
+        if (now.isAfter(entry.expiresAt)) {
+            if (now.isAfter(entry.expiresAt.plus(properties.getMaxStale()))) {
+                count("miss");
+                return null;
+            }
+            count("stale");
+            revalidateAsync(entry);
+        } else {
+            count("hit");
+        }
+
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && etagMatches(ifNoneMatch, entry.etag)) {
+            count("not_modified");
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(entry.etag)
+                    .build();
+        }
+        return ResponseEntity.status(entry.status)
+                .headers(entry.headers)
+                .body(entry.body);
+    }
+
+    /**
+     * 缓存上游的成功响应，只接受不带查询参数的 GET 200，以路径作为缓存键；返回缓存条目的 ETag，未缓存时返回 null。
+     * 参数不含 servlet 请求，异步引擎可以在 I/O 线程上调用
+     */
+    public String store(String method, String requestUri, String queryString, int status, Header[] upstreamHeaders,
+                        byte[] body) {
+        if (status != 200 || body == null || !"GET".equalsIgnoreCase(method) || queryString != null
+                || !properties.isEnabled()) {
+            return null;
+        }
+        Duration ttl = findTtl(requestUri);
+        if (ttl == null) {
+            return null;
+        }
+        if (!entries.containsKey(requestUri) && entries.size() >= properties.getMaxEntries()) {
+            evict();
+        }
+        CachedResponse entry = createEntry(requestUri, ttl, status, upstreamHeaders, body);
+        entries.put(requestUri, entry);
+        log.debug("Cached {} for {}", requestUri, ttl);
+        return entry.etag;
+    }
+
+    /**
+     * 缓存已满时腾出位置：先删除超出 max-stale 窗口、已不会再返回的条目，
+     * 仍然没有空位时删除最早过期的条目
+     */
+    private void evict() {
+        Instant staleBefore = Instant.now().minus(properties.getMaxStale());
+        entries.values().removeIf(entry -> entry.expiresAt.isBefore(staleBefore));
+        while (entries.size() >= properties.getMaxEntries()) {
+            CachedResponse oldest = null;
+            for (CachedResponse entry : entries.values()) {
+                if (oldest == null || entry.expiresAt.isBefore(oldest.expiresAt)) {
+                    oldest = entry;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            entries.remove(oldest.key, oldest);
+            log.debug("Response cache full, evicted {}", oldest.key);
+        }
+    }
+
+    private CachedResponse createEntry(String key, Duration ttl, int status, Header[] upstreamHeaders, byte[] body) {
+        HttpHeaders headers = new HttpHeaders();
+        String etag = null;
+        for (Header header : upstreamHeaders) {
+            String name = header.getName();
+            if (HttpHeaders.ETAG.equalsIgnoreCase(name)) {
+                etag = header.getValue();
+            } else if (isCacheableHeader(name)) {
+                headers.add(name, header.getValue());
+            }
+        }
+        boolean upstreamEtag = etag != null;
+        if (!upstreamEtag) {
+            etag = computeEtag(body);
+        }
+        headers.setETag(etag);
+        return new CachedResponse(key, ttl, status,
+                HttpHeaders.readOnlyHttpHeaders(headers), body, etag, upstreamEtag, Instant.now().plus(ttl));
+    }
+
+    private void revalidateAsync(CachedResponse entry) {
+        if (!entry.revalidating.compareAndSet(false, true)) {
+            return;
+        }
+        taskScheduler.schedule(() -> revalidate(entry), Instant.now());
+    }
+
+    private void revalidate(CachedResponse entry) {
+        Upstream upstream = upstreamRegistry.select();
+        if (upstream == null) {
+            // 所有副本都已熔断，继续使用旧内容，等待下一次命中时再重新验证
+            entry.revalidating.set(false);
+            countRevalidation("failed");
+            return;
+        }
+        HttpGet httpGet = new HttpGet(upstream.getUrl() + entry.key);
+        if (entry.upstreamEtag) {
+            httpGet.setHeader(HttpHeaders.IF_NONE_MATCH, entry.etag);
+        }
+        long startNanos = upstream.start();
+        int status = 0;
+        try (CloseableHttpResponse response = upstream.getHttpClient().execute(httpGet)) {
+            status = response.getCode();
+            // 重新验证的响应不会发给客户端，其中的 nonce 交给 nonce 池复用
+            noncePool.harvest(AcmeRoute.provisioner(entry.key), response.getFirstHeader("Replay-Nonce"));
+            byte[] body = response.getEntity() != null ? EntityUtils.toByteArray(response.getEntity()) : null;
+            if (status == 304 || (status == 200 && Arrays.equals(body, entry.body))) {
+                entries.replace(entry.key, entry, entry.refreshed());
+                countRevalidation("not_modified");
+            } else if (status == 200 && body != null) {
+                entries.replace(entry.key, entry, createEntry(entry.key, entry.ttl, status, response.getHeaders(), body));
+                countRevalidation("updated");
+            } else {
+                log.warn("Revalidation of {} returned status {}, keeping stale entry", entry.key, status);
+                entry.revalidating.set(false);
+                countRevalidation("failed");
+            }
+        } catch (Exception e) {
+            log.warn("Revalidation of {} failed: {}", entry.key, e.getMessage());
+            entry.revalidating.set(false);
+            countRevalidation("failed");
+        } finally {
+            upstream.complete(startNanos, status == 0 || status >= 500);
+        }
+    }
+
+    private Duration findTtl(String path) {
+        for (ResponseCacheProperties.Route route : properties.getRoutes()) {
+            if (pathMatcher.match(route.getPattern(), path)) {
+                return route.getTtl();
+            }
+        }
+        return null;
+    }
+
+    private boolean isCacheableHeader(String name) {
+        // Replay-Nonce 一次性使用，Date 由容器生成，长度与分块由容器根据 body 重新计算
+        return !("replay-nonce".equalsIgnoreCase(name)
+                || "date".equalsIgnoreCase(name)
+                || "connection".equalsIgnoreCase(name)
+                || "transfer-encoding".equalsIgnoreCase(name)
+                || "content-length".equalsIgnoreCase(name)
+                || "set-cookie".equalsIgnoreCase(name));
+    }
+
+    private boolean etagMatches(String ifNoneMatch, String etag) {
+        if ("*".equals(ifNoneMatch.trim())) {
+            return true;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.startsWith("W/")) {
+                trimmed = trimmed.substring(2);
+            }
+            if (trimmed.equals(etag) || ("W/" + trimmed).equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String computeEtag(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16)) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            return "\"" + Integer.toHexString(Arrays.hashCode(body)) + "\"";
+        }
+    }
+
+    private void count(String result) {
+        meterRegistry.counter("proxy.cache.requests", "result", result).increment();
+    }
+
+    private void countRevalidation(String result) {
+        meterRegistry.counter("proxy.cache.revalidations", "result", result).increment();
+    }
+
+    /**
+     * 缓存条目，body 在所有命中之间共享且不再修改
+     */
+    private static final class CachedResponse {
+        private final String key;
+        private final Duration ttl;
+        private final int status;
+        private final HttpHeaders headers;
+        private final byte[] body;
+        private final String etag;
+        private final boolean upstreamEtag;
+        private final Instant expiresAt;
+        private final AtomicBoolean revalidating = new AtomicBoolean();
+
+        private CachedResponse(String key, Duration ttl, int status, HttpHeaders headers,
+                               byte[] body, String etag, boolean upstreamEtag, Instant expiresAt) {
+            this.key = key;
+            this.ttl = ttl;
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+            this.etag = etag;
+            this.upstreamEtag = upstreamEtag;
+            this.expiresAt = expiresAt;
+        }
+
+        private CachedResponse refreshed() {
+            return new CachedResponse(key, ttl, status, headers, body, etag, upstreamEtag,
+                    Instant.now().plus(ttl));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.proxyservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 流式转发使用的固定大小缓冲区池
+ *
+ * 每个请求只借用一个缓冲区完成整个 body 的拷贝，因此单请求的堆占用与 payload 大小无关。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StreamBufferPool {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${proxy.streaming.buffer-size:8192}")
+    private int bufferSize;
+
+    @Value("${proxy.streaming.max-pooled-buffers:256}")
+    private int maxPooledBuffers;
+
+    private BlockingQueue<byte[]> freeBuffers;
+    private final AtomicInteger buffersInUse = new AtomicInteger();
+    private final AtomicInteger peakBuffersInUse = new AtomicInteger();
+
+    private Counter upstreamBytes;
+    private Counter downstreamBytes;
+    private Counter bufferAllocations;
+
+    @PostConstruct
+    public void init() {
+        freeBuffers = new ArrayBlockingQueue<>(maxPooledBuffers);
+        upstreamBytes = Counter.builder("proxy.stream.bytes")
+                .description("Bytes streamed through the proxy")
+                .tag("direction", "upstream")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        downstreamBytes = Counter.builder("proxy.stream.bytes")
+                .description("Bytes streamed through the proxy")
+                .tag("direction", "downstream")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        bufferAllocations = Counter.builder("proxy.stream.buffer.allocations")
+                .description("Stream buffers allocated because the pool was empty")
+                .register(meterRegistry);
+        Gauge.builder("proxy.stream.buffers.in-use", buffersInUse, AtomicInteger::get)
+                .description("Stream buffers currently lent out")
+                .register(meterRegistry);
+        Gauge.builder("proxy.stream.buffers.peak", peakBuffersInUse, AtomicInteger::get)
+                .description("Peak number of stream buffers lent out at the same time")
+                .register(meterRegistry);
+        Gauge.builder("proxy.stream.buffers.peak.bytes", peakBuffersInUse, peak -> (double) peak.get() * bufferSize)
+                .description("Peak heap held by stream buffers")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        log.info("Stream buffer pool initialized: buffer size {} bytes, max pooled buffers {}", bufferSize, maxPooledBuffers);
+    }
+
+    /**
+     * 把上游响应体拷贝到客户端
+     */
+    public long copyDownstream(InputStream in, OutputStream out) throws IOException {
+        long copied = copy(in, out, -1);
+        downstreamBytes.increment(copied);
+        return copied;
+    }
+
+    /**
+     * 把客户端请求体拷贝到上游，limit 小于 0 表示读到流结束
+     */
+    public long copyUpstream(InputStream in, OutputStream out, long limit) throws IOException {
+        long copied = copy(in, out, limit);
+        upstreamBytes.increment(copied);
+        return copied;
+    }
+
+    private long copy(InputStream in, OutputStream out, long limit) throws IOException {
+        byte[] buffer = acquire();
+        try {
+            long total = 0;
+            while (limit < 0 || total < limit) {
+                int toRead = limit < 0 ? buffer.length : (int) Math.min(buffer.length, limit - total);
+                int read = in.read(buffer, 0, toRead);
+                if (read == -1) {
+                    break;
+                }
+                out.write(buffer, 0, read);
+                total += read;
+            }
+            out.flush();
+            return total;
+        } finally {
+            release(buffer);
+        }
+    }
+
+    private byte[] acquire() {
+        int inUse = buffersInUse.incrementAndGet();
+        peakBuffersInUse.accumulateAndGet(inUse, Math::max);
+        byte[] buffer = freeBuffers.poll();
+        if (buffer == null) {
+            bufferAllocations.increment();
+            buffer = new byte[bufferSize];
+        }
+        return buffer;
+    }
+
+    private void release(byte[] buffer) {
+        buffersInUse.decrementAndGet();
+        // 池满时直接丢弃，交给 GC 回收
+        freeBuffers.offer(buffer);
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getPeakBuffersInUse() {
+        return peakBuffersInUse.get();
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.proxyservice.service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * 流量录制文件的二进制格式，只依赖 JDK，录制端与回放工具共用
+ *
+ * 文件以 "ACMETRAF" + 版本号开头，之后是长度前缀的记录：
+ * <pre>
+ *   int    记录长度（不含本字段）
+ *   long   请求开始时间（epoch 微秒）
+ *   int    处理耗时（微秒）
+ *   byte   标志位（请求/响应体截断、未录制 body、已脱敏）
+ *   UTF    方法、路径（含查询串）
+ *   short  状态码
+ *   short  请求头个数，每个为 UTF 名称 + UTF 值
+ *   int    请求体长度 + 字节
+ *   short  响应头个数，每个为 UTF 名称 + UTF 值
+ *   int    响应体长度 + 字节
+ * </pre>
+ * 进程崩溃留下的半条记录在读取时忽略。查看录制内容用测试目录中的 TrafficLogDump。
+ */
+public final class TrafficLog {
+
+    static final byte[] MAGIC = "ACMETRAF".getBytes(StandardCharsets.US_ASCII);
+    static final short VERSION = 1;
+
+    public static final int REQUEST_TRUNCATED = 1;
+    public static final int RESPONSE_TRUNCATED = 1 << 1;
+    public static final int BODIES_OMITTED = 1 << 2;
+    public static final int REDACTED = 1 << 3;
+
+    /**
+     * writeUTF 的上限是 64KB（按修改版 UTF-8 计），超长的头值截断
+     */
+    private static final int MAX_STRING_CHARS = 16 * 1024;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private TrafficLog() {
+    }
+
+    /**
+     * 一条录制的请求/响应
+     */
+    public record Entry(long timestampMicros, int durationMicros, int flags, String method, String uri, int status,
+                        List<Map.Entry<String, String>> requestHeaders, byte[] requestBody,
+                        List<Map.Entry<String, String>> responseHeaders, byte[] responseBody) {
+
+        public Instant timestamp() {
+            return Instant.EPOCH.plusNanos(timestampMicros * 1000);
+        }
+
+        public boolean hasFlag(int flag) {
+            return (flags & flag) != 0;
+        }
+
+        /**
+         * 第一个同名请求头（忽略大小写）
+         */
+        public String requestHeader(String name) {
+            for (Map.Entry<String, String> header : requestHeaders) {
+                if (header.getKey().equalsIgnoreCase(name)) {
+                    return header.getValue();
+                }
+            }
+            return null;
+        }
+    }
+
+    static void writeFileHeader(DataOutputStream out) throws IOException {
+        out.write(MAGIC);
+        out.writeShort(VERSION);
+    }
+
+    /**
+     * 序列化一条记录（不含长度前缀），调用方负责写长度
+     */
+    static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        out.writeLong(entry.timestampMicros());
+        out.writeInt(entry.durationMicros());
+        out.writeByte(entry.flags());
+        out.writeUTF(entry.method());
+        out.writeUTF(limit(entry.uri()));
+        out.writeShort(entry.status());
+        writeHeaders(out, entry.requestHeaders());
+        writeBody(out, entry.requestBody());
+        writeHeaders(out, entry.responseHeaders());
+        writeBody(out, entry.responseBody());
+    }
+
+    private static void writeHeaders(DataOutputStream out, List<Map.Entry<String, String>> headers) throws IOException {
+        int count = Math.min(headers.size(), Short.MAX_VALUE);
+        out.writeShort(count);
+        for (int i = 0; i < count; i++) {
+            Map.Entry<String, String> header = headers.get(i);
+            out.writeUTF(limit(header.getKey()));
+            out.writeUTF(limit(header.getValue()));
+        }
+    }
+
+    private static void writeBody(DataOutputStream out, byte[] body) throws IOException {
+        if (body == null) {
+            out.writeInt(0);
+            return;
+        }
+        out.writeInt(body.length);
+        out.write(body);
+    }
+
+    private static String limit(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.length() > MAX_STRING_CHARS ? value.substring(0, MAX_STRING_CHARS) : value;
+    }
+
+    /**
+     * 按文件名顺序读取一个文件或目录下所有 .bin 文件中的记录
+     */
+    public static void read(Path path, Consumer<Entry> consumer) throws IOException {
+        for (Path file : files(path)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                read(in, consumer);
+            }
+        }
+    }
+
+    public static List<Path> files(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            return List.of(path);
+        }
+        try (Stream<Path> listing = Files.list(path)) {
+            return listing.filter(file -> file.getFileName().toString().endsWith(".bin")).sorted().toList();
+        }
+    }
+
+    public static void read(InputStream input, Consumer<Entry> consumer) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(input, 64 * 1024));
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a traffic log (bad magic)");
+        }
+        short version = in.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported traffic log version " + version);
+        }
+        while (true) {
+            byte[] record;
+            try {
+                int length = in.readInt();
+                record = new byte[length];
+                in.readFully(record);
+            } catch (EOFException e) {
+                // 正常结尾，或写入中途崩溃留下的半条记录
+                return;
+            }
+            consumer.accept(readEntry(new DataInputStream(new ByteArrayInputStream(record))));
+        }
+    }
+
+    private static Entry readEntry(DataInputStream in) throws IOException {
+        long timestamp = in.readLong();
+        int duration = in.readInt();
+        int flags = in.readUnsignedByte();
+        String method = in.readUTF();
+        String uri = in.readUTF();
+        int status = in.readShort();
+        List<Map.Entry<String, String>> requestHeaders = readHeaders(in);
+        byte[] requestBody = readBody(in);
+        List<Map.Entry<String, String>> responseHeaders = readHeaders(in);
+        byte[] responseBody = readBody(in);
+        return new Entry(timestamp, duration, flags, method, uri, status,
+                requestHeaders, requestBody, responseHeaders, responseBody);
+    }
+
+    private static List<Map.Entry<String, String>> readHeaders(DataInputStream in) throws IOException {
+        int count = in.readShort();
+        List<Map.Entry<String, String>> headers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            headers.add(Map.entry(in.readUTF(), in.readUTF()));
+        }
+        return headers;
+    }
+
+    private static byte[] readBody(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length == 0) {
+            return EMPTY;
+        }
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return body;
+    }
+}
@@ -0,0 +1,396 @@
+package com.example.proxyservice.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 可选的流量录制：把经过代理的请求/响应（元数据与 body）写入 {@link TrafficLog} 格式的二进制文件，
+ * 供回放工具按原始节奏或加速重放
+ *
+ * 请求线程只做采样判断和引用收集，放入有界队列后立即返回；脱敏、截断与序列化都在单独的写线程中完成，
+ * 队列满时丢弃并计数，不阻塞转发。默认脱敏 Authorization、Cookie 等请求头，以及 JWS 签名和
+ * 外部账户绑定（EAB）中的 HMAC。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TrafficRecorder {
+
+    private static final String REDACTED_VALUE = "[REDACTED]";
+    private static final DateTimeFormatter FILE_TIMESTAMP =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS").withZone(ZoneOffset.UTC);
+
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${proxy.recorder.enabled:false}")
+    private boolean enabled;
+
+    @Value("${proxy.recorder.directory:logs/traffic}")
+    private String directory;
+
+    /**
+     * 录制的请求比例（0~1）
+     */
+    @Value("${proxy.recorder.sample-rate:1.0}")
+    private double sampleRate;
+
+    @Value("${proxy.recorder.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${proxy.recorder.capture-bodies:true}")
+    private boolean captureBodies;
+
+    @Value("${proxy.recorder.max-body-bytes:65536}")
+    private int maxBodyBytes;
+
+    @Value("${proxy.recorder.max-file-size-mb:256}")
+    private long maxFileSizeMb;
+
+    @Value("${proxy.recorder.redact-headers:Authorization,Proxy-Authorization,Cookie,Set-Cookie}")
+    private String[] redactHeaders;
+
+    @Value("${proxy.recorder.redact-jws-signatures:true}")
+    private boolean redactJwsSignatures;
+
+    private BlockingQueue<Capture> queue;
+    private Set<String> redactedHeaders;
+    private Thread writer;
+    private volatile boolean running;
+
+    private Counter written;
+    private Counter dropped;
+    private Counter failed;
+
+    private DataOutputStream out;
+    private long fileBytes;
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream(8192);
+    private final DataOutputStream record = new DataOutputStream(recordBuffer);
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        redactedHeaders = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        redactedHeaders.addAll(Arrays.asList(redactHeaders));
+
+        written = Counter.builder("proxy.recorder.records")
+                .description("Requests captured by the traffic recorder")
+                .tag("result", "written")
+                .register(meterRegistry);
+        dropped = Counter.builder("proxy.recorder.records")
+                .description("Requests captured by the traffic recorder")
+                .tag("result", "dropped")
+                .register(meterRegistry);
+        failed = Counter.builder("proxy.recorder.records")
+                .description("Requests captured by the traffic recorder")
+                .tag("result", "failed")
+                .register(meterRegistry);
+        Gauge.builder("proxy.recorder.queue", queue, BlockingQueue::size)
+                .description("Captured requests waiting to be written")
+                .register(meterRegistry);
+
+        running = true;
+        writer = new Thread(this::writeLoop, "traffic-recorder");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Traffic recorder writing to {} (sample rate {}, bodies {}, max {} bytes)",
+                directory, sampleRate, captureBodies, maxBodyBytes);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 在请求开始时采集请求侧信息；未启用或未被采样时返回 null，后续 complete 调用直接忽略
+     */
+    public Capture begin(HttpServletRequest request, byte[] body) {
+        if (!enabled || (sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+            return null;
+        }
+        String uri = request.getRequestURI();
+        String query = request.getQueryString();
+        List<Map.Entry<String, String>> headers = new ArrayList<>();
+        Enumeration<String> names = request.getHeaderNames();
+        while (names != null && names.hasMoreElements()) {
+            String name = names.nextElement();
+            Enumeration<String> values = request.getHeaders(name);
+            while (values.hasMoreElements()) {
+                headers.add(Map.entry(name, values.nextElement()));
+            }
+        }
+        return new Capture(System.currentTimeMillis() * 1000, System.nanoTime(), request.getMethod(),
+                query != null ? uri + "?" + query : uri, headers, body);
+    }
+
+    /**
+     * 缓冲模式与异步引擎：响应体在内存中，一并录制
+     */
+    public void complete(Capture capture, ResponseEntity<?> response) {
+        if (capture == null) {
+            return;
+        }
+        capture.finish(System.nanoTime());
+        if (response != null) {
+            capture.status = response.getStatusCode().value();
+            response.getHeaders().forEach((name, values) ->
+                    values.forEach(value -> capture.responseHeaders.add(Map.entry(name, value))));
+            if (response.getBody() instanceof byte[] bytes) {
+                capture.responseBody = bytes;
+            }
+        }
+        enqueue(capture);
+    }
+
+    /**
+     * 流式模式：body 直接在连接之间拷贝，只录制元数据
+     */
+    public void complete(Capture capture, HttpServletResponse response) {
+        if (capture == null) {
+            return;
+        }
+        capture.finish(System.nanoTime());
+        capture.bodiesOmitted = true;
+        capture.status = response.getStatus();
+        for (String name : response.getHeaderNames()) {
+            for (String value : response.getHeaders(name)) {
+                capture.responseHeaders.add(Map.entry(name, value));
+            }
+        }
+        enqueue(capture);
+    }
+
+    private void enqueue(Capture capture) {
+        if (!queue.offer(capture)) {
+            dropped.increment();
+        }
+    }
+
+    // ---------------------------------------------------------------- 写线程
+
+    private void writeLoop() {
+        while (running || !queue.isEmpty()) {
+            try {
+                Capture capture = queue.poll(1, TimeUnit.SECONDS);
+                if (capture == null) {
+                    continue;
+                }
+                write(capture);
+                // 积压的记录写完后再刷盘，突发流量下合并成少量系统调用
+                if (queue.isEmpty()) {
+                    out.flush();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (Exception e) {
+                failed.increment();
+                log.warn("Failed to write traffic record: {}", e.getMessage());
+                closeFile();
+            }
+        }
+        closeFile();
+    }
+
+    private void write(Capture capture) throws IOException {
+        int flags = 0;
+        byte[] requestBody = null;
+        byte[] responseBody = null;
+        if (capture.bodiesOmitted || !captureBodies) {
+            flags |= TrafficLog.BODIES_OMITTED;
+        } else {
+            requestBody = capture.requestBody;
+            if (redactJwsSignatures && requestBody != null) {
+                byte[] redacted = redactJws(requestBody);
+                if (redacted != requestBody) {
+                    flags |= TrafficLog.REDACTED;
+                    requestBody = redacted;
+                }
+            }
+            if (requestBody != null && requestBody.length > maxBodyBytes) {
+                requestBody = Arrays.copyOf(requestBody, maxBodyBytes);
+                flags |= TrafficLog.REQUEST_TRUNCATED;
+            }
+            responseBody = capture.responseBody;
+            if (responseBody != null && responseBody.length > maxBodyBytes) {
+                responseBody = Arrays.copyOf(responseBody, maxBodyBytes);
+                flags |= TrafficLog.RESPONSE_TRUNCATED;
+            }
+        }
+        List<Map.Entry<String, String>> requestHeaders = redactHeaders(capture.requestHeaders);
+        List<Map.Entry<String, String>> responseHeaders = redactHeaders(capture.responseHeaders);
+        if (requestHeaders != capture.requestHeaders || responseHeaders != capture.responseHeaders) {
+            flags |= TrafficLog.REDACTED;
+        }
+
+        recordBuffer.reset();
+        TrafficLog.writeEntry(record, new TrafficLog.Entry(capture.timestampMicros,
+                (int) Math.min(Integer.MAX_VALUE, capture.durationNanos / 1000), flags, capture.method, capture.uri,
+                capture.status, requestHeaders, requestBody, responseHeaders, responseBody));
+        record.flush();
+
+        if (out == null || fileBytes >= maxFileSizeMb * 1024 * 1024) {
+            rotate();
+        }
+        out.writeInt(recordBuffer.size());
+        recordBuffer.writeTo(out);
+        fileBytes += 4 + recordBuffer.size();
+        written.increment();
+    }
+
+    private void rotate() throws IOException {
+        closeFile();
+        Path dir = Path.of(directory);
+        Files.createDirectories(dir);
+        Path file = dir.resolve("traffic-" + FILE_TIMESTAMP.format(Instant.now()) + ".bin");
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024));
+        TrafficLog.writeFileHeader(out);
+        fileBytes = TrafficLog.MAGIC.length + 2;
+        log.info("Recording traffic to {}", file);
+    }
+
+    private void closeFile() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            log.debug("Error closing traffic log", e);
+        }
+        out = null;
+    }
+
+    private List<Map.Entry<String, String>> redactHeaders(List<Map.Entry<String, String>> headers) {
+        List<Map.Entry<String, String>> result = headers;
+        for (int i = 0; i < headers.size(); i++) {
+            if (redactedHeaders.contains(headers.get(i).getKey())) {
+                if (result == headers) {
+                    result = new ArrayList<>(headers);
+                }
+                result.set(i, Map.entry(headers.get(i).getKey(), REDACTED_VALUE));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 清空 JWS 签名，以及 new-account 载荷中外部账户绑定的 HMAC；不是 JWS 时原样返回
+     */
+    private byte[] redactJws(byte[] body) {
+        if (body.length == 0 || body[0] != '{') {
+            return body;
+        }
+        try {
+            JsonNode jws = objectMapper.readTree(body);
+            if (!(jws instanceof ObjectNode node) || !node.has("signature")) {
+                return body;
+            }
+            node.put("signature", "");
+            String payload = node.path("payload").asText("");
+            if (!payload.isEmpty()) {
+                node.put("payload", redactPayload(payload));
+            }
+            return objectMapper.writeValueAsBytes(node);
+        } catch (IOException | IllegalArgumentException e) {
+            return body;
+        }
+    }
+
+    private String redactPayload(String payload) throws IOException {
+        byte[] decoded = Base64.getUrlDecoder().decode(payload);
+        if (!new String(decoded, StandardCharsets.UTF_8).contains("externalAccountBinding")) {
+            return payload;
+        }
+        JsonNode json = objectMapper.readTree(decoded);
+        if (json.get("externalAccountBinding") instanceof ObjectNode binding) {
+            binding.put("signature", "");
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(objectMapper.writeValueAsBytes(json));
+    }
+
+    @PreDestroy
+    public void close() {
+        if (writer == null) {
+            return;
+        }
+        // 写线程把队列中剩余的记录写完后退出
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 一次请求的录制内容，由请求线程创建，写线程消费
+     */
+    public static final class Capture {
+        private final long timestampMicros;
+        private final long startNanos;
+        private final String method;
+        private final String uri;
+        private final List<Map.Entry<String, String>> requestHeaders;
+        private final byte[] requestBody;
+        private final List<Map.Entry<String, String>> responseHeaders = new ArrayList<>();
+        private byte[] responseBody;
+        private int status;
+        private long durationNanos;
+        private boolean bodiesOmitted;
+
+        Capture(long timestampMicros, long startNanos, String method, String uri,
+                List<Map.Entry<String, String>> requestHeaders, byte[] requestBody) {
+            this.timestampMicros = timestampMicros;
+            this.startNanos = startNanos;
+            this.method = method;
+            this.uri = uri;
+            this.requestHeaders = Collections.unmodifiableList(requestHeaders);
+            this.requestBody = requestBody;
+        }
+
+        private void finish(long endNanos) {
+            durationNanos = endNanos - startNanos;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.proxyservice.service;
+
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一个 step-ca 副本：独立连接池、在途请求数、EWMA 延迟与健康状态
+ */
+public class Upstream {
+
+    private final String url;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final double ewmaAlpha;
+    private final CircuitBreaker circuitBreaker;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private volatile double ewmaLatencyMillis;
+    private volatile boolean healthy = true;
+    private int consecutiveFailures;
+    private int consecutiveSuccesses;
+
+    public Upstream(String url, PoolingHttpClientConnectionManager connectionManager,
+                    CloseableHttpClient httpClient, double ewmaAlpha, CircuitBreaker circuitBreaker) {
+        this.url = url;
+        this.connectionManager = connectionManager;
+        this.httpClient = httpClient;
+        this.ewmaAlpha = ewmaAlpha;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * 标记一次请求开始，返回开始时间；熔断器名额已在选择副本时占用
+     */
+    public long start() {
+        outstanding.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * 标记一次请求结束，更新 EWMA 延迟并记录到熔断器；failed 表示 I/O 失败或 5xx
+     */
+    public void complete(long startNanos, boolean failed) {
+        outstanding.decrementAndGet();
+        long latencyNanos = System.nanoTime() - startNanos;
+        circuitBreaker.onCallCompleted(latencyNanos, failed);
+        double latencyMillis = latencyNanos / 1_000_000.0;
+        double current = ewmaLatencyMillis;
+        // 并发更新时允许丢失个别样本，EWMA 本身就是近似值
+        ewmaLatencyMillis = current == 0 ? latencyMillis : current + ewmaAlpha * (latencyMillis - current);
+    }
+
+    /**
+     * 标记一次被主动取消的请求结束（对冲输掉、截止时间到期）：只减少在途数并归还熔断器名额，
+     * 取消不代表副本有问题，不计入熔断器和 EWMA 延迟
+     */
+    public void abandon() {
+        outstanding.decrementAndGet();
+        circuitBreaker.releasePermission();
+    }
+
+    /**
+     * 负载评分，越小越空闲：EWMA 延迟乘以在途请求数（peak EWMA）
+     */
+    double ewmaScore() {
+        double latency = ewmaLatencyMillis == 0 ? 1 : ewmaLatencyMillis;
+        return latency * (outstanding.get() + 1);
+    }
+
+    /**
+     * 记录一次主动健康检查结果，连续达到阈值后切换状态，返回状态是否发生变化
+     */
+    synchronized boolean recordHealthCheck(boolean success, int unhealthyThreshold, int healthyThreshold) {
+        if (success) {
+            consecutiveFailures = 0;
+            consecutiveSuccesses++;
+            if (!healthy && consecutiveSuccesses >= healthyThreshold) {
+                healthy = true;
+                return true;
+            }
+        } else {
+            consecutiveSuccesses = 0;
+            consecutiveFailures++;
+            if (healthy && consecutiveFailures >= unhealthyThreshold) {
+                healthy = false;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public PoolingHttpClientConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    public double getEwmaLatencyMillis() {
+        return ewmaLatencyMillis;
+    }
+
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    /**
+     * 熔断器是否允许向该副本发送请求，不占用半开名额
+     */
+    public boolean isAvailable() {
+        return circuitBreaker.isCallPermitted();
+    }
+
+    /**
+     * 占用一次调用名额，半开状态下名额已被其他请求占完时返回 false
+     */
+    boolean tryAcquire() {
+        return circuitBreaker.tryAcquirePermission();
+    }
+
+    /**
+     * 选中副本后没有发出请求（被限流、构建请求失败等）时归还名额
+     */
+    public void release() {
+        circuitBreaker.releasePermission();
+    }
+
+    CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+}
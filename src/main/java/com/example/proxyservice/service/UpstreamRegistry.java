@@ -0,0 +1,351 @@
+package com.example.proxyservice.service;
+
+import com.example.proxyservice.config.ProxyConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * step-ca 副本集合：负载均衡选择、主动健康检查，每个副本使用独立的连接池
+ *
+ * proxy.upstreams 为空时退化为 step-ca.url 单副本。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UpstreamRegistry {
+
+    private final ProxyConfig proxyConfig;
+    private final ConnectionPoolMetrics connectionPoolMetrics;
+    private final MeterRegistry meterRegistry;
+    private final UpstreamTimings upstreamTimings;
+
+    @Value("${proxy.upstreams:}")
+    private String[] upstreamUrls;
+
+    /**
+     * least-outstanding：两次随机选择取在途请求更少者；ewma：按 EWMA 延迟 × 在途请求数取最小
+     */
+    @Value("${proxy.load-balancing.strategy:least-outstanding}")
+    private String strategy;
+
+    @Value("${proxy.load-balancing.ewma-alpha:0.3}")
+    private double ewmaAlpha;
+
+    @Value("${proxy.health-check.enabled:true}")
+    private boolean healthCheckEnabled;
+
+    @Value("${proxy.health-check.path:/health}")
+    private String healthCheckPath;
+
+    @Value("${proxy.health-check.timeout-ms:2000}")
+    private long healthCheckTimeoutMs;
+
+    @Value("${proxy.health-check.unhealthy-threshold:3}")
+    private int unhealthyThreshold;
+
+    @Value("${proxy.health-check.healthy-threshold:2}")
+    private int healthyThreshold;
+
+    /**
+     * 按 ACME 账户（JWS kid/jwk）把同一账户的请求固定到同一副本
+     */
+    @Value("${proxy.affinity.enabled:true}")
+    private boolean affinityEnabled;
+
+    @Value("${proxy.affinity.virtual-nodes:160}")
+    private int virtualNodes;
+
+    /**
+     * 有界负载系数 c：单个副本的在途请求数不超过平均值的 c 倍，超过时顺时针溢出到下一个副本
+     */
+    @Value("${proxy.affinity.load-factor:1.25}")
+    private double loadFactor;
+
+    @Value("${proxy.circuit-breaker.window-size:50}")
+    private int breakerWindowSize;
+
+    @Value("${proxy.circuit-breaker.minimum-calls:20}")
+    private int breakerMinimumCalls;
+
+    @Value("${proxy.circuit-breaker.failure-rate-threshold:0.5}")
+    private double breakerFailureRate;
+
+    @Value("${proxy.circuit-breaker.slow-call-rate-threshold:0.8}")
+    private double breakerSlowCallRate;
+
+    @Value("${proxy.circuit-breaker.slow-call-ms:5000}")
+    private long breakerSlowCallMs;
+
+    @Value("${proxy.circuit-breaker.open-ms:10000}")
+    private long breakerOpenMs;
+
+    @Value("${proxy.circuit-breaker.half-open-calls:3}")
+    private int breakerHalfOpenCalls;
+
+    private List<Upstream> upstreams;
+    private volatile AffinityRing affinityRing;
+    private Counter affinityPrimary;
+    private Counter affinityRebalanced;
+
+    @PostConstruct
+    public void init() throws Exception {
+        List<String> urls = new ArrayList<>();
+        for (String url : upstreamUrls) {
+            if (url != null && !url.isBlank()) {
+                urls.add(stripTrailingSlash(url.trim()));
+            }
+        }
+        if (urls.isEmpty()) {
+            urls.add(stripTrailingSlash(proxyConfig.getStepCaUrl()));
+        }
+
+        List<Upstream> created = new ArrayList<>();
+        for (String url : urls) {
+            PoolingHttpClientConnectionManager connectionManager = proxyConfig.createConnectionManager();
+            CloseableHttpClient httpClient = proxyConfig.createHttpClient(connectionManager, upstreamTimings::instrument);
+            String name = URI.create(url).getAuthority();
+            CircuitBreaker circuitBreaker = new CircuitBreaker(name, breakerWindowSize, breakerMinimumCalls,
+                    breakerFailureRate, breakerSlowCallRate, TimeUnit.MILLISECONDS.toNanos(breakerSlowCallMs),
+                    TimeUnit.MILLISECONDS.toNanos(breakerOpenMs), breakerHalfOpenCalls);
+            Upstream upstream = new Upstream(url, connectionManager, httpClient, ewmaAlpha, circuitBreaker);
+            created.add(upstream);
+
+            connectionPoolMetrics.register("upstream:" + name, connectionManager);
+            Gauge.builder("proxy.upstream.outstanding", upstream, Upstream::getOutstanding)
+                    .description("Requests in flight per step-ca replica")
+                    .tag("upstream", name)
+                    .register(meterRegistry);
+            Gauge.builder("proxy.upstream.latency.ewma", upstream, Upstream::getEwmaLatencyMillis)
+                    .description("EWMA upstream latency per step-ca replica")
+                    .tag("upstream", name)
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+            Gauge.builder("proxy.upstream.healthy", upstream, u -> u.isHealthy() ? 1 : 0)
+                    .description("Whether the step-ca replica is in rotation")
+                    .tag("upstream", name)
+                    .register(meterRegistry);
+            Gauge.builder("proxy.upstream.circuit.state", circuitBreaker, b -> b.getState().ordinal())
+                    .description("Circuit breaker state per step-ca replica: 0 closed, 1 open, 2 half-open")
+                    .tag("upstream", name)
+                    .register(meterRegistry);
+        }
+        upstreams = Collections.unmodifiableList(created);
+        affinityPrimary = Counter.builder("proxy.upstream.affinity")
+                .description("Account-affine requests routed to their ring owner or spilled over by the load bound")
+                .tag("result", "primary")
+                .register(meterRegistry);
+        affinityRebalanced = Counter.builder("proxy.upstream.affinity")
+                .description("Account-affine requests routed to their ring owner or spilled over by the load bound")
+                .tag("result", "rebalanced")
+                .register(meterRegistry);
+        rebuildAffinityRing();
+        log.info("Configured {} step-ca upstream(s) with {} balancing: {}", upstreams.size(), strategy, urls);
+    }
+
+    @PreDestroy
+    public void close() {
+        for (Upstream upstream : upstreams) {
+            try {
+                upstream.getHttpClient().close();
+            } catch (Exception e) {
+                log.debug("Error closing client for {}", upstream.getUrl(), e);
+            }
+        }
+    }
+
+    /**
+     * 选择一个副本处理请求；所有副本都不健康时仍在全部副本中选择，避免整体拒绝服务。
+     * 熔断打开的副本不参与选择，全部熔断时返回 null，调用方应快速失败。
+     * 返回的副本已占用熔断器名额，调用方不发出请求时要调用 {@link Upstream#release()}
+     */
+    public Upstream select() {
+        if (upstreams.size() == 1) {
+            Upstream only = upstreams.get(0);
+            return only.tryAcquire() ? only : null;
+        }
+        List<Upstream> candidates = availableUpstreams(null);
+        while (!candidates.isEmpty()) {
+            Upstream chosen = choose(candidates);
+            if (chosen.tryAcquire()) {
+                return chosen;
+            }
+            // 半开名额被并发请求抢先占完，换一个副本
+            candidates.remove(chosen);
+        }
+        return null;
+    }
+
+    private Upstream choose(List<Upstream> candidates) {
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        if ("ewma".equalsIgnoreCase(strategy)) {
+            Upstream best = null;
+            for (Upstream upstream : candidates) {
+                if (best == null || upstream.ewmaScore() < best.ewmaScore()) {
+                    best = upstream;
+                }
+            }
+            return best;
+        }
+        // power of two choices
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Upstream first = candidates.get(random.nextInt(candidates.size()));
+        Upstream second = candidates.get(random.nextInt(candidates.size()));
+        return first.getOutstanding() <= second.getOutstanding() ? first : second;
+    }
+
+    /**
+     * 按账户选择副本，accountKey 为空、未启用亲和或只有一个副本时退化为 {@link #select()}；
+     * 账户所在副本熔断时同样退化
+     */
+    public Upstream select(String accountKey) {
+        AffinityRing ring = affinityRing;
+        if (accountKey == null || ring == null) {
+            return select();
+        }
+        Upstream selected = ring.select(accountKey, loadFactor);
+        if (!selected.tryAcquire()) {
+            return select();
+        }
+        if (selected == ring.primary(accountKey)) {
+            affinityPrimary.increment();
+        } else {
+            affinityRebalanced.increment();
+        }
+        return selected;
+    }
+
+    /**
+     * 选择 exclude 以外在途请求最少的可用副本，用于对冲请求；没有其他可用副本时返回 null。
+     * 与 {@link #select()} 一样，返回的副本已占用熔断器名额
+     */
+    public Upstream selectOther(Upstream exclude) {
+        List<Upstream> candidates = availableUpstreams(exclude);
+        while (!candidates.isEmpty()) {
+            Upstream best = null;
+            for (Upstream upstream : candidates) {
+                if (best == null || upstream.getOutstanding() < best.getOutstanding()) {
+                    best = upstream;
+                }
+            }
+            if (best.tryAcquire()) {
+                return best;
+            }
+            candidates.remove(best);
+        }
+        return null;
+    }
+
+    /**
+     * 所有副本都熔断时，距离最早一个进入半开状态的剩余时间
+     */
+    public Duration retryAfter() {
+        long remaining = Long.MAX_VALUE;
+        for (Upstream upstream : upstreams) {
+            remaining = Math.min(remaining, upstream.getCircuitBreaker().remainingOpenNanos());
+        }
+        return Duration.ofNanos(remaining == Long.MAX_VALUE ? 0 : remaining);
+    }
+
+    public List<Upstream> getUpstreams() {
+        return upstreams;
+    }
+
+    private List<Upstream> healthyUpstreams() {
+        if (upstreams.size() == 1) {
+            return upstreams;
+        }
+        List<Upstream> healthy = new ArrayList<>(upstreams.size());
+        for (Upstream upstream : upstreams) {
+            if (upstream.isHealthy()) {
+                healthy.add(upstream);
+            }
+        }
+        return healthy.isEmpty() ? upstreams : healthy;
+    }
+
+    private List<Upstream> availableUpstreams(Upstream exclude) {
+        List<Upstream> healthy = healthyUpstreams();
+        List<Upstream> available = new ArrayList<>(healthy.size());
+        for (Upstream upstream : healthy) {
+            if (upstream != exclude && upstream.isAvailable()) {
+                available.add(upstream);
+            }
+        }
+        return available;
+    }
+
+    /**
+     * 用当前健康的副本重建哈希环，副本加入或移出轮转时调用
+     */
+    private void rebuildAffinityRing() {
+        List<Upstream> members = healthyUpstreams();
+        affinityRing = affinityEnabled && members.size() > 1 ? new AffinityRing(members, virtualNodes) : null;
+    }
+
+    @Scheduled(fixedDelayString = "${proxy.health-check.interval-ms:5000}")
+    public void checkHealth() {
+        if (!healthCheckEnabled) {
+            return;
+        }
+        boolean changed = false;
+        for (Upstream upstream : upstreams) {
+            boolean success = probe(upstream);
+            if (upstream.recordHealthCheck(success, unhealthyThreshold, healthyThreshold)) {
+                changed = true;
+                if (upstream.isHealthy()) {
+                    log.info("Upstream {} is healthy again, returning it to rotation", upstream.getUrl());
+                } else {
+                    log.warn("Upstream {} failed {} health checks, removing it from rotation",
+                            upstream.getUrl(), unhealthyThreshold);
+                }
+            }
+        }
+        if (changed) {
+            rebuildAffinityRing();
+        }
+    }
+
+    private boolean probe(Upstream upstream) {
+        HttpGet httpGet = new HttpGet(upstream.getUrl() + healthCheckPath);
+        httpGet.setConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(healthCheckTimeoutMs))
+                .setResponseTimeout(Timeout.ofMilliseconds(healthCheckTimeoutMs))
+                .build());
+        try (CloseableHttpResponse response = upstream.getHttpClient().execute(httpGet)) {
+            EntityUtils.consume(response.getEntity());
+            return response.getCode() < 500;
+        } catch (Exception e) {
+            log.debug("Health check of {} failed: {}", upstream.getUrl(), e.getMessage());
+            return false;
+        }
+    }
+
+    private String stripTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+}
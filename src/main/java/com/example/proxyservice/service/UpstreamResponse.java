@@ -0,0 +1,65 @@
+package com.example.proxyservice.service;
+
+import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+
+import java.io.IOException;
+
+/**
+ * 已完整读取的上游响应，可以在发起调用的线程之外读取并交回请求线程处理
+ */
+final class UpstreamResponse {
+
+    private final int status;
+    private final Header[] headers;
+    private final byte[] body;
+
+    private UpstreamResponse(int status, Header[] headers, byte[] body) {
+        this.status = status;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    /**
+     * 向指定副本发送请求并读取完整响应，同时记录副本的在途数、延迟与熔断结果；被取消的请求不计入熔断结果
+     */
+    static UpstreamResponse fetch(Upstream upstream, HttpUriRequestBase request) throws IOException {
+        long startNanos = upstream.start();
+        boolean failed = true;
+        try (CloseableHttpResponse response = upstream.getHttpClient().execute(request)) {
+            // HEAD 等请求没有响应实体
+            byte[] body = response.getEntity() != null ? EntityUtils.toByteArray(response.getEntity()) : null;
+            failed = response.getCode() >= 500;
+            return new UpstreamResponse(response.getCode(), response.getHeaders(), body);
+        } finally {
+            if (request.isCancelled()) {
+                upstream.abandon();
+            } else {
+                upstream.complete(startNanos, failed);
+            }
+        }
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    Header[] getHeaders() {
+        return headers;
+    }
+
+    Header getFirstHeader(String name) {
+        for (Header header : headers) {
+            if (header.getName().equalsIgnoreCase(name)) {
+                return header;
+            }
+        }
+        return null;
+    }
+
+    byte[] getBody() {
+        return body;
+    }
+}
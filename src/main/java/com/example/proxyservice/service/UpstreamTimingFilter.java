@@ -0,0 +1,51 @@
+package com.example.proxyservice.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 记录 write 阶段：从转发逻辑交出响应到 Spring 把它写完为止
+ *
+ * 阻塞引擎由 ProxyService 标记开始时间；非阻塞引擎的响应在异步派发中写出，以派发开始为起点。
+ */
+@Component
+@RequiredArgsConstructor
+public class UpstreamTimingFilter extends OncePerRequestFilter {
+
+    private final UpstreamTimings upstreamTimings;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        return !upstreamTimings.isEnabled() || !(path.startsWith("/acme/") || "/roots.pem".equals(path));
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            request.setAttribute(UpstreamTimings.WRITE_START_ATTRIBUTE, System.nanoTime());
+        }
+        chain.doFilter(request, response);
+        if (request.isAsyncStarted()) {
+            return;
+        }
+        if (request.getAttribute(UpstreamTimings.WRITE_START_ATTRIBUTE) instanceof Long start) {
+            upstreamTimings.record(AcmeRoute.classify(request.getRequestURI()), UpstreamTimings.Phase.WRITE,
+                    System.nanoTime() - start);
+        }
+    }
+}
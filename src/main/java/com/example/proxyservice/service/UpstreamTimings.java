@@ -0,0 +1,292 @@
+package com.example.proxyservice.service;
+
+import com.example.proxyservice.config.ProxyConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.apache.hc.client5.http.classic.ExecChain;
+import org.apache.hc.client5.http.impl.ChainElement;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 上游请求分阶段耗时：等待连接池租约、TCP 建连、TLS 握手、首字节、响应体传输、向客户端写响应
+ *
+ * 每个 (ACME 操作, 阶段) 对应一个 Micrometer 计时器 proxy.upstream.phase{route, phase}
+ * 和一个 HdrHistogram（微秒，3 位有效数字），后者通过 /actuator/upstreamtimings 输出累计与最近一个区间的分位。
+ * 只覆盖阻塞引擎（proxy.engine=blocking）；流式模式下响应写出与 body 传输交错进行，都计入 body。
+ */
+@Component
+@RequiredArgsConstructor
+public class UpstreamTimings {
+
+    /**
+     * 执行开始时间，由 CONNECT 之前的拦截器写入 HttpContext
+     */
+    private static final String EXEC_START_ATTRIBUTE = "proxy.timing.exec-start";
+
+    /**
+     * 上游响应交回 servlet 层开始写出的时间，由 ProxyService 写入请求属性
+     */
+    static final String WRITE_START_ATTRIBUTE = UpstreamTimings.class.getName() + ".writeStart";
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${proxy.timing.enabled:true}")
+    private boolean enabled;
+
+    private final Map<AcmeRoute, Map<Phase, PhaseStats>> stats = new ConcurrentHashMap<>();
+
+    public enum Phase {
+        LEASE("lease"),
+        CONNECT("connect"),
+        TLS("tls"),
+        TTFB("ttfb"),
+        BODY("body"),
+        WRITE("write");
+
+        private final String tag;
+
+        Phase(String tag) {
+            this.tag = tag;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 为上游客户端的执行链加上计时拦截器：CONNECT 之前记下开始时间，MAIN_TRANSPORT 之前
+     * 结合 socket 工厂写入的建连/TLS 耗时拆出 lease、connect、tls，再计时首字节并包装响应实体计时 body
+     */
+    public void instrument(HttpClientBuilder builder) {
+        if (!enabled) {
+            return;
+        }
+        builder.addExecInterceptorBefore(ChainElement.CONNECT.name(), "timing-start", this::startExec);
+        builder.addExecInterceptorBefore(ChainElement.MAIN_TRANSPORT.name(), "timing-exchange", this::exchange);
+    }
+
+    private ClassicHttpResponse startExec(ClassicHttpRequest request, ExecChain.Scope scope, ExecChain chain)
+            throws IOException, HttpException {
+        HttpClientContext context = scope.clientContext;
+        // 重试会再次经过这里，清掉上一次尝试留下的建连耗时
+        context.removeAttribute(ProxyConfig.CONNECT_NANOS_ATTRIBUTE);
+        context.removeAttribute(ProxyConfig.TLS_NANOS_ATTRIBUTE);
+        context.setAttribute(EXEC_START_ATTRIBUTE, System.nanoTime());
+        return chain.proceed(request, scope);
+    }
+
+    private ClassicHttpResponse exchange(ClassicHttpRequest request, ExecChain.Scope scope, ExecChain chain)
+            throws IOException, HttpException {
+        long connected = System.nanoTime();
+        HttpClientContext context = scope.clientContext;
+        AcmeRoute route = AcmeRoute.classify(request.getPath());
+        Object start = context.getAttribute(EXEC_START_ATTRIBUTE);
+        long connectNanos = context.getAttribute(ProxyConfig.CONNECT_NANOS_ATTRIBUTE) instanceof Long value ? value : -1;
+        long tlsNanos = context.getAttribute(ProxyConfig.TLS_NANOS_ATTRIBUTE) instanceof Long value ? value : -1;
+        if (start instanceof Long startNanos) {
+            record(route, Phase.LEASE, connected - startNanos - Math.max(connectNanos, 0));
+        }
+        if (connectNanos >= 0) {
+            record(route, Phase.CONNECT, connectNanos - Math.max(tlsNanos, 0));
+        }
+        if (tlsNanos >= 0) {
+            record(route, Phase.TLS, tlsNanos);
+        }
+
+        ClassicHttpResponse response = chain.proceed(request, scope);
+        long firstByte = System.nanoTime();
+        record(route, Phase.TTFB, firstByte - connected);
+        HttpEntity entity = response.getEntity();
+        if (entity != null) {
+            response.setEntity(new TimedEntity(entity, route, firstByte));
+        }
+        return response;
+    }
+
+    /**
+     * ProxyService 拿到完整响应、交给 Spring 写出之前调用
+     */
+    void markWriteStart(HttpServletRequest request) {
+        if (enabled) {
+            request.setAttribute(WRITE_START_ATTRIBUTE, System.nanoTime());
+        }
+    }
+
+    public void record(AcmeRoute route, Phase phase, long nanos) {
+        if (!enabled || nanos < 0) {
+            return;
+        }
+        stats.computeIfAbsent(route, r -> new ConcurrentHashMap<>())
+                .computeIfAbsent(phase, p -> new PhaseStats(route, p))
+                .record(nanos);
+    }
+
+    /**
+     * 区间滚动：把当前区间的数据固定为"最近区间"，供端点与累计值对照
+     */
+    @Scheduled(fixedDelayString = "${proxy.timing.interval-ms:60000}")
+    public void rollInterval() {
+        stats.values().forEach(phases -> phases.values().forEach(PhaseStats::roll));
+    }
+
+    /**
+     * 按操作、阶段输出累计与最近区间的分位（毫秒）
+     */
+    public Map<String, Map<String, Map<String, Object>>> snapshot() {
+        Map<String, Map<String, Map<String, Object>>> result = new TreeMap<>();
+        stats.forEach((route, phases) -> {
+            Map<String, Map<String, Object>> byPhase = new LinkedHashMap<>();
+            new TreeMap<>(phases).forEach((phase, phaseStats) -> byPhase.put(phase.getTag(), phaseStats.describe()));
+            result.put(routeTag(route), byPhase);
+        });
+        return result;
+    }
+
+    private static String routeTag(AcmeRoute route) {
+        return route.name().toLowerCase().replace('_', '-');
+    }
+
+    private final class PhaseStats {
+        private final Timer timer;
+        private final Recorder recorder = new Recorder(3);
+        private Histogram intervalScratch;
+        private Histogram total = new Histogram(3);
+        private Histogram current = new Histogram(3);
+        private Histogram lastInterval = new Histogram(3);
+
+        PhaseStats(AcmeRoute route, Phase phase) {
+            timer = Timer.builder("proxy.upstream.phase")
+                    .description("Upstream request time per phase: pool lease, connect, TLS, first byte, body, response write")
+                    .tags("route", routeTag(route), "phase", phase.getTag())
+                    .register(meterRegistry);
+        }
+
+        void record(long nanos) {
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+            recorder.recordValue(Math.max(1, TimeUnit.NANOSECONDS.toMicros(nanos)));
+        }
+
+        /**
+         * 把 Recorder 中尚未汇总的样本并入累计与当前区间
+         */
+        private void drain() {
+            intervalScratch = recorder.getIntervalHistogram(intervalScratch);
+            total.add(intervalScratch);
+            current.add(intervalScratch);
+        }
+
+        synchronized void roll() {
+            drain();
+            lastInterval = current;
+            current = new Histogram(3);
+        }
+
+        synchronized Map<String, Object> describe() {
+            drain();
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("total", summarize(total));
+            result.put("lastInterval", summarize(lastInterval));
+            return result;
+        }
+
+        private Map<String, Object> summarize(Histogram histogram) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("count", histogram.getTotalCount());
+            if (histogram.getTotalCount() > 0) {
+                result.put("meanMs", histogram.getMean() / 1000.0);
+                result.put("p50Ms", histogram.getValueAtPercentile(50) / 1000.0);
+                result.put("p90Ms", histogram.getValueAtPercentile(90) / 1000.0);
+                result.put("p99Ms", histogram.getValueAtPercentile(99) / 1000.0);
+                result.put("p999Ms", histogram.getValueAtPercentile(99.9) / 1000.0);
+                result.put("maxMs", histogram.getMaxValue() / 1000.0);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 响应体读到结尾或被关闭时记录 body 阶段，只记一次
+     */
+    private final class TimedEntity extends HttpEntityWrapper {
+        private final AcmeRoute route;
+        private final long startNanos;
+        private boolean recorded;
+
+        TimedEntity(HttpEntity entity, AcmeRoute route, long startNanos) {
+            super(entity);
+            this.route = route;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            InputStream content = super.getContent();
+            if (content == null) {
+                return null;
+            }
+            return new FilterInputStream(content) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b < 0) {
+                        finish();
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int n = super.read(buffer, offset, length);
+                    if (n < 0) {
+                        finish();
+                    }
+                    return n;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        finish();
+                    }
+                }
+            };
+        }
+
+        private void finish() {
+            if (!recorded) {
+                recorded = true;
+                record(route, Phase.BODY, System.nanoTime() - startNanos);
+            }
+        }
+    }
+}
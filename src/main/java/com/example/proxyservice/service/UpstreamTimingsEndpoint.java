@@ -0,0 +1,26 @@
+package com.example.proxyservice.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * /actuator/upstreamtimings：按 ACME 操作、阶段输出上游耗时分位
+ *
+ * 只读：端点与 /acme/** 同在 8080 端口且没有认证，不提供清零等写操作；需要看新数据时对照 lastInterval
+ */
+@Component
+@RequiredArgsConstructor
+@Endpoint(id = "upstreamtimings")
+public class UpstreamTimingsEndpoint {
+
+    private final UpstreamTimings upstreamTimings;
+
+    @ReadOperation
+    public Map<String, Map<String, Map<String, Object>>> timings() {
+        return upstreamTimings.snapshot();
+    }
+}
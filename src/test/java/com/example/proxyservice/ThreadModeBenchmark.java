@@ -0,0 +1,116 @@
+package com.example.proxyservice;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 平台线程 / 虚拟线程模式对比压测
+ *
+ * 分别以两种模式启动代理后各跑一次，对比吞吐、延迟分位以及服务端峰值线程数：
+ * <pre>
+ *   java -jar target/proxy-service-1.0.0.jar
+ *   java -jar target/proxy-service-1.0.0.jar --spring.profiles.active=virtual-threads   (mvn -P java21 构建)
+ *
+ *   java ThreadModeBenchmark http://localhost:8080 /acme/acme/directory 2000 20000
+ * </pre>
+ * 参数依次为：代理地址、请求路径、并发数、请求总数。
+ */
+public class ThreadModeBenchmark {
+
+    private static final Pattern METRIC_VALUE = Pattern.compile("\"value\":([0-9.E]+)");
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        String path = args.length > 1 ? args[1] : "/acme/acme/directory";
+        int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int totalRequests = args.length > 3 ? Integer.parseInt(args[3]) : 10000;
+
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        // 预热
+        runLoad(client, baseUrl + path, Math.min(concurrency, 50), Math.min(totalRequests, 500));
+
+        long start = System.nanoTime();
+        LoadResult result = runLoad(client, baseUrl + path, concurrency, totalRequests);
+        double elapsedSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        List<Long> latencies = result.latenciesMicros;
+        Collections.sort(latencies);
+
+        System.out.println("目标: " + baseUrl + path);
+        System.out.println("并发: " + concurrency + ", 请求数: " + totalRequests + ", 失败: " + result.failures.get());
+        System.out.printf("吞吐: %.1f req/s%n", totalRequests / elapsedSeconds);
+        System.out.printf("延迟(ms): p50=%.2f p90=%.2f p99=%.2f max=%.2f%n",
+                percentile(latencies, 0.50), percentile(latencies, 0.90),
+                percentile(latencies, 0.99), percentile(latencies, 1.0));
+        System.out.println("服务端峰值线程数: " + readMetric(client, baseUrl, "jvm.threads.peak"));
+        System.out.println("服务端当前线程数: " + readMetric(client, baseUrl, "jvm.threads.live"));
+    }
+
+    private static LoadResult runLoad(HttpClient client, String url, int concurrency, int totalRequests)
+            throws InterruptedException {
+        LoadResult result = new LoadResult();
+        Semaphore permits = new Semaphore(concurrency);
+        List<CompletableFuture<?>> futures = new ArrayList<>(totalRequests);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(60))
+                .GET()
+                .build();
+
+        for (int i = 0; i < totalRequests; i++) {
+            permits.acquire();
+            long sent = System.nanoTime();
+            futures.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        permits.release();
+                        if (error != null || response.statusCode() >= 500) {
+                            result.failures.incrementAndGet();
+                        }
+                        result.record((System.nanoTime() - sent) / 1000);
+                    }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).exceptionally(e -> null).join();
+        return result;
+    }
+
+    private static double percentile(List<Long> sortedMicros, double quantile) {
+        if (sortedMicros.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sortedMicros.size()) - 1;
+        return sortedMicros.get(Math.max(0, index)) / 1000.0;
+    }
+
+    private static String readMetric(HttpClient client, String baseUrl, String name) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/metrics/" + name)).build();
+            String body = client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+            Matcher matcher = METRIC_VALUE.matcher(body);
+            return matcher.find() ? String.valueOf((long) Double.parseDouble(matcher.group(1))) : "n/a";
+        } catch (Exception e) {
+            return "n/a (" + e.getMessage() + ")";
+        }
+    }
+
+    private static class LoadResult {
+        private final List<Long> latenciesMicros = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger failures = new AtomicInteger();
+
+        private void record(long micros) {
+            latenciesMicros.add(micros);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.proxyservice;
+
+import com.example.proxyservice.service.AcmeRoute;
+import com.example.proxyservice.service.TrafficLog;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 查看 TrafficRecorder 录制的流量：逐条打印，或按 ACME 操作与状态码汇总请求构成
+ * <pre>
+ *   java TrafficLogDump logs/traffic [--summary]
+ * </pre>
+ */
+public class TrafficLogDump {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("用法: TrafficLogDump <文件或目录> [--summary]");
+            System.exit(2);
+        }
+        boolean summary = args.length > 1 && "--summary".equals(args[1]);
+        Map<String, long[]> mix = new TreeMap<>();
+        long[] total = new long[1];
+        TrafficLog.read(Path.of(args[0]), entry -> {
+            total[0]++;
+            if (summary) {
+                String key = String.format("%-12s %-4s %d", AcmeRoute.classify(entry.uri()), entry.method(), entry.status());
+                long[] stats = mix.computeIfAbsent(key, k -> new long[2]);
+                stats[0]++;
+                stats[1] += entry.durationMicros();
+                return;
+            }
+            System.out.printf("%s %8.2fms %-6s %-60s %d req=%dB resp=%dB%s%n", entry.timestamp(),
+                    entry.durationMicros() / 1000.0, entry.method(), entry.uri(), entry.status(),
+                    entry.requestBody().length, entry.responseBody().length, describe(entry.flags()));
+        });
+        if (summary) {
+            mix.forEach((key, stats) -> System.out.printf("%-30s %8d  %5.1f%%  avg %8.2fms%n", key, stats[0],
+                    100.0 * stats[0] / total[0], stats[1] / 1000.0 / stats[0]));
+        }
+        System.out.println(total[0] + " 条记录");
+    }
+
+    private static String describe(int flags) {
+        StringBuilder text = new StringBuilder();
+        if ((flags & TrafficLog.REQUEST_TRUNCATED) != 0) {
+            text.append(" [请求体截断]");
+        }
+        if ((flags & TrafficLog.RESPONSE_TRUNCATED) != 0) {
+            text.append(" [响应体截断]");
+        }
+        if ((flags & TrafficLog.BODIES_OMITTED) != 0) {
+            text.append(" [未录制 body]");
+        }
+        if ((flags & TrafficLog.REDACTED) != 0) {
+            text.append(" [已脱敏]");
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.proxyservice;
+
+import com.example.proxyservice.service.AcmeRoute;
+import com.example.proxyservice.service.TrafficLog;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 回放 TrafficRecorder 录制的流量，按原始节奏（1x）、加速（如 10x）或不限速（max）发给目标代理，
+ * 按 ACME 操作输出回放耗时分位，并与录制时的耗时和状态码对比
+ * <pre>
+ *   java TrafficReplay logs/traffic http://localhost:8080 [1|10|max] [--concurrency=64] [--limit=100000]
+ * </pre>
+ * 请求按录制顺序发出，定速模式下保持原始的相对时间间隔；发送落后于计划超过 10ms 的请求计为 late，
+ * 说明回放端或目标已跟不上该倍速。
+ *
+ * 录制时 JWS 签名已被清空、nonce 也早已失效，对真实 step-ca 回放 POST 只会得到 badNonce/签名错误；
+ * 用于性能对比时让目标代理指向 mock（MockAcmeServer --validate-nonces=false），
+ * 或只关注 GET、new-nonce 与本地应答路径。
+ */
+public class TrafficReplay {
+
+    private static final Set<String> RESTRICTED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        // JDK HttpClient 不允许设置的头，以及逐跳头
+        RESTRICTED_HEADERS.addAll(Set.of("Host", "Connection", "Content-Length", "Expect", "Upgrade",
+                "Transfer-Encoding", "Keep-Alive", "TE", "Trailer", "Proxy-Connection"));
+    }
+
+    private final Map<AcmeRoute, RouteStats> routes = new ConcurrentHashMap<>();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder late = new LongAdder();
+    private final AtomicLong sent = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("用法: TrafficReplay <录制文件或目录> <目标地址> [1|10|max] [--concurrency=N] [--limit=N]");
+            System.exit(2);
+        }
+        Path log = Path.of(args[0]);
+        String target = args[1].endsWith("/") ? args[1].substring(0, args[1].length() - 1) : args[1];
+        String speedArg = args.length > 2 && !args[2].startsWith("--") ? args[2] : "1";
+        double speed = "max".equalsIgnoreCase(speedArg) ? 0 : Double.parseDouble(speedArg);
+        int concurrency = 64;
+        long limit = Long.MAX_VALUE;
+        for (String arg : args) {
+            if (arg.startsWith("--concurrency=")) {
+                concurrency = Integer.parseInt(arg.substring("--concurrency=".length()));
+            } else if (arg.startsWith("--limit=")) {
+                limit = Long.parseLong(arg.substring("--limit=".length()));
+            }
+        }
+        new TrafficReplay().run(log, target, speed, concurrency, limit);
+    }
+
+    void run(Path log, String target, double speed, int concurrency, long limit) throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        // 定速模式下在途请求数只是保护上限，max 模式下它就是并发度
+        Semaphore inFlight = new Semaphore(speed > 0 ? Math.max(concurrency, 1024) : concurrency);
+        long[] firstTimestamp = {-1};
+        long start = System.nanoTime();
+
+        System.out.printf("回放 %s -> %s，速度 %s%n", log, target, speed > 0 ? speed + "x" : "max（并发 " + concurrency + "）");
+        try {
+            TrafficLog.read(log, entry -> {
+                if (sent.get() >= limit) {
+                    return;
+                }
+                if (firstTimestamp[0] < 0) {
+                    firstTimestamp[0] = entry.timestampMicros();
+                }
+                if (speed > 0) {
+                    long dueNanos = start + (long) ((entry.timestampMicros() - firstTimestamp[0]) * 1000 / speed);
+                    long waitNanos = dueNanos - System.nanoTime();
+                    if (waitNanos > 0) {
+                        sleepNanos(waitNanos);
+                    } else if (waitNanos < -TimeUnit.MILLISECONDS.toNanos(10)) {
+                        late.increment();
+                    }
+                }
+                inFlight.acquireUninterruptibly();
+                send(client, target, entry).whenComplete((ignored, error) -> inFlight.release());
+            });
+        } finally {
+            // 等待所有在途请求完成
+            int permits = speed > 0 ? Math.max(concurrency, 1024) : concurrency;
+            inFlight.acquireUninterruptibly(permits);
+        }
+        report((System.nanoTime() - start) / 1e9);
+    }
+
+    private CompletableFuture<HttpResponse<byte[]>> send(HttpClient client, String target, TrafficLog.Entry entry) {
+        byte[] body = entry.requestBody();
+        HttpRequest.BodyPublisher publisher = body.length > 0
+                ? HttpRequest.BodyPublishers.ofByteArray(body)
+                : HttpRequest.BodyPublishers.noBody();
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(target + entry.uri()))
+                .timeout(Duration.ofSeconds(30))
+                .method(entry.method(), publisher);
+        for (Map.Entry<String, String> header : entry.requestHeaders()) {
+            if (!RESTRICTED_HEADERS.contains(header.getKey()) && !"[REDACTED]".equals(header.getValue())) {
+                request.header(header.getKey(), header.getValue());
+            }
+        }
+
+        RouteStats stats = routes.computeIfAbsent(AcmeRoute.classify(entry.uri()), route -> new RouteStats());
+        stats.recorded.recordValue(Math.max(1, entry.durationMicros()));
+        sent.incrementAndGet();
+        long begin = System.nanoTime();
+        return client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray())
+                .whenComplete((response, error) -> {
+                    if (error != null) {
+                        errors.increment();
+                        return;
+                    }
+                    stats.replayed.recordValue(Math.max(1, (System.nanoTime() - begin) / 1000));
+                    if (response.statusCode() != entry.status()) {
+                        stats.statusMismatches.increment();
+                    }
+                });
+    }
+
+    private void report(double seconds) {
+        System.out.printf("%n发送 %d 个请求，用时 %.1fs（%.1f req/s），错误 %d，落后于计划 %d%n",
+                sent.get(), seconds, sent.get() / seconds, errors.sum(), late.sum());
+        System.out.printf("%-14s %8s   %-33s %-33s %10s%n", "route", "count",
+                "recorded p50 / p99 / max (ms)", "replayed p50 / p99 / max (ms)", "status≠");
+        new TreeMap<>(routes).forEach((route, stats) -> System.out.printf("%-14s %8d   %-33s %-33s %10d%n",
+                route, stats.recorded.getTotalCount(), percentiles(stats.recorded), percentiles(stats.replayed),
+                stats.statusMismatches.sum()));
+    }
+
+    private static String percentiles(Histogram histogram) {
+        if (histogram.getTotalCount() == 0) {
+            return "-";
+        }
+        return String.format("%8.2f / %8.2f / %8.2f", histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0, histogram.getMaxValue() / 1000.0);
+    }
+
+    private static void sleepNanos(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class RouteStats {
+        final Histogram recorded = new ConcurrentHistogram(3);
+        final Histogram replayed = new ConcurrentHistogram(3);
+        final LongAdder statusMismatches = new LongAdder();
+    }
+}
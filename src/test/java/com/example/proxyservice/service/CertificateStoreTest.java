@@ -0,0 +1,183 @@
+package com.example.proxyservice.service;
+
+import com.example.proxyservice.config.CertificateStoreProperties;
+import com.example.proxyservice.model.CertificateRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 证书存储的持久化与恢复：关闭后重新打开、最后一条记录写了一半、索引快照损坏
+ */
+class CertificateStoreTest {
+
+    private static final BigInteger SERIAL = new BigInteger("7d69dec4e028eae920a1ad981fc42ee39f892920", 16);
+
+    @TempDir
+    Path directory;
+
+    private final List<CertificateStore> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeStores() {
+        opened.forEach(CertificateStore::close);
+    }
+
+    @Test
+    void reopenFindsStoredCertificates() throws Exception {
+        String pem = selfSigned("real.example.com", "10.0.0.8");
+        CertificateStore store = open();
+        CertificateStore.Entry real = store.store(pem, request("fallback.example.com"));
+        assertEquals(SERIAL.toString(), real.serialNumber());
+        List<String> serials = storeGenerated(store, 20);
+        store.close();
+        opened.remove(store);
+
+        CertificateStore reopened = open();
+        CertificateStore.StoredPem found = reopened.find("0x" + SERIAL.toString(16));
+        assertNotNull(found);
+        assertEquals(pem, StandardCharsets.US_ASCII.decode(found.content()).toString());
+        assertEquals("real.example.com", found.entry().commonName());
+        assertEquals(1, reopened.findBySubjectAlternativeName("10.0.0.8").size());
+        for (String serial : serials) {
+            assertNotNull(reopened.find(serial), serial);
+        }
+        assertEquals(21, reopened.expiringBefore(Instant.now().plus(400, ChronoUnit.DAYS), 100).size());
+        assertNull(reopened.find("12345"));
+    }
+
+    @Test
+    void tornLastRecordIsDiscarded() throws Exception {
+        CertificateStore store = open();
+        List<String> serials = storeGenerated(store, 3);
+        store.close();
+        opened.remove(store);
+
+        // 模拟写入过程中崩溃：长度已写入，内容与 CRC 不完整
+        Path segment = directory.resolve("segment-00000000.log");
+        int end = endOfRecords(segment);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(end);
+            file.writeInt(200);
+            file.writeInt(0xdeadbeef);
+            file.write("-----BEGIN CERT".getBytes(StandardCharsets.US_ASCII));
+        }
+
+        CertificateStore reopened = open();
+        for (String serial : serials) {
+            assertNotNull(reopened.find(serial), serial);
+        }
+        assertEquals(end, endOfRecords(segment));
+        String appended = reopened.store("not a certificate", request("after.example.com")).serialNumber();
+        assertNotNull(reopened.find(appended));
+        reopened.close();
+        opened.remove(reopened);
+
+        CertificateStore again = open();
+        assertNotNull(again.find(appended));
+        assertEquals(4, again.expiringBefore(Instant.now().plus(400, ChronoUnit.DAYS), 100).size());
+    }
+
+    @Test
+    void corruptedSnapshotFallsBackToFullScan() throws Exception {
+        CertificateStore store = open();
+        List<String> serials = storeGenerated(store, 50);
+        store.close();
+        opened.remove(store);
+
+        Path snapshot = directory.resolve("index.snapshot");
+        byte[] bytes = Files.readAllBytes(snapshot);
+        bytes[bytes.length / 2] ^= 0x5a;
+        Files.write(snapshot, bytes);
+
+        CertificateStore reopened = open();
+        for (String serial : serials) {
+            assertNotNull(reopened.find(serial), serial);
+        }
+        assertEquals(5, reopened.findByCommonName("host-3.example.com").size());
+    }
+
+    private CertificateStore open() throws Exception {
+        CertificateStoreProperties properties = new CertificateStoreProperties();
+        properties.setDirectory(directory.toString());
+        properties.setSegmentSize(DataSize.ofKilobytes(64));
+        CertificateStore store = new CertificateStore(properties, new SimpleMeterRegistry());
+        store.init();
+        opened.add(store);
+        return store;
+    }
+
+    /**
+     * 存入无法解析的 PEM，存储按请求内容记录并分配随机序列号
+     */
+    private static List<String> storeGenerated(CertificateStore store, int count) {
+        List<String> serials = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String pem = "generated certificate " + i;
+            serials.add(store.store(pem, request("host-" + (i % 10) + ".example.com")).serialNumber());
+        }
+        return serials;
+    }
+
+    private static CertificateRequest request(String commonName) {
+        CertificateRequest request = new CertificateRequest();
+        request.setCommonName(commonName);
+        return request;
+    }
+
+    /**
+     * 段文件中第一个长度为 0 的位置，即下一条记录的写入位置
+     */
+    private static int endOfRecords(Path segment) throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        int offset = 0;
+        while (offset + 8 <= buffer.capacity() && buffer.getInt(offset) != 0) {
+            offset += 8 + buffer.getInt(offset);
+        }
+        return offset;
+    }
+
+    private static String selfSigned(String commonName, String ip) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(256);
+        KeyPair keyPair = generator.generateKeyPair();
+        Instant now = Instant.now();
+        X500Name subject = new X500Name("CN=" + commonName);
+        JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(subject, SERIAL,
+                Date.from(now), Date.from(now.plus(30, ChronoUnit.DAYS)), subject, keyPair.getPublic());
+        builder.addExtension(Extension.subjectAlternativeName, false, new GeneralNames(new GeneralName[]{
+                new GeneralName(GeneralName.dNSName, commonName), new GeneralName(GeneralName.iPAddress, ip)}));
+        byte[] der = builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(keyPair.getPrivate()))
+                .getEncoded();
+        return "-----BEGIN CERTIFICATE-----\n"
+                + Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(der)
+                + "\n-----END CERTIFICATE-----\n";
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.proxyservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 半开状态的试探名额：并发申请不超过 half-open-calls，未发出的请求归还名额后熔断器仍能恢复
+ */
+class CircuitBreakerTest {
+
+    private static final int HALF_OPEN_CALLS = 3;
+
+    @Test
+    void concurrentCallersClaimAtMostTheHalfOpenPermits() throws Exception {
+        CircuitBreaker breaker = openBreaker();
+        int callers = 32;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger granted = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (breaker.tryAcquirePermission()) {
+                    granted.incrementAndGet();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        assertEquals(HALF_OPEN_CALLS, granted.get());
+        assertFalse(breaker.isCallPermitted());
+    }
+
+    @Test
+    void releasedPermitsLetTheBreakerClose() {
+        CircuitBreaker breaker = openBreaker();
+        // 选中副本后请求没有发出（构建请求失败、被限流），名额必须归还，否则副本永远停在半开状态
+        for (int i = 0; i < HALF_OPEN_CALLS; i++) {
+            assertTrue(breaker.tryAcquirePermission());
+        }
+        assertFalse(breaker.tryAcquirePermission());
+        for (int i = 0; i < HALF_OPEN_CALLS; i++) {
+            breaker.releasePermission();
+        }
+        assertTrue(breaker.isCallPermitted());
+
+        for (int i = 0; i < HALF_OPEN_CALLS; i++) {
+            assertTrue(breaker.tryAcquirePermission());
+            breaker.onCallCompleted(TimeUnit.MILLISECONDS.toNanos(1), false);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void failedTrialReopensAndReleaseAfterwardsIsIgnored() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 4, 4, 0.5, 1.0,
+                TimeUnit.SECONDS.toNanos(10), TimeUnit.HOURS.toNanos(1), HALF_OPEN_CALLS);
+        for (int i = 0; i < 4; i++) {
+            breaker.onCallCompleted(TimeUnit.MILLISECONDS.toNanos(1), true);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission());
+        breaker.releasePermission();
+        assertFalse(breaker.isCallPermitted());
+    }
+
+    @Test
+    void abandonedTrialIsNotCountedAsFailure() {
+        CircuitBreaker breaker = openBreaker();
+        Upstream upstream = new Upstream("http://replica", null, null, 0.3, breaker);
+        // 对冲输掉被取消的试探请求：归还名额，熔断器保持半开，EWMA 不受影响
+        for (int i = 0; i < HALF_OPEN_CALLS; i++) {
+            assertTrue(upstream.tryAcquire());
+        }
+        upstream.start();
+        upstream.abandon();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertEquals(0, upstream.getOutstanding());
+        assertEquals(0, upstream.getEwmaLatencyMillis());
+        assertTrue(upstream.tryAcquire());
+        assertFalse(upstream.tryAcquire());
+    }
+
+    /**
+     * 连续失败打开熔断器；open-duration 为 0，下一次检查即进入半开状态
+     */
+    private static CircuitBreaker openBreaker() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 4, 4, 0.5, 1.0,
+                TimeUnit.SECONDS.toNanos(10), 0, HALF_OPEN_CALLS);
+        for (int i = 0; i < 4; i++) {
+            breaker.onCallCompleted(TimeUnit.MILLISECONDS.toNanos(1), true);
+        }
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        return breaker;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.proxyservice.service;
+
+import org.apache.hc.core5.http.ContentType;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 请求头处理阶段的稳态分配：预热填充缓存并让 JIT 完成逃逸分析后，逐跳头判断与 Content-Type 清理、解析
+ * 应为 0 字节/头。用当前线程的分配计数测量，统计本身可能有少量分配，按每头不足 0.01 字节视为零分配
+ */
+class HeaderPipelineAllocationTest {
+
+    private static final int ITERATIONS = 1_000_000;
+
+    private static final String[] HEADER_NAMES = {
+            "Host", "User-Agent", "Accept", "Accept-Encoding", "Content-Type", "Content-Length",
+            "Connection", "Authorization", "X-Forwarded-For", "Proxy-Authorization", "Keep-Alive", "TE"
+    };
+
+    private static final String[] CONTENT_TYPES = {
+            "application/jose+json", "application/json", "*/*", "application/pem-certificate-chain"
+    };
+
+    private static com.sun.management.ThreadMXBean threads;
+
+    private HeaderPipeline pipeline;
+    private long sink;
+
+    @BeforeAll
+    static void enableAllocationCounters() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean,
+                "thread allocation counters are not available on this JVM");
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "thread allocation counters are not supported");
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @BeforeEach
+    void createPipeline() {
+        pipeline = new HeaderPipeline();
+        ReflectionTestUtils.setField(pipeline, "contentTypeCacheSize", 64);
+        pipeline.init();
+    }
+
+    @Test
+    void hopByHopCheckDoesNotAllocate() {
+        double bytesPerHeader = profile(HEADER_NAMES.length, () -> {
+            for (String name : HEADER_NAMES) {
+                sink += pipeline.isHopByHop(name) ? 1 : 0;
+            }
+        });
+        assertTrue(bytesPerHeader < 0.01, "hop-by-hop check allocated " + bytesPerHeader + " bytes per header");
+    }
+
+    @Test
+    void contentTypeHandlingDoesNotAllocate() {
+        double bytesPerHeader = profile(CONTENT_TYPES.length, () -> {
+            for (String value : CONTENT_TYPES) {
+                String sanitized = pipeline.sanitizeContentType(value);
+                ContentType parsed = pipeline.parseContentType(value);
+                sink += sanitized.length() + parsed.getMimeType().length();
+            }
+        });
+        assertTrue(bytesPerHeader < 0.01, "Content-Type handling allocated " + bytesPerHeader + " bytes per header");
+    }
+
+    private double profile(int headersPerIteration, Runnable stage) {
+        for (int i = 0; i < ITERATIONS; i++) {
+            stage.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            stage.run();
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        return (double) allocated / ((long) ITERATIONS * headersPerIteration);
+    }
+}